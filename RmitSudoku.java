@@ -60,6 +60,12 @@ public class RmitSudoku
             solvedGridOutFilename = args[4];
         }
 
+        // many one-line puzzles in one file, solved one after another
+        if (gameType.equals("sudoku-lines")) {
+            solveLines(initGridFilename, solverType, bVisualise, solvedGridOutFilename);
+            return;
+        }
+
         //
         // Construct solver and load grid.
         //
@@ -78,6 +84,13 @@ public class RmitSudoku
             case "killer":
                 initKillerSolver(solverType, pair);
                 break;
+            case "sudoku-x":
+            case "windoku":
+            case "anti-knight":
+                // standard grid and solver, with the variant's extra rule
+                initSudokuSolver(solverType, pair);
+                ((StdSudokuGrid)pair.grid).addConstraint(VariantConstraint.forGame(gameType));
+                break;
             default:
                 System.err.println("Unknown game type specified.\n");
                 usage(progName);
@@ -104,8 +117,12 @@ public class RmitSudoku
                 System.out.println(grid);
             }
 
-            // run solver
+            // run solver, reporting its progress if an interval is configured
+            Progress.Reporter reporter = withProgress(solver);
             boolean bSolvedSuccess = solver.solve(grid);
+            if (reporter != null) {
+                reporter.close();
+            }
 
             // stop timer
             long endTime = System.nanoTime();
@@ -128,6 +145,31 @@ public class RmitSudoku
             System.out.println("time taken = "
                 + ((double)(endTime - startTime)) / Math.pow(10, 9) + " sec.\n");
 
+            // display techniques needed and difficulty rating
+            if (solver instanceof LogicalSolver) {
+                System.out.println(((LogicalSolver)solver).report() + "\n");
+            }
+
+            // display which solver of a portfolio won
+            SudokuSolver raced = solver instanceof CachedSolver ? ((CachedSolver)solver).getSolver() : solver;
+            if (raced instanceof PortfolioSolver && ((PortfolioSolver)raced).getLastWinner() != null) {
+                System.out.println("solved by "
+                    + ((PortfolioSolver)raced).getLastWinner().getClass().getSimpleName() + "\n");
+            }
+
+            // display how often known dead ends were skipped
+            if (raced.getDeadStates() != null) {
+                DeadStates deadStates = raced.getDeadStates();
+                System.out.println("dead states: " + deadStates.getHits() + " hits in "
+                    + deadStates.getProbes() + " probes, " + deadStates.getStores() + " stored\n");
+            }
+
+            // display which solver was picked, and why
+            if (raced instanceof AutoSolver) {
+                System.out.println("auto chose " + ((AutoSolver)raced).getLastType()
+                    + " for bucket " + ((AutoSolver)raced).getLastBucket() + "\n");
+            }
+
 
             // Check and validate solution
             if (grid.validate()) {
@@ -135,6 +177,8 @@ public class RmitSudoku
             }
             else {
                 System.out.println("Invalid solution.");
+                System.out.println("First violated: "
+                    + grid.describeUnit(grid.firstViolatedUnit()));
             }
 
 
@@ -143,6 +187,8 @@ public class RmitSudoku
                 grid.outputGrid(solvedGridOutFilename);
             }
 
+            saveCache(solver);
+
         } // end of try-block
         catch (FileNotFoundException e) {
             System.err.println("File not found. " + e.getMessage());
@@ -162,15 +208,78 @@ public class RmitSudoku
     public static void usage(String progName) {
 
         System.err.println(progName + ": [grid fileName] [game type] [solver type] [visualisation] <output filename>");
-        System.err.println("[game type] = {sudoku | killer}");
-        System.err.println("[solver type] (for Sudoku) = {backtracking | algorx | dancing}");
-        System.err.println("[solver type] (for Killer Sudoku) = {backtracking | advanced}");
+        System.err.println("[game type] = {sudoku | killer | sudoku-lines | sudoku-x | windoku | anti-knight}");
+        System.err.println("[solver type] (for Sudoku and its variants) = {backtracking | algorx | dancing | logical | sat | portfolio | auto}");
+        System.err.println("[solver type] (for Killer Sudoku) = {backtracking | advanced | sat | portfolio | auto}");
         System.err.println("<visualisation> = <y | n>");
+        System.err.println("Java options: -Dsudoku.cache=<file> [-Dsudoku.cache.size=<entries>] to reuse solutions of repeated puzzles");
+        System.err.println("Java options: -Dsudoku.portfolio=<solver types, e.g. dancing,sat> to choose the solvers a portfolio races");
+        System.err.println("Java options: -Dsudoku.backtracking=<restarts,lcv> [-Dsudoku.seed=<seed>] for randomised restarts and least constraining values in backtracking");
+        System.err.println("Java options: -Dsudoku.deadstates=<entries> to remember partial grids with no solution in backtracking and exact cover searches");
+        System.err.println("Java options: -Dsudoku.progress=<ms> to report the progress of backtracking and exact cover searches to stderr");
 
 	    System.exit(1);
     } // end of usage()
 
 
+    /**
+     * Solve every puzzle of a file with one puzzle per line (see LineGridReader),
+     * reusing one grid and one solver throughout.  Solutions are written one per
+     * line to the output file, if given.
+     *
+     * @param initGridFilename File of one-line puzzles.
+     * @param solverType Type of (standard Sudoku) solver to use.
+     * @param bVisualise Whether to print each solved grid.
+     * @param solvedGridOutFilename File to write solutions to, or null.
+     */
+    private static void solveLines(String initGridFilename, String solverType,
+        boolean bVisualise, String solvedGridOutFilename)
+    {
+        SolverGridPair pair = new SolverGridPair();
+        initSudokuSolver(solverType, pair);
+        SudokuSolver solver = pair.solver;
+        StdSudokuGrid grid = new StdSudokuGrid();
+
+        int numPuzzles = 0;
+        int numSolved = 0;
+        int numValid = 0;
+        long startTime = System.nanoTime();
+
+        try (LineGridReader reader = new LineGridReader(initGridFilename);
+            LineGridWriter writer = solvedGridOutFilename != null ? new LineGridWriter(solvedGridOutFilename) : null)
+        {
+            while (reader.next(grid)) {
+                numPuzzles++;
+                if (solver.solve(grid))
+                    numSolved++;
+                if (grid.validate())
+                    numValid++;
+                if (bVisualise)
+                    System.out.println(grid + "\n");
+                if (writer != null)
+                    writer.write(grid);
+            }
+        }
+        catch (FileNotFoundException e) {
+            System.err.println("File not found. " + e.getMessage());
+        }
+        catch (IOException e) {
+            System.err.println("IOExeption occurred. " + e.getMessage());
+        }
+
+        long endTime = System.nanoTime();
+        System.out.println(numSolved + " of " + numPuzzles + " puzzles solved, "
+            + numValid + " valid solutions.\n");
+        if (solver instanceof CachedSolver) {
+            CachedSolver cached = (CachedSolver)solver;
+            System.out.println(cached.getHits() + " solutions from cache, " + cached.getMisses() + " searched.\n");
+            saveCache(solver);
+        }
+        System.out.println("time taken = "
+            + ((double)(endTime - startTime)) / Math.pow(10, 9) + " sec.\n");
+    } // end of solveLines()
+
+
     /**
      * Contruct appropriate grid and solver for (standard) Sudoku.
      *
@@ -179,6 +288,11 @@ public class RmitSudoku
      *               reference).
      */
     private static void initSudokuSolver(String solverType, SolverGridPair pair) {
+        initSudokuSolver(solverType, pair, true);
+    } // end of initSudokuSolver()
+
+    // as above, with the cache left out for solvers inside a portfolio
+    private static void initSudokuSolver(String solverType, SolverGridPair pair, boolean cached) {
         SudokuGrid grid = null;
         SudokuSolver solver = null;
 
@@ -188,7 +302,7 @@ public class RmitSudoku
         switch(solverType) {
             case "backtracking":
                 grid = new StdSudokuGrid();
-                solver = new BackTrackingSolver();
+                solver = backTracking();
                 break;
             case "algorx":
                 grid = new StdSudokuGrid();
@@ -198,16 +312,178 @@ public class RmitSudoku
                 grid = new StdSudokuGrid();
                 solver = new DancingLinksSolver();
                 break;
+            case "logical":
+                grid = new StdSudokuGrid();
+                solver = new LogicalSolver();
+                break;
+            case "sat":
+                grid = new StdSudokuGrid();
+                solver = new SatSolver();
+                break;
+            case "portfolio":
+                grid = new StdSudokuGrid();
+                solver = portfolio("dancing,sat", false);
+                break;
+            case "auto":
+                grid = new StdSudokuGrid();
+                solver = new AutoSolver();
+                break;
             default:
                 System.err.println("Unknown solver type specified.\n");
                 usage(progName);
         }
 
+        // partial grids found to have no solution are remembered, if a table size is configured
+        if (solver != null) {
+            withDeadStates(solver);
+        }
+
+        // solutions of repeated and equivalent puzzles are looked up, if a cache is configured
+        // (the logical solver is left alone, as its report comes from solving)
+        if (cached && solver != null && !(solver instanceof LogicalSolver)) {
+            solver = withCache(solver);
+        }
+
         pair.grid = grid;
         pair.solver = solver;
     } // end of initSudokuSolver()
 
 
+    /**
+     * Construct a portfolio of the solver types listed in the system property
+     * sudoku.portfolio, or of the default types if it is not set.
+     *
+     * @param defaultTypes Comma separated solver types, e.g. "dancing,sat".
+     * @param killer Whether the solvers are for Killer Sudoku.
+     *
+     * @return Solver racing one solver of each type.
+     */
+    private static SudokuSolver portfolio(String defaultTypes, boolean killer) {
+        String[] types = System.getProperty("sudoku.portfolio", defaultTypes).split(",");
+        SudokuSolver[] solvers = new SudokuSolver[types.length];
+        for (int i = 0; i < types.length; i++) {
+            if (types[i].equals("portfolio") || types[i].equals("auto")) {
+                System.err.println("A portfolio can only contain single solvers.\n");
+                usage(progName);
+            }
+            SolverGridPair member = new SolverGridPair();
+            if (killer)
+                initKillerSolver(types[i], member);
+            else
+                initSudokuSolver(types[i], member, false);
+            solvers[i] = member.solver;
+        }
+        return new PortfolioSolver(solvers);
+    } // end of portfolio()
+
+
+    /**
+     * Construct a backtracking solver with the search options listed in the
+     * system property sudoku.backtracking: "restarts" for random tie-breaks and
+     * restarts, "lcv" for least constraining values first.  The system property
+     * sudoku.seed seeds the tie-breaks.
+     *
+     * @return Backtracking solver, the plain one if no options are set.
+     */
+    private static BackTrackingSolver backTracking() {
+        BackTrackingSolver solver = new BackTrackingSolver();
+        for (String option : System.getProperty("sudoku.backtracking", "").split(",")) {
+            switch (option) {
+                case "restarts":
+                    solver.setRestarts(true);
+                    break;
+                case "lcv":
+                    solver.setLeastConstraining(true);
+                    break;
+                case "":
+                    break;
+                default:
+                    System.err.println("Unknown backtracking option " + option + ".\n");
+                    usage(progName);
+            }
+        }
+        solver.setSeed(Long.getLong("sudoku.seed", 1));
+        return solver;
+    } // end of backTracking()
+
+
+    /**
+     * Give solver a table of partial grids with no solution (see DeadStates) if
+     * the system property sudoku.deadstates sets how many it keeps.
+     *
+     * @param solver Solver to give the table; solvers that do not search by
+     *          placements ignore it, and the members of a portfolio get their own.
+     */
+    private static void withDeadStates(SudokuSolver solver) {
+        Integer entries = Integer.getInteger("sudoku.deadstates");
+        if (entries != null && entries > 0
+            && !(solver instanceof PortfolioSolver) && !(solver instanceof AutoSolver)) {
+            solver.setDeadStates(new DeadStates(entries));
+        }
+    } // end of withDeadStates()
+
+
+    /**
+     * Have solver publish its progress (see Progress), and report it to stderr,
+     * if the system property sudoku.progress sets the interval in milliseconds.
+     *
+     * @param solver Solver about to solve one grid; a portfolio runs several
+     *          searches at once, so reports nothing.
+     *
+     * @return Reporter to close once the solve is done, or null if none.
+     */
+    private static Progress.Reporter withProgress(SudokuSolver solver) {
+        Long interval = Long.getLong("sudoku.progress");
+        SudokuSolver raced = solver instanceof CachedSolver ? ((CachedSolver)solver).getSolver() : solver;
+        if (interval == null || interval <= 0 || raced instanceof PortfolioSolver)
+            return null;
+        Progress progress = new Progress();
+        solver.setProgress(progress);
+        return new Progress.Reporter(progress, System.err, interval);
+    } // end of withProgress()
+
+
+    /**
+     * Wrap solver in a CachedSolver if the system property sudoku.cache names a
+     * cache file (sudoku.cache.size sets how many solutions it keeps).
+     *
+     * @param solver Solver for puzzles not in the cache.
+     *
+     * @return The cached solver, or solver itself if no cache is configured or it
+     *          cannot be loaded.
+     */
+    private static SudokuSolver withCache(SudokuSolver solver) {
+        String cacheFilename = System.getProperty("sudoku.cache");
+        if (cacheFilename == null) {
+            return solver;
+        }
+        try {
+            return new CachedSolver(solver, Integer.getInteger("sudoku.cache.size", 100000), cacheFilename);
+        }
+        catch (IOException e) {
+            System.err.println("Solution cache not loaded. " + e.getMessage());
+            return solver;
+        }
+    } // end of withCache()
+
+
+    /**
+     * Save the solution cache, if solver has one.
+     *
+     * @param solver Solver used.
+     */
+    private static void saveCache(SudokuSolver solver) {
+        if (solver instanceof CachedSolver) {
+            try {
+                ((CachedSolver)solver).close();
+            }
+            catch (IOException e) {
+                System.err.println("Solution cache not saved. " + e.getMessage());
+            }
+        }
+    } // end of saveCache()
+
+
     /**
      * Contruct appropriate grid and solver for Killer Sudoku.
      *
@@ -231,11 +507,28 @@ public class RmitSudoku
                 grid = new KillerSudokuGrid();
                 solver = new KillerAdvancedSolver();
                 break;
+            case "sat":
+                grid = new KillerSudokuGrid();
+                solver = new SatSolver();
+                break;
+            case "portfolio":
+                grid = new KillerSudokuGrid();
+                solver = portfolio("backtracking,advanced,sat", true);
+                break;
+            case "auto":
+                grid = new KillerSudokuGrid();
+                solver = new AutoSolver();
+                break;
             default:
                 System.err.println("Unknown solver type specified.\n");
                 usage(progName);
         }
 
+        // partial grids found to have no solution are remembered, if a table size is configured
+        if (solver != null) {
+            withDeadStates(solver);
+        }
+
         pair.grid = grid;
         pair.solver = solver;
     } // end of initKillerSolver()
@@ -0,0 +1,224 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package generator;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import grid.KillerSudokuGrid;
+import grid.StdSudokuGrid;
+import grid.SudokuGrid;
+import solver.AutoSolver;
+import solver.SudokuSolver;
+
+
+/**
+ * Learns the table AutoSolver picks solvers by.  Puzzles are generated from a
+ * fixed seed over a range of settings, every solver of the game is timed on each,
+ * and each bucket of AutoSolver.Features gets the solver with the least total
+ * time on the puzzles that fell in it.  So do each game and dimension, and each
+ * game, from all their puzzles, for grids in buckets that were never seen.
+ *
+ * Standard puzzles are generated at each size, then given extra clues from
+ * their solution to cover denser buckets too.  Killer puzzles are generated at
+ * each size with several largest cage sizes.  A solver that takes longer than
+ * the budget is cancelled and counted as taking twice the budget, as is one
+ * that fails.  Each solver solves one puzzle of each setting beforehand to warm
+ * up, untimed.
+ *
+ * The table is written as a properties file, with the mean time of every solver
+ * in each bucket as a comment above its entry.
+ */
+public class AutoTable
+{
+    public static final int[] SUDOKU_SIZES = {4, 6, 9, 12, 16, 25};
+    public static final String[] SUDOKU_SOLVERS = {"backtracking", "algorx", "dancing", "logical", "sat"};
+    //Fractions of cells given, as generated (0) and with clues added up to each fraction
+    public static final double[] DENSITIES = {0, 0.45, 0.7};
+
+    public static final int[] KILLER_SIZES = {4, 6, 9};
+    public static final String[] KILLER_SOLVERS = {"backtracking", "advanced", "sat"};
+    public static final int[] MAX_CAGE_SIZES = {3, 5, 7};
+
+    private long budget_ms;
+    private ScheduledExecutorService timer;
+    //Total ms and number of puzzles of each solver type, by bucket
+    private TreeMap<String, TreeMap<String, double[]>> times = new TreeMap<>();
+    private int puzzles = 0;
+
+    public AutoTable(long budget_ms) {
+        this.budget_ms = budget_ms;
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "budget");
+            thread.setDaemon(true);
+            return thread;
+        });
+    } // end of AutoTable()
+
+
+    //Time solver on a copy of puzzle in ms, twice the budget if it runs out or fails
+    private double time(SudokuSolver solver, SudokuGrid puzzle) {
+        SudokuGrid grid = puzzle.copy();
+        solver.clearCancel();
+        ScheduledFuture<?> stop = timer.schedule(solver::cancel, budget_ms, TimeUnit.MILLISECONDS);
+        long startTime = System.nanoTime();
+        boolean solved = solver.solve(grid);
+        double ms = (System.nanoTime() - startTime) / 1e6;
+        stop.cancel(false);
+        solver.clearCancel();
+        return solved && grid.validate() ? ms : 2.0 * budget_ms;
+    }
+
+
+    //Time every solver on the puzzles and add the times to their bucket, their dimension's and their game's
+    private void record(String[] types, SudokuSolver[] solvers, SudokuGrid[] setting) {
+        if (setting.length == 0)
+            return;
+        for (SudokuSolver solver : solvers)
+            time(solver, setting[0]);
+
+        for (SudokuGrid puzzle : setting) {
+            AutoSolver.Features features = new AutoSolver.Features(puzzle);
+            String[] keys = {features.bucket(), features.game + "." + features.grid_dim, features.game};
+            for (int i = 0; i < solvers.length; i++) {
+                double ms = time(solvers[i], puzzle);
+                for (String key : keys) {
+                    double[] total = times.computeIfAbsent(key, k -> new TreeMap<>())
+                        .computeIfAbsent(types[i], k -> new double[2]);
+                    total[0] += ms;
+                    total[1]++;
+                }
+            }
+            puzzles++;
+        }
+    }
+
+
+    //Puzzles of a standard setting: generated, then with clues added up to density
+    private StdSudokuGrid[] sudokuSetting(int grid_dim, double density, int num_puzzles, long seed) {
+        StdSudokuGenerator generator = new StdSudokuGenerator(grid_dim, seed);
+        Random random = new Random(seed);
+        StdSudokuGrid[] setting = new StdSudokuGrid[num_puzzles];
+        for (int i = 0; i < num_puzzles; i++) {
+            generator.setSeed(seed + i);
+            StdSudokuGrid solved = generator.generateSolved();
+            StdSudokuGrid puzzle = generator.removeClues(solved);
+
+            int[][] g = puzzle.getGrid();
+            int givens = 0;
+            for (int[] row : g) {
+                for (int value : row) {
+                    if (value != -1)
+                        givens++;
+                }
+            }
+            while (givens < density * grid_dim * grid_dim) {
+                int r = random.nextInt(grid_dim);
+                int c = random.nextInt(grid_dim);
+                if (g[r][c] == -1) {
+                    g[r][c] = solved.getGrid()[r][c];
+                    givens++;
+                }
+            }
+            setting[i] = puzzle;
+        }
+        return setting;
+    }
+
+    private KillerSudokuGrid[] killerSetting(int grid_dim, int max_cage, int num_puzzles, long seed) {
+        KillerSudokuGenerator generator = new KillerSudokuGenerator(grid_dim, seed);
+        generator.setMaxCageSize(max_cage);
+        KillerSudokuGrid[] setting = new KillerSudokuGrid[num_puzzles];
+        for (int i = 0; i < num_puzzles; i++) {
+            generator.setSeed(seed + i);
+            setting[i] = generator.generate();
+        }
+        return setting;
+    }
+
+
+    //Write the fastest solver of each bucket, with every solver's mean time above it
+    private void write(String filename, String header) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(filename))) {
+            out.println(header);
+            for (Map.Entry<String, TreeMap<String, double[]>> bucket : times.entrySet()) {
+                String best = null;
+                double best_total = Double.MAX_VALUE;
+                StringBuilder means = new StringBuilder();
+                for (Map.Entry<String, double[]> type : bucket.getValue().entrySet()) {
+                    double[] total = type.getValue();
+                    means.append(String.format(" %s %.3f", type.getKey(), total[0] / total[1]));
+                    if (total[0] < best_total) {
+                        best = type.getKey();
+                        best_total = total[0];
+                    }
+                }
+                int count = (int)bucket.getValue().firstEntry().getValue()[1];
+                out.println();
+                out.println("# " + count + " puzzles, mean ms:" + means);
+                out.println(bucket.getKey() + " = " + best);
+            }
+        }
+    }
+
+
+    /**
+     * Generate puzzles, time the solvers and write the table.
+     *
+     * @param args [puzzles per setting] <seed> <budget ms> <output file, default solver/auto-solver.properties>
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("AutoTable: [puzzles per setting] <seed> <budget ms> <output file>");
+            System.exit(1);
+        }
+
+        int num_puzzles = Integer.parseInt(args[0]);
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        long budget_ms = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+        String filename = args.length > 3 ? args[3] : "solver/" + AutoSolver.TABLE;
+        AutoTable table = new AutoTable(budget_ms);
+
+        for (int grid_dim : SUDOKU_SIZES) {
+            SudokuSolver[] solvers = new SudokuSolver[SUDOKU_SOLVERS.length];
+            for (int i = 0; i < solvers.length; i++)
+                solvers[i] = SizeBenchmark.solver(SUDOKU_SOLVERS[i]);
+            for (double density : DENSITIES) {
+                table.record(SUDOKU_SOLVERS, solvers, table.sudokuSetting(grid_dim, density, num_puzzles, seed));
+                System.out.println("sudoku " + grid_dim + "x" + grid_dim + " density " + density + ": "
+                    + num_puzzles + " puzzles");
+            }
+        }
+        for (int grid_dim : KILLER_SIZES) {
+            SudokuSolver[] solvers = new SudokuSolver[KILLER_SOLVERS.length];
+            for (int i = 0; i < solvers.length; i++)
+                solvers[i] = KillerBenchmark.solver(KILLER_SOLVERS[i]);
+            for (int max_cage : MAX_CAGE_SIZES) {
+                table.record(KILLER_SOLVERS, solvers, table.killerSetting(grid_dim, max_cage, num_puzzles, seed));
+                System.out.println("killer " + grid_dim + "x" + grid_dim + " max cage " + max_cage + ": "
+                    + num_puzzles + " puzzles");
+            }
+        }
+
+        try {
+            table.write(filename, "# Solver type AutoSolver picks for each bucket of puzzles (see AutoSolver.Features),\n"
+                + "# learnt by generator.AutoTable from " + table.puzzles + " puzzles (" + num_puzzles
+                + " per setting, seed " + seed + ", budget " + budget_ms + " ms).\n"
+                + "# Buckets are game.dimension.level, then game.dimension and game for unseen levels.");
+        }
+        catch (IOException e) {
+            System.err.println("Table not written. " + e.getMessage());
+        }
+    } // end of main()
+
+} // end of class AutoTable
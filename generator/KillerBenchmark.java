@@ -0,0 +1,121 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package generator;
+
+import grid.KillerSudokuGrid;
+import grid.SudokuGrid;
+import solver.AutoSolver;
+import solver.KillerAdvancedSolver;
+import solver.KillerBackTrackingSolver;
+import solver.PortfolioSolver;
+import solver.SatSolver;
+import solver.SudokuSolver;
+
+
+/**
+ * Benchmark of the Killer Sudoku solvers at each grid size, like SizeBenchmark
+ * for standard grids.  For each size a set of unique puzzles is generated from a
+ * fixed seed, then every solver solves each of them on a fresh copy, reusing one
+ * solver per size.  The first puzzle of each size is solved once beforehand to
+ * warm up, and is not timed.
+ */
+public class KillerBenchmark
+{
+    //Sizes benchmarked by default; generating unique killer puzzles gets slow beyond 9x9
+    public static final int[] SIZES = {4, 6, 9};
+
+    //Solvers benchmarked by default
+    public static final String[] SOLVERS = {"advanced", "sat"};
+
+
+    //Solver of this type, null if there is no such type
+    public static SudokuSolver solver(String type) {
+        switch (type) {
+            case "backtracking":
+                return new KillerBackTrackingSolver();
+            case "advanced":
+                return new KillerAdvancedSolver();
+            case "sat":
+                return new SatSolver();
+            case "portfolio":
+                return new PortfolioSolver(new KillerBackTrackingSolver(), new KillerAdvancedSolver(), new SatSolver());
+            case "auto":
+                return new AutoSolver();
+            default:
+                return null;
+        }
+    } // end of solver()
+
+
+    /**
+     * Generate puzzles and time each solver on them.
+     *
+     * @param args [puzzles per size] <seed> <sizes, e.g. 6,9> <solvers, e.g. advanced,sat>
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("KillerBenchmark: [puzzles per size] <seed> <sizes, e.g. 6,9> <solvers, e.g. advanced,sat>");
+            System.exit(1);
+        }
+
+        int num_puzzles = Integer.parseInt(args[0]);
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        int[] sizes = SIZES;
+        if (args.length > 2) {
+            String[] fields = args[2].split(",");
+            sizes = new int[fields.length];
+            for (int i = 0; i < fields.length; i++)
+                sizes[i] = Integer.parseInt(fields[i]);
+        }
+        String[] types = args.length > 3 ? args[3].split(",") : SOLVERS;
+        for (String type : types) {
+            if (solver(type) == null) {
+                System.err.println("Unknown solver type " + type);
+                System.exit(1);
+            }
+        }
+
+        System.out.println(String.format("%-6s %-6s %-8s %-13s %12s %12s %8s",
+            "size", "boxes", "cages", "solver", "mean ms", "max ms", "valid"));
+
+        for (int grid_dim : sizes) {
+            //Generate this size's puzzles
+            KillerSudokuGenerator generator = new KillerSudokuGenerator(grid_dim, seed);
+            KillerSudokuGrid[] puzzles = new KillerSudokuGrid[num_puzzles];
+            long cages = 0;
+            for (int i = 0; i < num_puzzles; i++) {
+                generator.setSeed(seed + i);
+                puzzles[i] = generator.generate();
+                cages += puzzles[i].getCages().size();
+            }
+            String boxes = SudokuGrid.boxHeight(grid_dim) + "x" + SudokuGrid.boxWidth(grid_dim);
+
+            for (String type : types) {
+                SudokuSolver solver = solver(type);
+                if (num_puzzles > 0)
+                    solver.solve(puzzles[0].copy());
+
+                long total = 0;
+                long max = 0;
+                int valid = 0;
+                for (KillerSudokuGrid puzzle : puzzles) {
+                    KillerSudokuGrid grid = puzzle.copy();
+                    long startTime = System.nanoTime();
+                    boolean solved = solver.solve(grid);
+                    long time = System.nanoTime() - startTime;
+                    total += time;
+                    max = Math.max(max, time);
+                    if (solved && grid.validate())
+                        valid++;
+                }
+
+                System.out.println(String.format("%-6s %-6s %-8.1f %-13s %12.3f %12.3f %4d/%-4d",
+                    grid_dim + "x" + grid_dim, boxes, num_puzzles > 0 ? (double)cages / num_puzzles : 0.0, type,
+                    num_puzzles > 0 ? total / 1e6 / num_puzzles : 0.0, max / 1e6, valid, num_puzzles));
+            }
+        }
+    } // end of main()
+
+} // end of class KillerBenchmark
@@ -0,0 +1,296 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package generator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import grid.KillerSudokuGrid;
+import solver.KillerAdvancedSolver;
+import solver.KillerSudokuSolver;
+
+
+/**
+ * Generator of Killer Sudoku puzzles (cages only, no initial values) with a
+ * unique solution.
+ *
+ * Starting from a random complete grid, random connected cages of distinct
+ * symbols are grown over it and their totals taken from the grid.  While the
+ * cages allow another solution, a cage covering a cell where that solution
+ * differs is split in two (a single cell cage fixes its symbol, so there is
+ * always one to split).  Once unique, random neighbouring cages are merged where
+ * the result is still unique, so puzzles do not keep more cages than they need.
+ */
+public class KillerSudokuGenerator
+{
+    private int grid_dim;
+    private int[] valid_symbols;
+    private Random random;
+    private StdSudokuGenerator gridGenerator;
+    private KillerSudokuSolver solver;
+    //Largest cage grown or made by merging
+    private int maxCageSize = 5;
+    //Number of merges tried once the cages are unique
+    private int mergeAttempts;
+
+    //Solution the cages are built over, and each cage as a list of cells (r * grid_dim + c)
+    private int[][] solution;
+    private ArrayList<ArrayList<Integer>> cages;
+
+    public KillerSudokuGenerator(int grid_dim, long seed) {
+        this.grid_dim = grid_dim;
+        this.random = new Random(seed);
+        this.gridGenerator = new StdSudokuGenerator(grid_dim, seed);
+        this.solver = new KillerAdvancedSolver();
+        this.mergeAttempts = grid_dim * 2;
+        this.cages = new ArrayList<>();
+
+        valid_symbols = new int[grid_dim];
+        for (int i = 0; i < grid_dim; i++) {
+            valid_symbols[i] = i + 1;
+        }
+    } // end of KillerSudokuGenerator()
+
+
+    //Restart the random sequences, so the same seed generates the same puzzles
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+        gridGenerator.setSeed(seed);
+    } // end of setSeed()
+
+
+    //Set the largest cage grown or made by merging, at least 2
+    public void setMaxCageSize(int maxCageSize) {
+        this.maxCageSize = maxCageSize;
+    } // end of setMaxCageSize()
+
+
+    //Generate a random Killer Sudoku puzzle with a unique solution
+    public KillerSudokuGrid generate() {
+        solution = gridGenerator.generateSolved().getGrid();
+
+        growCages();
+        KillerSudokuGrid other = buildGrid();
+        while (solver.findOtherSolution(other, solution)) {
+            splitCage(cageOf(differingCell(other.getGrid())));
+            other = buildGrid();
+        }
+        mergeCages();
+
+        return buildGrid();
+    } // end of generate()
+
+
+    //Cover the grid with random connected cages, each with distinct symbols
+    private void growCages() {
+        cages.clear();
+        boolean[] assigned = new boolean[grid_dim * grid_dim];
+
+        //Start cages from cells in random order
+        int[] cells = new int[grid_dim * grid_dim];
+        for (int i = 0; i < cells.length; i++) {
+            int j = random.nextInt(i + 1);
+            cells[i] = cells[j];
+            cells[j] = i;
+        }
+
+        for (int start : cells) {
+            if (assigned[start])
+                continue;
+
+            ArrayList<Integer> cage = new ArrayList<>();
+            cage.add(start);
+            assigned[start] = true;
+            long symbols = symbolBit(start);
+            int target = 2 + random.nextInt(maxCageSize - 1);
+
+            //Grow by a random unassigned neighbour whose symbol is not in the cage yet
+            ArrayList<Integer> frontier = new ArrayList<>();
+            while (cage.size() < target) {
+                frontier.clear();
+                for (int cell : cage) {
+                    for (int neighbour : neighbours(cell)) {
+                        if (!assigned[neighbour] && (symbols & symbolBit(neighbour)) == 0 && !frontier.contains(neighbour))
+                            frontier.add(neighbour);
+                    }
+                }
+                if (frontier.isEmpty())
+                    break;
+
+                int next = frontier.get(random.nextInt(frontier.size()));
+                cage.add(next);
+                assigned[next] = true;
+                symbols |= symbolBit(next);
+            }
+
+            cages.add(cage);
+        }
+    }
+
+
+    //Random cell where this other solution differs from the solution the cages were built over
+    private int differingCell(int[][] other) {
+        ArrayList<Integer> differing = new ArrayList<>();
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                if (other[r][c] != solution[r][c])
+                    differing.add(r * grid_dim + c);
+            }
+        }
+        return differing.get(random.nextInt(differing.size()));
+    }
+
+
+    //Split a cage into two connected cages, by cutting a random spanning tree of it
+    private void splitCage(ArrayList<Integer> cage) {
+
+        //Random spanning tree by searching outwards from a random cell
+        ArrayList<Integer> order = new ArrayList<>();
+        ArrayList<Integer> parents = new ArrayList<>();
+        order.add(cage.get(random.nextInt(cage.size())));
+        parents.add(-1);
+        for (int i = 0; i < order.size(); i++) {
+            ArrayList<Integer> next = new ArrayList<>();
+            for (int neighbour : neighbours(order.get(i))) {
+                if (cage.contains(neighbour) && !order.contains(neighbour))
+                    next.add(neighbour);
+            }
+            while (!next.isEmpty()) {
+                order.add(next.remove(random.nextInt(next.size())));
+                parents.add(order.get(i));
+            }
+        }
+
+        //The subtree below a random non-root cell is connected, and so is the rest of the tree
+        ArrayList<Integer> part = new ArrayList<>();
+        part.add(order.get(1 + random.nextInt(order.size() - 1)));
+        for (int i = 1; i < order.size(); i++) {
+            if (part.contains(parents.get(i)) && !part.contains(order.get(i)))
+                part.add(order.get(i));
+        }
+
+        cage.removeAll(part);
+        cages.add(part);
+    }
+
+
+    //Try merging random neighbouring cages, keeping each merge that leaves the solution unique
+    private void mergeCages() {
+        for (int attempt = 0; attempt < mergeAttempts; attempt++) {
+            ArrayList<Integer> cage = cages.get(random.nextInt(cages.size()));
+            int cell = cage.get(random.nextInt(cage.size()));
+            ArrayList<Integer> neighbours = neighbours(cell);
+            ArrayList<Integer> other = cageOf(neighbours.get(random.nextInt(neighbours.size())));
+
+            if (other == cage || cage.size() + other.size() > maxCageSize || (symbolBits(cage) & symbolBits(other)) != 0)
+                continue;
+
+            cages.remove(other);
+            cage.addAll(other);
+            if (!solver.isUnique(buildGrid())) {
+                cage.removeAll(other);
+                cages.add(other);
+            }
+        }
+    }
+
+
+    //Build the puzzle grid for the current cages
+    private KillerSudokuGrid buildGrid() {
+        KillerSudokuGrid grid = new KillerSudokuGrid(valid_symbols);
+        for (ArrayList<Integer> cage : cages) {
+            ArrayList<KillerSudokuGrid.Cell> cells = new ArrayList<>();
+            int total = 0;
+            for (int cell : cage) {
+                cells.add(new KillerSudokuGrid.Cell(cell / grid_dim, cell % grid_dim));
+                total += solution[cell / grid_dim][cell % grid_dim];
+            }
+            grid.addCage(cells, total);
+        }
+        return grid;
+    }
+
+
+    //Cells above, below, left and right of this one
+    private ArrayList<Integer> neighbours(int cell) {
+        int r = cell / grid_dim;
+        int c = cell % grid_dim;
+        ArrayList<Integer> neighbours = new ArrayList<>();
+        if (r > 0)
+            neighbours.add(cell - grid_dim);
+        if (r < grid_dim - 1)
+            neighbours.add(cell + grid_dim);
+        if (c > 0)
+            neighbours.add(cell - 1);
+        if (c < grid_dim - 1)
+            neighbours.add(cell + 1);
+        return neighbours;
+    }
+
+    private ArrayList<Integer> cageOf(int cell) {
+        for (ArrayList<Integer> cage : cages) {
+            if (cage.contains(cell))
+                return cage;
+        }
+        return null;
+    }
+
+    //Bit of the symbol at this cell in the solution
+    private long symbolBit(int cell) {
+        return 1L << (solution[cell / grid_dim][cell % grid_dim] - 1);
+    }
+
+    private long symbolBits(ArrayList<Integer> cage) {
+        long bits = 0;
+        for (int cell : cage)
+            bits |= symbolBit(cell);
+        return bits;
+    }
+
+
+    /**
+     * Generate Killer Sudoku puzzles in parallel on all cores and write each to
+     * its own file in the input format of RmitSudoku.
+     *
+     * @param args [grid dimension] [number of puzzles] [output prefix] <seed>
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("KillerSudokuGenerator: [grid dimension] [number of puzzles] [output prefix] <seed>");
+            System.exit(1);
+        }
+
+        int grid_dim = Integer.parseInt(args[0]);
+        int num_puzzles = Integer.parseInt(args[1]);
+        String prefix = args[2];
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+
+        //One generator per thread, reseeded per puzzle so output does not depend on scheduling
+        ThreadLocal<KillerSudokuGenerator> generators =
+            ThreadLocal.withInitial(() -> new KillerSudokuGenerator(grid_dim, seed));
+        AtomicInteger failures = new AtomicInteger();
+
+        long startTime = System.nanoTime();
+        IntStream.range(0, num_puzzles).parallel().forEach(i -> {
+            KillerSudokuGenerator generator = generators.get();
+            generator.setSeed(seed + i);
+            try {
+                generator.generate().outputInitGrid(prefix + i + ".in");
+            }
+            catch (IOException e) {
+                System.err.println("IOExeption occurred. " + e.getMessage());
+                failures.incrementAndGet();
+            }
+        });
+        long endTime = System.nanoTime();
+
+        System.out.println("Generated " + (num_puzzles - failures.get()) + " puzzles in "
+            + ((double)(endTime - startTime)) / Math.pow(10, 9) + " sec.");
+    } // end of main()
+
+} // end of class KillerSudokuGenerator
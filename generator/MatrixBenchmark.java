@@ -0,0 +1,79 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package generator;
+
+import grid.StdSudokuGrid;
+import grid.SudokuGrid;
+import solver.AlgorXSolver;
+import solver.DancingLinksSolver;
+import solver.SudokuSolver;
+
+
+/**
+ * Benchmark of building the exact cover matrix of the algorx and dancing
+ * solvers at each grid size.  The matrix of every row is only built by the
+ * first countSolutions() of a dimension (and after reset()), so each solver
+ * counts the solutions of a complete grid twice after a reset(): the first
+ * count builds the matrix and covers the grid's rows, the second only resets
+ * the matrix and covers them again, and the build time is the difference.
+ * Complete grids leave nothing to search.
+ * The best of several rounds is reported.
+ */
+public class MatrixBenchmark
+{
+    //Sizes benchmarked by default, with boxes 3x3, 4x4, 5x5 and 6x6
+    public static final int[] SIZES = {9, 16, 25, 36};
+
+    public static final int ROUNDS = 5;
+
+
+    /**
+     * Time matrix builds at each size.
+     *
+     * @param args <sizes, e.g. 16,25> <rounds>
+     */
+    public static void main(String[] args) {
+        int[] sizes = SIZES;
+        if (args.length > 0) {
+            String[] fields = args[0].split(",");
+            sizes = new int[fields.length];
+            for (int i = 0; i < fields.length; i++)
+                sizes[i] = Integer.parseInt(fields[i]);
+        }
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : ROUNDS;
+
+        System.out.println(String.format("%-6s %-13s %12s %12s",
+            "size", "solver", "build ms", "reused ms"));
+
+        for (int grid_dim : sizes) {
+            StdSudokuGrid solved = new StdSudokuGenerator(grid_dim, 1).generateSolved();
+            SudokuSolver[] solvers = {new AlgorXSolver(), new DancingLinksSolver()};
+            String[] types = {"algorx", "dancing"};
+
+            for (int i = 0; i < solvers.length; i++) {
+                long first = Long.MAX_VALUE;
+                long reused = Long.MAX_VALUE;
+                for (int round = 0; round < rounds; round++) {
+                    solvers[i].reset();
+                    first = Math.min(first, time(solvers[i], solved));
+                    reused = Math.min(reused, time(solvers[i], solved));
+                }
+
+                System.out.println(String.format("%-6s %-13s %12.3f %12.3f",
+                    grid_dim + "x" + grid_dim, types[i], Math.max(first - reused, 0) / 1e6, reused / 1e6));
+            }
+        }
+    } // end of main()
+
+
+    //Nanoseconds the solver takes to count the solutions of a copy of the grid
+    private static long time(SudokuSolver solver, SudokuGrid grid) {
+        SudokuGrid copy = grid.copy();
+        long startTime = System.nanoTime();
+        solver.countSolutions(copy, 1);
+        return System.nanoTime() - startTime;
+    }
+
+} // end of class MatrixBenchmark
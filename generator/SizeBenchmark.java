@@ -0,0 +1,140 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package generator;
+
+import grid.StdSudokuGrid;
+import grid.SudokuGrid;
+import solver.AlgorXSolver;
+import solver.AutoSolver;
+import solver.BackTrackingSolver;
+import solver.DancingLinksSolver;
+import solver.LogicalSolver;
+import solver.PortfolioSolver;
+import solver.SatSolver;
+import solver.SudokuSolver;
+
+
+/**
+ * Benchmark of the standard solvers at each grid size, square and rectangular
+ * boxed alike.  For each size a set of unique puzzles is generated from a fixed
+ * seed, then every solver solves each of them on a fresh copy, reusing one
+ * solver per size as a service would.  The first puzzle of each size is solved
+ * once beforehand to warm up, and is not timed.
+ *
+ * Puzzles get sparser as grids grow, so the search-only solvers (algorx and
+ * dancing) may take minutes on some 36x36 puzzles; pass sizes to leave them out.
+ */
+public class SizeBenchmark
+{
+    //Sizes benchmarked by default, with boxes 2x2, 2x3, 3x3, 3x4, 4x4, 5x5 and 6x6
+    public static final int[] SIZES = {4, 6, 9, 12, 16, 25, 36};
+
+    //Solvers benchmarked by default; backtracking takes too long on sparse large grids to include
+    public static final String[] SOLVERS = {"algorx", "dancing", "logical", "sat"};
+
+
+    //Solver of this type, null if there is no such type; "restarts" is backtracking with restarts and least constraining values
+    public static SudokuSolver solver(String type) {
+        switch (type) {
+            case "backtracking":
+                return new BackTrackingSolver();
+            case "restarts":
+                BackTrackingSolver restarts = new BackTrackingSolver();
+                restarts.setRestarts(true);
+                restarts.setLeastConstraining(true);
+                return restarts;
+            case "algorx":
+                return new AlgorXSolver();
+            case "dancing":
+                return new DancingLinksSolver();
+            case "logical":
+                return new LogicalSolver();
+            case "sat":
+                return new SatSolver();
+            case "portfolio":
+                return new PortfolioSolver(new DancingLinksSolver(), new SatSolver());
+            case "auto":
+                return new AutoSolver();
+            default:
+                return null;
+        }
+    } // end of solver()
+
+
+    /**
+     * Generate puzzles and time each solver on them.
+     *
+     * @param args [puzzles per size] <seed> <sizes, e.g. 6,9,25> <solvers, e.g. dancing,logical>
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("SizeBenchmark: [puzzles per size] <seed> <sizes, e.g. 6,9,25> <solvers, e.g. dancing,logical>");
+            System.exit(1);
+        }
+
+        int num_puzzles = Integer.parseInt(args[0]);
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        int[] sizes = SIZES;
+        if (args.length > 2) {
+            String[] fields = args[2].split(",");
+            sizes = new int[fields.length];
+            for (int i = 0; i < fields.length; i++)
+                sizes[i] = Integer.parseInt(fields[i]);
+        }
+        String[] types = args.length > 3 ? args[3].split(",") : SOLVERS;
+        for (String type : types) {
+            if (solver(type) == null) {
+                System.err.println("Unknown solver type " + type);
+                System.exit(1);
+            }
+        }
+
+        System.out.println(String.format("%-6s %-6s %-8s %-13s %12s %12s %8s",
+            "size", "boxes", "givens", "solver", "mean ms", "max ms", "valid"));
+
+        for (int grid_dim : sizes) {
+            //Generate this size's puzzles
+            StdSudokuGenerator generator = new StdSudokuGenerator(grid_dim, seed);
+            StdSudokuGrid[] puzzles = new StdSudokuGrid[num_puzzles];
+            long givens = 0;
+            for (int i = 0; i < num_puzzles; i++) {
+                generator.setSeed(seed + i);
+                puzzles[i] = generator.generate();
+                for (int[] row : puzzles[i].getGrid()) {
+                    for (int value : row) {
+                        if (value != -1)
+                            givens++;
+                    }
+                }
+            }
+            String boxes = SudokuGrid.boxHeight(grid_dim) + "x" + SudokuGrid.boxWidth(grid_dim);
+
+            for (String type : types) {
+                SudokuSolver solver = solver(type);
+                if (num_puzzles > 0)
+                    solver.solve(puzzles[0].copy());
+
+                long total = 0;
+                long max = 0;
+                int valid = 0;
+                for (StdSudokuGrid puzzle : puzzles) {
+                    StdSudokuGrid grid = puzzle.copy();
+                    long startTime = System.nanoTime();
+                    boolean solved = solver.solve(grid);
+                    long time = System.nanoTime() - startTime;
+                    total += time;
+                    max = Math.max(max, time);
+                    if (solved && grid.validate())
+                        valid++;
+                }
+
+                System.out.println(String.format("%-6s %-6s %-8.1f %-13s %12.3f %12.3f %4d/%-4d",
+                    grid_dim + "x" + grid_dim, boxes, num_puzzles > 0 ? (double)givens / num_puzzles : 0.0, type,
+                    num_puzzles > 0 ? total / 1e6 / num_puzzles : 0.0, max / 1e6, valid, num_puzzles));
+            }
+        }
+    } // end of main()
+
+} // end of class SizeBenchmark
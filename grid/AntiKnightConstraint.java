@@ -0,0 +1,40 @@
+/**
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+package grid;
+
+import java.util.ArrayList;
+
+
+/**
+ * Anti-knight Sudoku: two cells a chess knight's move apart may not hold the same
+ * symbol.  Each such pair is a unit of two cells, so every symbol is placed at
+ * most once in it.
+ */
+public class AntiKnightConstraint implements VariantConstraint
+{
+    //Knight moves reaching a later cell in row-major order, so each pair is listed once
+    private static final int[][] MOVES = {{1, -2}, {1, 2}, {2, -1}, {2, 1}};
+
+    @Override
+    public String getName() {
+        return "knight pair";
+    }
+
+    @Override
+    public int[][] units(int grid_dim) {
+        ArrayList<int[]> pairs = new ArrayList<>();
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                for (int[] move : MOVES) {
+                    int r2 = r + move[0];
+                    int c2 = c + move[1];
+                    if (r2 < grid_dim && c2 >= 0 && c2 < grid_dim)
+                        pairs.add(new int[] {r * grid_dim + c, r2 * grid_dim + c2});
+                }
+            }
+        }
+        return pairs.toArray(new int[pairs.size()][]);
+    }
+
+} // end of class AntiKnightConstraint
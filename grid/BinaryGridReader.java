@@ -0,0 +1,123 @@
+/**
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+package grid;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Random-access reader of a binary corpus written by BinaryGridWriter (see there
+ * for the layout).  The file is memory-mapped, and grids are decoded straight
+ * from the mapping into the cells of a StdSudokuGrid, so reading a grid copies
+ * nothing else and a grid object can be reused for every read.
+ *
+ * Only absolute reads of the mapping are used, so one reader can be shared by
+ * threads as long as each reads into its own grid.
+ */
+public class BinaryGridReader implements Closeable
+{
+    private FileChannel channel;
+    private int[] valid_symbols;
+    private int grid_dim;
+    private int bits_per_cell;
+    private int count;
+
+    //Records are mapped in segments, as one mapping holds at most 2GB
+    private MappedByteBuffer[] segments;
+    private long data_start;
+    private long segment_bytes;
+    private LongBuffer index;
+
+    public BinaryGridReader(String filename)
+        throws IOException
+    {
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryGridWriter.HEADER_SIZE);
+        if (header.getInt() != BinaryGridWriter.MAGIC)
+            throw new IOException(filename + " is not a grid corpus");
+        if (header.getInt() != BinaryGridWriter.VERSION)
+            throw new IOException(filename + " has an unsupported corpus version");
+        grid_dim = header.getInt();
+        bits_per_cell = header.getInt();
+        count = (int)header.getLong();
+        long index_offset = header.getLong();
+
+        ByteBuffer symbols = channel.map(FileChannel.MapMode.READ_ONLY, BinaryGridWriter.HEADER_SIZE, 4L * grid_dim);
+        valid_symbols = new int[grid_dim];
+        for (int i = 0; i < grid_dim; i++)
+            valid_symbols[i] = symbols.getInt();
+
+        index = channel.map(FileChannel.MapMode.READ_ONLY, index_offset, 8L * count).asLongBuffer();
+
+        //Segments hold whole records, so no record is split between two of them
+        int record_size = (grid_dim * grid_dim * bits_per_cell + 7) / 8;
+        data_start = BinaryGridWriter.HEADER_SIZE + 4L * grid_dim;
+        segment_bytes = (Integer.MAX_VALUE / record_size) * (long)record_size;
+        long data_bytes = index_offset - data_start;
+        segments = new MappedByteBuffer[(int)((data_bytes + segment_bytes - 1) / segment_bytes)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = data_start + i * segment_bytes;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segment_bytes, index_offset - start));
+        }
+    } // end of BinaryGridReader()
+
+
+    //Number of grids in the corpus
+    public int size() {
+        return count;
+    }
+
+    public int getDimension() {
+        return grid_dim;
+    }
+
+    public int[] getValidSymbols() {
+        return valid_symbols;
+    }
+
+
+    //Load grid number i of the corpus into grid, reusing its cells if it already has this dimension
+    public void read(int i, StdSudokuGrid grid) {
+        int[][] g = grid.getGrid();
+        if (g == null || g.length != grid_dim)
+            g = new int[grid_dim][grid_dim];
+        grid.initGrid(valid_symbols, g);
+
+        long offset = index.get(i) - data_start;
+        MappedByteBuffer segment = segments[(int)(offset / segment_bytes)];
+        int pos = (int)(offset % segment_bytes);
+
+        //Unpack cells most significant bit first
+        int mask = (1 << bits_per_cell) - 1;
+        int bits = 0;
+        int num_bits = 0;
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                if (num_bits < bits_per_cell) {
+                    bits = (bits << 8) | (segment.get(pos++) & 0xFF);
+                    num_bits += 8;
+                }
+                num_bits -= bits_per_cell;
+                int value = (bits >>> num_bits) & mask;
+                g[r][c] = value == 0 ? -1 : valid_symbols[value - 1];
+            }
+        }
+    }
+
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        channel.close();
+    }
+
+} // end of class BinaryGridReader
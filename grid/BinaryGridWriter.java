@@ -0,0 +1,196 @@
+/**
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+package grid;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * Writes standard Sudoku grids (puzzles or solutions) of one dimension and set
+ * of symbols to a packed binary corpus, read back by BinaryGridReader.
+ *
+ * Layout, all big-endian:
+ *   header   magic "SDKB", version, dimension, bits per cell, number of grids,
+ *            offset of the index, then the valid symbols (one int each)
+ *   records  one per grid, each cell in row-major order packed into bits per
+ *            cell bits (0 for empty, otherwise symbol index + 1), padded to a
+ *            whole byte
+ *   index    file offset of each record, one long each
+ *
+ * Bits per cell is the fewest bits that hold dimension + 1 values, so 4 bits for
+ * 9x9 and 5 bits for 16x16 and 25x25.
+ */
+public class BinaryGridWriter implements Closeable
+{
+    public static final int MAGIC = 0x53444B42;
+    public static final int VERSION = 1;
+    //Header bytes before the valid symbols
+    public static final int HEADER_SIZE = 32;
+
+    private FileChannel channel;
+    private int[] valid_symbols;
+    private int grid_dim;
+    private int bits_per_cell;
+    private int record_size;
+
+    private ByteBuffer buffer;      //records not yet written to the channel
+    private long position;          //file offset of the next record
+    private long[] offsets;
+    private int count;
+
+    public BinaryGridWriter(String filename, int[] valid_symbols)
+        throws IOException
+    {
+        this.valid_symbols = valid_symbols;
+        this.grid_dim = valid_symbols.length;
+        this.bits_per_cell = bitsPerCell(grid_dim);
+        this.record_size = (grid_dim * grid_dim * bits_per_cell + 7) / 8;
+        this.offsets = new long[1024];
+
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        //Header is rewritten with the final count and index offset on close()
+        position = HEADER_SIZE + 4L * grid_dim;
+        channel.write(header(0, 0));
+        buffer = ByteBuffer.allocate(Math.max(1 << 16, record_size));
+    } // end of BinaryGridWriter()
+
+
+    //Fewest bits holding 0 (empty) to grid_dim (last symbol index + 1)
+    public static int bitsPerCell(int grid_dim) {
+        return 32 - Integer.numberOfLeadingZeros(grid_dim);
+    }
+
+    private ByteBuffer header(long num_grids, long index_offset) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 4 * grid_dim);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(grid_dim);
+        header.putInt(bits_per_cell);
+        header.putLong(num_grids);
+        header.putLong(index_offset);
+        for (int symbol : valid_symbols)
+            header.putInt(symbol);
+        header.flip();
+        return header;
+    }
+
+
+    //Append a grid, which must have this corpus' symbols
+    public void write(StdSudokuGrid grid)
+        throws IOException
+    {
+        int[][] g = grid.getGrid();
+        if (!Arrays.equals(grid.getValidSymbols(), valid_symbols))
+            throw new IllegalArgumentException("Grid symbols do not match the corpus symbols");
+
+        if (buffer.remaining() < record_size)
+            flush();
+
+        //Pack cells most significant bit first
+        int bits = 0;
+        int num_bits = 0;
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                bits = (bits << bits_per_cell) | (g[r][c] == -1 ? 0 : grid.symbolIndex(g[r][c]) + 1);
+                num_bits += bits_per_cell;
+                if (num_bits >= 8) {
+                    num_bits -= 8;
+                    buffer.put((byte)(bits >>> num_bits));
+                }
+            }
+        }
+        if (num_bits > 0)
+            buffer.put((byte)(bits << (8 - num_bits)));
+
+        if (count == offsets.length)
+            offsets = Arrays.copyOf(offsets, count * 2);
+        offsets[count++] = position;
+        position += record_size;
+    }
+
+    //Number of grids written so far
+    public int size() {
+        return count;
+    }
+
+    private void flush()
+        throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+
+    //Write the index and final header, then close the file
+    @Override
+    public void close()
+        throws IOException
+    {
+        flush();
+
+        long index_offset = position;
+        ByteBuffer index = ByteBuffer.allocate(1 << 16);
+        for (int i = 0; i < count; i++) {
+            if (!index.hasRemaining()) {
+                index.flip();
+                while (index.hasRemaining())
+                    channel.write(index);
+                index.clear();
+            }
+            index.putLong(offsets[i]);
+        }
+        index.flip();
+        while (index.hasRemaining())
+            channel.write(index);
+
+        channel.write(header(count, index_offset), 0);
+        channel.close();
+    }
+
+
+    /**
+     * Convert grids in the input format of RmitSudoku into one corpus.  All
+     * grids must have the same dimension and symbols as the first.
+     *
+     * @param args [corpus filename] [grid filename]...
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("BinaryGridWriter: [corpus filename] [grid filename]...");
+            System.exit(1);
+        }
+
+        BinaryGridWriter writer = null;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                StdSudokuGrid grid = new StdSudokuGrid();
+                grid.initGrid(args[i]);
+                if (writer == null)
+                    writer = new BinaryGridWriter(args[0], grid.getValidSymbols());
+                writer.write(grid);
+            }
+            writer.close();
+            System.out.println("Wrote " + writer.size() + " grids to " + args[0]);
+        }
+        catch (FileNotFoundException e) {
+            System.err.println("File not found. " + e.getMessage());
+        }
+        catch (IOException e) {
+            System.err.println("IOExeption occurred. " + e.getMessage());
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        }
+    } // end of main()
+
+} // end of class BinaryGridWriter
@@ -0,0 +1,414 @@
+/**
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+package grid;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * Canonical form of a standard Sudoku puzzle, the same for every puzzle that is
+ * one of its symmetries: relabelled symbols, permuted bands and stacks, permuted
+ * rows within a band and columns within a stack, and the transpose.  It is the
+ * lexicographically smallest of all those puzzles, after relabelling symbols 1, 2,
+ * ... in the order they first appear (empty cells are 0, so smallest).  The
+ * transform that reaches it is kept, so a solution of the canonical puzzle can be
+ * mapped back to a solution of the original and the other way.
+ *
+ * The search fixes a column order (transpose, stacks, columns within stacks) and
+ * then picks rows one at a time, branching only over rows that tie for the
+ * smallest next row, and cutting a branch as soon as it is larger than the
+ * smallest form found so far.  Grids with boxes larger than 3x3 have too many
+ * column orders for this, so for them only the symbols are relabelled: this
+ * still catches repeated and relabelled puzzles.
+ *
+ * Forms are written as keys with one character per cell: '.' for empty and
+ * label i as LineGridWriter.symbolChar(i - 1), so dimensions up to
+ * LineGridWriter.MAX_DIMENSION are supported.
+ */
+public class CanonicalForm
+{
+    //Largest box size searched over all symmetries
+    public static final int MAX_FULL_BOX_SIZE = 3;
+
+    private int grid_dim;
+    private int box_size;
+    private boolean full;
+
+    //Cells as symbol index + 1 (0 for empty), as given and transposed
+    private int[][][] views;
+    private ArrayList<int[]> column_orders;
+
+    //Smallest form so far, its number of decided rows and the transform reaching it
+    private int[][] best;
+    private int best_rows;
+    private boolean best_transposed;
+    private int[] best_row_order;
+    private int[] best_col_order;
+    private int[] best_labels;
+
+    //State of the search
+    private int[][] view;
+    private int[] col_order;
+    private boolean transposed;
+    private int[] row_order;
+    private boolean[] used_rows;
+    private boolean[] used_bands;
+    private int[] labels;           //label of each symbol index + 1, 0 if not yet labelled
+    private int num_labels;
+    private int[] new_labels;       //labels a candidate row would add
+    private int[] new_label_stamps;
+    private int stamp;
+    private boolean[] empty_rows;
+
+    //Buffers of each depth of the search
+    private int[][] rows_a;
+    private int[][] rows_b;
+    private boolean[][] ties_at;
+    private boolean[][] empty_tried_at;
+    private int[][] labelled_at;
+
+    private String key;
+
+    public CanonicalForm(StdSudokuGrid grid) {
+        int[][] g = grid.getGrid();
+        grid_dim = g.length;
+        if (grid_dim > LineGridWriter.MAX_DIMENSION)
+            throw new IllegalArgumentException("Grids larger than " + LineGridWriter.MAX_DIMENSION
+                + "x" + LineGridWriter.MAX_DIMENSION + " have no canonical form");
+        //Rectangular boxes are only relabelled: a transpose would turn them on their side
+        box_size = SudokuGrid.boxHeight(grid_dim);
+        full = box_size == SudokuGrid.boxWidth(grid_dim) && box_size <= MAX_FULL_BOX_SIZE;
+
+        views = new int[full ? 2 : 1][grid_dim][grid_dim];
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                int value = g[r][c] == -1 ? 0 : grid.symbolIndex(g[r][c]) + 1;
+                views[0][r][c] = value;
+                if (full)
+                    views[1][c][r] = value;
+            }
+        }
+
+        column_orders = new ArrayList<>();
+        if (full)
+            addColumnOrders(new int[box_size], 0, new boolean[box_size]);
+        else {
+            int[] identity = new int[grid_dim];
+            for (int c = 0; c < grid_dim; c++)
+                identity[c] = c;
+            column_orders.add(identity);
+        }
+
+        best = new int[grid_dim][grid_dim];
+        best_rows = 0;
+        row_order = new int[grid_dim];
+        used_rows = new boolean[grid_dim];
+        used_bands = new boolean[grid_dim];
+        labels = new int[grid_dim + 1];
+        new_labels = new int[grid_dim + 1];
+        new_label_stamps = new int[grid_dim + 1];
+        empty_rows = new boolean[grid_dim];
+        rows_a = new int[grid_dim][grid_dim];
+        rows_b = new int[grid_dim][grid_dim];
+        ties_at = new boolean[grid_dim][grid_dim];
+        empty_tried_at = new boolean[grid_dim][grid_dim];
+        labelled_at = new int[grid_dim][grid_dim];
+
+        for (int t = 0; t < views.length; t++) {
+            view = views[t];
+            transposed = t == 1;
+            for (int r = 0; r < grid_dim; r++) {
+                empty_rows[r] = true;
+                for (int c = 0; c < grid_dim; c++)
+                    empty_rows[r] &= view[r][c] == 0;
+            }
+            for (int[] order : column_orders) {
+                col_order = order;
+                search(0);
+            }
+        }
+
+        byte[] chars = new byte[grid_dim * grid_dim];
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++)
+                chars[r * grid_dim + c] = best[r][c] == 0 ? (byte)'.' : LineGridWriter.symbolChar(best[r][c] - 1);
+        }
+        key = new String(chars, StandardCharsets.US_ASCII);
+    } // end of CanonicalForm()
+
+
+    //Add every column order: stacks in any order, then columns in any order within each stack
+    private void addColumnOrders(int[] stacks, int stack, boolean[] used_stacks) {
+        if (stack == box_size) {
+            addColumnOrders(stacks, new int[grid_dim], 0, new boolean[grid_dim]);
+            return;
+        }
+        for (int s = 0; s < box_size; s++) {
+            if (used_stacks[s])
+                continue;
+            used_stacks[s] = true;
+            stacks[stack] = s;
+            addColumnOrders(stacks, stack + 1, used_stacks);
+            used_stacks[s] = false;
+        }
+    }
+
+    private void addColumnOrders(int[] stacks, int[] order, int k, boolean[] used_cols) {
+        if (k == grid_dim) {
+            column_orders.add(order.clone());
+            return;
+        }
+        int base = stacks[k / box_size] * box_size;
+        for (int c = base; c < base + box_size; c++) {
+            if (used_cols[c])
+                continue;
+            used_cols[c] = true;
+            order[k] = c;
+            addColumnOrders(stacks, order, k + 1, used_cols);
+            used_cols[c] = false;
+        }
+    }
+
+
+    //Choose the row placed at depth, given the rows, column order and labels so far
+    private void search(int depth) {
+        if (depth == grid_dim)
+            return;
+
+        //Rows that may come next: any row of an unused band at the start of a band, else the rest of this band
+        int first;
+        int last;
+        boolean band_start = full && depth % box_size == 0;
+        if (!full) {
+            first = depth;
+            last = depth;
+        }
+        else if (band_start) {
+            first = 0;
+            last = grid_dim - 1;
+        }
+        else {
+            first = (row_order[depth - 1] / box_size) * box_size;
+            last = first + box_size - 1;
+        }
+
+        //Smallest relabelled row among the candidates, and which candidates tie for it.  A candidate
+        //is dropped as soon as it is larger than the smallest so far, or than the smallest form
+        int[] smallest = null;
+        int[] candidate = rows_a[depth];
+        boolean[] ties = ties_at[depth];
+        Arrays.fill(ties, false);
+        for (int r = first; r <= last; r++) {
+            if (used_rows[r] || (band_start && used_bands[r / box_size]))
+                continue;
+            int[] bound = smallest != null ? smallest : depth < best_rows ? best[depth] : null;
+            int cmp = relabel(r, candidate, bound);
+            if (cmp > 0)
+                continue;
+            if (smallest == null || cmp < 0) {
+                //Keep this row and relabel the next candidates into the other buffer
+                int[] swap = smallest == null ? rows_b[depth] : smallest;
+                smallest = candidate;
+                candidate = swap;
+                Arrays.fill(ties, false);
+            }
+            ties[r] = true;
+        }
+        if (smallest == null)
+            return;
+
+        //Cut the branch if it is already larger than the smallest form, start a new one if smaller
+        if (depth < best_rows) {
+            int cmp = compare(smallest, best[depth]);
+            if (cmp > 0)
+                return;
+            if (cmp < 0)
+                best_rows = depth;
+        }
+        if (depth >= best_rows) {
+            System.arraycopy(smallest, 0, best[depth], 0, grid_dim);
+            best_rows = depth + 1;
+            if (depth == grid_dim - 1) {
+                //A complete, new smallest form: keep its transform
+                int last_row = firstTie(ties);
+                best_transposed = transposed;
+                best_col_order = col_order;
+                best_row_order = row_order.clone();
+                best_row_order[depth] = last_row;
+                int count = labelRow(last_row, depth);
+                best_labels = labels.clone();
+                unlabel(depth, count);
+            }
+        }
+
+        //Swapping two empty rows of one band changes nothing, so only one of them is tried per band
+        boolean[] empty_tried = empty_tried_at[depth];
+        Arrays.fill(empty_tried, false);
+        for (int r = first; r <= last; r++) {
+            if (!ties[r])
+                continue;
+            int band = full ? r / box_size : r;
+            if (empty_rows[r]) {
+                if (empty_tried[band])
+                    continue;
+                empty_tried[band] = true;
+            }
+
+            int count = labelRow(r, depth);
+            row_order[depth] = r;
+            used_rows[r] = true;
+            if (band_start)
+                used_bands[band] = true;
+
+            search(depth + 1);
+
+            if (band_start)
+                used_bands[band] = false;
+            used_rows[r] = false;
+            unlabel(depth, count);
+        }
+    }
+
+    private int firstTie(boolean[] ties) {
+        for (int r = 0; r < grid_dim; r++) {
+            if (ties[r])
+                return r;
+        }
+        return -1;
+    }
+
+    /**
+     * Relabel row r in the current column order into out, extending the labels so
+     * far in order of appearance, and compare it with bound.  Stops as soon as it
+     * is larger than bound.
+     *
+     * @return Negative, zero or positive as the row is smaller than, equal to or
+     *          larger than bound; negative if there is no bound.
+     */
+    private int relabel(int r, int[] out, int[] bound) {
+        //Labels this row adds are valid while new_label_stamps[value] == stamp
+        stamp++;
+        int next = num_labels + 1;
+        int cmp = bound == null ? -1 : 0;
+        int[] row = view[r];
+        for (int c = 0; c < grid_dim; c++) {
+            int value = row[col_order[c]];
+            int label;
+            if (value == 0)
+                label = 0;
+            else if (labels[value] != 0)
+                label = labels[value];
+            else {
+                if (new_label_stamps[value] != stamp) {
+                    new_label_stamps[value] = stamp;
+                    new_labels[value] = next++;
+                }
+                label = new_labels[value];
+            }
+            out[c] = label;
+            if (cmp == 0 && label != bound[c]) {
+                cmp = label < bound[c] ? -1 : 1;
+                if (cmp > 0)
+                    return cmp;
+            }
+        }
+        return cmp;
+    }
+
+    //Label the symbols of row r not yet labelled, in order of appearance, noting them for unlabel()
+    private int labelRow(int r, int depth) {
+        int count = 0;
+        for (int c = 0; c < grid_dim; c++) {
+            int value = view[r][col_order[c]];
+            if (value != 0 && labels[value] == 0) {
+                labels[value] = ++num_labels;
+                labelled_at[depth][count++] = value;
+            }
+        }
+        return count;
+    }
+
+    //Undo labelRow() at depth
+    private void unlabel(int depth, int count) {
+        for (int i = 0; i < count; i++)
+            labels[labelled_at[depth][i]] = 0;
+        num_labels -= count;
+    }
+
+    private static int compare(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i])
+                return a[i] < b[i] ? -1 : 1;
+        }
+        return 0;
+    }
+
+
+    //The canonical puzzle, one character per cell
+    public String getKey() {
+        return key;
+    }
+
+    //Labels of every symbol index: labels found by the search, then the unused labels in symbol order
+    private int[] fullLabels() {
+        int[] full_labels = new int[grid_dim];
+        int next = 1;
+        for (int l : best_labels)
+            next = Math.max(next, l + 1);
+        for (int i = 0; i < grid_dim; i++)
+            full_labels[i] = best_labels[i + 1] != 0 ? best_labels[i + 1] : next++;
+        return full_labels;
+    }
+
+    //Row and column of the original grid at row r and column c of the canonical form
+    private int originalRow(int r, int c) {
+        return best_transposed ? best_col_order[c] : best_row_order[r];
+    }
+
+    private int originalCol(int r, int c) {
+        return best_transposed ? best_row_order[r] : best_col_order[c];
+    }
+
+
+    /**
+     * Map a solution of the original grid to the canonical form, in the format
+     * of getKey().
+     */
+    public String encode(StdSudokuGrid solution) {
+        int[][] g = solution.getGrid();
+        int[] full_labels = fullLabels();
+        byte[] chars = new byte[grid_dim * grid_dim];
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                int value = g[originalRow(r, c)][originalCol(r, c)];
+                chars[r * grid_dim + c] = value == -1 ? (byte)'.'
+                    : LineGridWriter.symbolChar(full_labels[solution.symbolIndex(value)] - 1);
+            }
+        }
+        return new String(chars, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Map a solution of the canonical form, as returned by encode(), back to the
+     * original grid and fill it in.
+     */
+    public void decode(String canonical, StdSudokuGrid grid) {
+        int[][] g = grid.getGrid();
+        int[] valid_symbols = grid.getValidSymbols();
+        int[] full_labels = fullLabels();
+        int[] symbol_of_label = new int[grid_dim + 1];
+        for (int i = 0; i < grid_dim; i++)
+            symbol_of_label[full_labels[i]] = valid_symbols[i];
+
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                int label = LineGridWriter.symbolIndexOf((byte)canonical.charAt(r * grid_dim + c)) + 1;
+                g[originalRow(r, c)][originalCol(r, c)] = label == 0 ? -1 : symbol_of_label[label];
+            }
+        }
+    }
+
+} // end of class CanonicalForm
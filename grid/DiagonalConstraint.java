@@ -0,0 +1,28 @@
+/**
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+package grid;
+
+
+/**
+ * Sudoku-X: each of the two main diagonals holds every symbol once.
+ */
+public class DiagonalConstraint implements VariantConstraint
+{
+    @Override
+    public String getName() {
+        return "diagonal";
+    }
+
+    //Leading diagonal, then the anti-diagonal
+    @Override
+    public int[][] units(int grid_dim) {
+        int[][] units = new int[2][grid_dim];
+        for (int i = 0; i < grid_dim; i++) {
+            units[0][i] = i * grid_dim + i;
+            units[1][i] = i * grid_dim + (grid_dim - 1 - i);
+        }
+        return units;
+    }
+
+} // end of class DiagonalConstraint
@@ -0,0 +1,191 @@
+/**
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+package grid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * Checks a grid in one pass over its cells, keeping one bitmask of seen symbol
+ * indices per row, column, box and cage.  A grid of dimension n has units
+ * numbered rows 0 to n-1, columns n to 2n-1, boxes 2n to 3n-1 and cages (or the
+ * units of variant constraints) from 3n in the order of the grid's list; the
+ * check returns the first unit found violated, or VALID.
+ *
+ * A validator is made for one array of valid symbols and maps symbols to their
+ * index through a lookup table, so the grids reuse one validator for as long as
+ * their symbols do not change.
+ */
+public class GridValidator
+{
+    public static final int VALID = -1;
+
+    private int[] valid_symbols;
+    private int grid_dim;
+    private int box_height;
+    private int box_width;
+    //Ints per unit bitmask, one bit per symbol index
+    private int words;
+    private int[] masks;
+
+    //Symbol to index: table offset by min_symbol when the symbols are close together, map otherwise
+    private int min_symbol;
+    private int[] index_table;
+    private HashMap<Integer, Integer> index_map;
+
+    public GridValidator(int[] valid_symbols) {
+        this.valid_symbols = valid_symbols;
+        this.grid_dim = valid_symbols.length;
+        this.box_height = SudokuGrid.boxHeight(grid_dim);
+        this.box_width = grid_dim / box_height;
+        this.words = (grid_dim + 31) >>> 5;
+        this.masks = new int[3 * grid_dim * words];
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int symbol : valid_symbols) {
+            min = Math.min(min, symbol);
+            max = Math.max(max, symbol);
+        }
+        if (grid_dim > 0 && (long)max - min < 4L * grid_dim + 64) {
+            min_symbol = min;
+            index_table = new int[max - min + 1];
+            Arrays.fill(index_table, -1);
+            for (int i = 0; i < grid_dim; i++)
+                index_table[valid_symbols[i] - min] = i;
+        }
+        else {
+            index_map = new HashMap<>();
+            for (int i = 0; i < grid_dim; i++)
+                index_map.put(valid_symbols[i], i);
+        }
+    } // end of GridValidator()
+
+
+    //Whether this validator was made for these symbols
+    public boolean hasSymbols(int[] valid_symbols) {
+        return this.valid_symbols == valid_symbols;
+    }
+
+    //Index of the symbol in valid symbols, -1 if it is not one of them
+    public int symbolIndex(int symbol) {
+        if (index_table != null) {
+            long i = (long)symbol - min_symbol;
+            return i >= 0 && i < index_table.length ? index_table[(int)i] : -1;
+        }
+        Integer index = index_map.get(symbol);
+        return index == null ? -1 : index;
+    }
+
+
+    /**
+     * Check the rows, columns and boxes of a standard grid.  An empty cell or a
+     * cell that is not a valid symbol violates its row.
+     *
+     * @return First violated unit, VALID if there is none.
+     */
+    public int firstViolation(int[][] grid) {
+        Arrays.fill(masks, 0);
+
+        int col_base = grid_dim * words;
+        int box_base = 2 * grid_dim * words;
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                int index = symbolIndex(grid[r][c]);
+                if (index == -1)
+                    return r;
+
+                int word = index >>> 5;
+                int bit = 1 << index;
+                int box = SudokuGrid.boxOf(r, c, box_height, box_width);
+
+                if ((masks[r * words + word] & bit) != 0)
+                    return r;
+                if ((masks[col_base + c * words + word] & bit) != 0)
+                    return grid_dim + c;
+                if ((masks[box_base + box * words + word] & bit) != 0)
+                    return 2 * grid_dim + box;
+
+                masks[r * words + word] |= bit;
+                masks[col_base + c * words + word] |= bit;
+                masks[box_base + box * words + word] |= bit;
+            }
+        }
+        return VALID;
+    }
+
+    /**
+     * Check a Killer grid: the standard units, then that each cage has distinct
+     * symbols adding to its total.
+     *
+     * @return First violated unit, VALID if there is none.
+     */
+    public int firstViolation(int[][] grid, ArrayList<KillerSudokuGrid.Cage> cages) {
+        int unit = firstViolation(grid);
+        if (unit != VALID)
+            return unit;
+
+        //Rows, columns and boxes passed, so every cell holds a valid symbol
+        int[] seen = new int[words];
+        for (int k = 0; k < cages.size(); k++) {
+            KillerSudokuGrid.Cage cage = cages.get(k);
+            Arrays.fill(seen, 0);
+            long total = 0;
+            for (KillerSudokuGrid.Cell cell : cage.cells) {
+                int symbol = grid[cell.row][cell.col];
+                int index = symbolIndex(symbol);
+                if ((seen[index >>> 5] & (1 << index)) != 0)
+                    return 3 * grid_dim + k;
+                seen[index >>> 5] |= 1 << index;
+                total += symbol;
+            }
+            if (total != cage.total)
+                return 3 * grid_dim + k;
+        }
+        return VALID;
+    }
+
+
+    /**
+     * Check a variant grid: the standard units, then that each variant unit (see
+     * VariantConstraint, cells numbered r * grid_dim + c) has distinct symbols.
+     *
+     * @return First violated unit, VALID if there is none.
+     */
+    public int firstViolation(int[][] grid, int[][] units) {
+        int unit = firstViolation(grid);
+        if (unit != VALID)
+            return unit;
+
+        //Rows, columns and boxes passed, so every cell holds a valid symbol
+        int[] seen = new int[words];
+        for (int k = 0; k < units.length; k++) {
+            Arrays.fill(seen, 0);
+            for (int cell : units[k]) {
+                int index = symbolIndex(grid[cell / grid_dim][cell % grid_dim]);
+                if ((seen[index >>> 5] & (1 << index)) != 0)
+                    return 3 * grid_dim + k;
+                seen[index >>> 5] |= 1 << index;
+            }
+        }
+        return VALID;
+    }
+
+
+    //Name of a unit for messages, e.g. "row 3" (numbered from 0 as in the input files)
+    public static String describe(int unit, int grid_dim) {
+        if (unit == VALID)
+            return "none";
+        if (unit < grid_dim)
+            return "row " + unit;
+        if (unit < 2 * grid_dim)
+            return "column " + (unit - grid_dim);
+        if (unit < 3 * grid_dim)
+            return "box " + (unit - 2 * grid_dim);
+        return "cage " + (unit - 3 * grid_dim);
+    }
+
+} // end of class GridValidator
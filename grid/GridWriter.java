@@ -0,0 +1,138 @@
+/**
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+package grid;
+
+import java.io.*;
+
+
+/**
+ * Writes grids in the output format of outputGrid(): one row per line, symbols
+ * separated by commas and 'x' for empty cells.  Symbols are encoded as digits
+ * straight into one reused byte buffer, which is written to the underlying
+ * stream only when full, so no String is built per grid.
+ *
+ * Many grids can be appended to one writer (e.g. one file for a whole batch);
+ * they are separated by a blank line.  A single grid is written exactly as
+ * toString() would show it, and forGrid() sizes the buffer for just that
+ * grid.  To write to a FileChannel, wrap it with Channels.newOutputStream().
+ */
+public class GridWriter implements Closeable, Flushable
+{
+    //Most bytes one cell can take: sign, ten digits and a separator
+    private static final int MAX_CELL_BYTES = 12;
+    //Buffer of a writer for many grids
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private OutputStream out;
+    private byte[] buffer;
+    private int pos = 0;
+    private boolean first = true;
+
+    public GridWriter(OutputStream out) {
+        this(out, BUFFER_BYTES);
+    } // end of GridWriter()
+
+    public GridWriter(OutputStream out, int buffer_bytes) {
+        this.out = out;
+        buffer = new byte[Math.max(buffer_bytes, MAX_CELL_BYTES)];
+    } // end of GridWriter()
+
+    public GridWriter(String filename)
+        throws FileNotFoundException
+    {
+        this(new FileOutputStream(filename));
+    } // end of GridWriter()
+
+
+    //Writer for a single grid to a file, its buffer large enough for that grid at most
+    public static GridWriter forGrid(String filename, SudokuGrid grid)
+        throws FileNotFoundException
+    {
+        int grid_dim = grid.getGrid().length;
+        long bytes = (long)grid_dim * grid_dim * MAX_CELL_BYTES;
+        return new GridWriter(new FileOutputStream(filename), (int)Math.min(bytes, BUFFER_BYTES));
+    } // end of forGrid()
+
+
+    //Append a grid
+    public void write(SudokuGrid grid)
+        throws IOException
+    {
+        int[][] g = grid.getGrid();
+
+        if (!first) {
+            ensure(2);
+            buffer[pos++] = '\n';
+            buffer[pos++] = '\n';
+        }
+        first = false;
+
+        for (int i = 0; i < g.length; i++) {
+            for (int j = 0; j < g.length; j++) {
+                ensure(MAX_CELL_BYTES);
+                if (g[i][j] == -1)
+                    buffer[pos++] = 'x';
+                else
+                    writeInt(g[i][j]);
+                if (j != g.length - 1)
+                    buffer[pos++] = ',';
+            }
+            if (i != g.length - 1) {
+                ensure(1);
+                buffer[pos++] = '\n';
+            }
+        }
+    }
+
+    //Encode the digits of value at the end of the buffer
+    private void writeInt(int value) {
+        long v = value;
+        if (v < 0) {
+            buffer[pos++] = '-';
+            v = -v;
+        }
+        int start = pos;
+        do {
+            buffer[pos++] = (byte)('0' + v % 10);
+            v /= 10;
+        }
+        while (v > 0);
+
+        //Digits went in least significant first, reverse them
+        for (int a = start, b = pos - 1; a < b; a++, b--) {
+            byte tmp = buffer[a];
+            buffer[a] = buffer[b];
+            buffer[b] = tmp;
+        }
+    }
+
+    //Make room for this many more bytes in the buffer
+    private void ensure(int bytes)
+        throws IOException
+    {
+        if (pos + bytes > buffer.length) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+    }
+
+
+    @Override
+    public void flush()
+        throws IOException
+    {
+        out.write(buffer, 0, pos);
+        pos = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        flush();
+        out.close();
+    }
+
+} // end of class GridWriter
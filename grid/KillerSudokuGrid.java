@@ -5,6 +5,7 @@ package grid;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Scanner;
 
@@ -40,6 +41,7 @@ public class KillerSudokuGrid extends SudokuGrid
             for (Cell cell : cells) {
                 //"put" the cell key from the cell to the cage map
                 grid.cellToCageMap.put(getCellKey(cell), this);
+                grid.cell_cages[cell.row][cell.col] = this;
             }
             this.cells = cells;
             this.total = total;
@@ -50,6 +52,11 @@ public class KillerSudokuGrid extends SudokuGrid
     private int[] valid_symbols;
     private ArrayList<Cage> cages;
     private HashMap<String, Cage> cellToCageMap;
+    //Cage of each cell, for lookups without building a key
+    private Cage[][] cell_cages;
+    private GridValidator validator;
+    //Symbols as read by the last initGrid(), before comparing with the current ones
+    private int[] read_symbols;
 
     public KillerSudokuGrid() {
         super();
@@ -57,15 +64,51 @@ public class KillerSudokuGrid extends SudokuGrid
         cellToCageMap = new HashMap<>();
     } // end of KillerSudokuGrid()
 
+    //Construct an empty grid with these symbols and no cages yet, e.g. for generated puzzles
+    public KillerSudokuGrid(int[] valid_symbols) {
+        this();
+        this.valid_symbols = valid_symbols;
+        grid = new int[valid_symbols.length][valid_symbols.length];
+        cell_cages = new Cage[valid_symbols.length][valid_symbols.length];
+        reset();
+    } // end of KillerSudokuGrid()
+
 
     /* ********************************************************* */
+
+    @Override
+    public KillerSudokuGrid copy() {
+        KillerSudokuGrid copy = new KillerSudokuGrid(valid_symbols);
+        for (Cage cage : cages)
+            copy.addCage(new ArrayList<>(cage.cells), cage.total);
+        for (int i = 0; i < grid.length; i++)
+            copy.grid[i] = grid[i].clone();
+        return copy;
+    } // end of copy()
+
+    //Add a cage of these cells that must add to total
+    public void addCage(ArrayList<Cell> cells, int total) {
+        cages.add(new Cage(this, cells, total));
+    }
+
+    @Override
+    public void reset() {
+        for (int[] row : grid)
+            Arrays.fill(row, -1);
+        for (Cage[] row : cell_cages)
+            Arrays.fill(row, null);
+        cages.clear();
+        cellToCageMap.clear();
+    } // end of reset()
+
+    //Get the cage of a cell, null if it is in none
+    public Cage getCage(int row, int col) {
+        return cell_cages[row][col];
+    }
+
     //Get this symbols index in valid_symbols
     public int symbolIndex(int symbol) {
-        for (int i = 0; i < valid_symbols.length; i++) {
-            if (valid_symbols[i] == symbol)
-                return i;
-        }
-        return -1;
+        return validator().symbolIndex(symbol);
     }
 
     //Get key from cell
@@ -81,25 +124,38 @@ public class KillerSudokuGrid extends SudokuGrid
     public void initGrid(String filename)
         throws FileNotFoundException, IOException
     {
-        File inFile = new File(filename);
-        Scanner in = new Scanner(inFile);
+        Scanner in = new Scanner(new File(filename));
+        initGrid(in);
+        in.close();
+    } // end of initBoard()
+
+    //Load the grid from text in the same format as the input files, e.g. a request body
+    public void initGrid(Reader reader) {
+        initGrid(new Scanner(reader));
+    } // end of initGrid()
+
+    private void initGrid(Scanner in) {
 
         //Get dimension of grid
         int grid_dim = in.nextInt();
+        if (grid_dim < 1)
+            throw new IllegalArgumentException("Grid dimension must be at least 1: " + grid_dim);
 
-        //Get valid symbols, store in array
-        valid_symbols = new int[grid_dim];
+        //Get valid symbols, store in array (keeping the current one if they are the same)
+        if (read_symbols == null || read_symbols.length != grid_dim)
+            read_symbols = new int[grid_dim];
         for (int i = 0; i < grid_dim; i++) {
-            valid_symbols[i] = in.nextInt();
+            read_symbols[i] = in.nextInt();
         }
+        if (!Arrays.equals(read_symbols, valid_symbols))
+            valid_symbols = read_symbols.clone();
 
-        //Fill empty grid
-        grid = new int[grid_dim][grid_dim];
-        for (int i = 0; i < grid_dim; i++) {
-            for (int j = 0; j < grid_dim; j++) {
-                grid[i][j] = -1;
-            }
+        //Empty grid and no cages, reusing the cells if the dimension is unchanged
+        if (grid == null || grid.length != grid_dim) {
+            grid = new int[grid_dim][grid_dim];
+            cell_cages = new Cage[grid_dim][grid_dim];
         }
+        reset();
         
         //Get number of cages
         int num_cages = in.nextInt();
@@ -134,25 +190,48 @@ public class KillerSudokuGrid extends SudokuGrid
             }
         }
 
-
-        in.close();
-
-    } // end of initBoard()
+    } // end of initGrid()
 
 
     @Override
     public void outputGrid(String filename)
         throws FileNotFoundException, IOException
     {
+        //Same text as toString(), encoded straight into a buffer sized for this grid
+        GridWriter writer = GridWriter.forGrid(filename, this);
+        writer.write(this);
+        writer.close();
+    } // end of outputBoard()
+
+
+    //Write the grid out in the same format initGrid() reads: dimension, symbols, number of cages, then one cage per line
+    public void outputInitGrid(String filename)
+        throws FileNotFoundException, IOException
+    {
+        StringBuilder outStr = new StringBuilder();
+        outStr.append(grid.length).append("\n");
+        for (int i = 0; i < valid_symbols.length; i++) {
+            outStr.append(valid_symbols[i]);
+            outStr.append(i != valid_symbols.length - 1 ? " " : "\n");
+        }
+        outStr.append(cages.size()).append("\n");
+        for (Cage cage : cages) {
+            outStr.append(cage.total);
+            for (Cell cell : cage.cells)
+                outStr.append(" ").append(cell.row).append(",").append(cell.col);
+            outStr.append("\n");
+        }
+
         FileOutputStream outFile = new FileOutputStream(filename);
-        outFile.write(this.toString().getBytes());
+        outFile.write(outStr.toString().getBytes());
         outFile.close();
-    } // end of outputBoard()
+    } // end of outputInitGrid()
 
 
     @Override
     public String toString() {
-        StringBuilder outStr = new StringBuilder();
+        //Presized for up to two digits and a separator per cell, so it rarely grows
+        StringBuilder outStr = new StringBuilder(grid.length * grid.length * 3);
         for (int i = 0; i < grid.length; i++) {
             for (int j = 0; j < grid.length; j++) {
                 if (grid[i][j] != -1)
@@ -172,86 +251,21 @@ public class KillerSudokuGrid extends SudokuGrid
 
     @Override
     public boolean validate() {
+        return firstViolatedUnit() == GridValidator.VALID;
+    } // end of validate()
 
-        ArrayList<Integer> remaining_symbols = new ArrayList<>();
-
-        //Check rows
-        for (int i = 0; i < grid.length; i++) {
-
-            for (int e : valid_symbols)
-                remaining_symbols.add(e);
-
-            for (int j = 0; j < grid.length; j++) {
-                if (grid[i][j] == -1)
-                    return false;
-                if (remaining_symbols.contains(grid[i][j]))
-                    remaining_symbols.remove((Object)grid[i][j]);
-                else
-                    return false;
-            }
-
-            remaining_symbols.clear();
-        }
-
-
-        //Check cols
-        for (int i = 0; i < grid.length; i++) {
-
-            for (int e : valid_symbols)
-                remaining_symbols.add(e);
-
-            for (int j = 0; j < grid.length; j++) {
-                if (remaining_symbols.contains(grid[j][i]))
-                    remaining_symbols.remove((Object)grid[j][i]);
-                else
-                    return false;
-            }
-
-            remaining_symbols.clear();
-        }
-
-
-        //Check boxes
-        int box_size = (int)Math.sqrt(grid.length);
-        for (int i = 0; i < grid.length; i += box_size) {
-            for (int j = 0; j < grid.length; j += box_size) {
-
-                for (int e : valid_symbols)
-                    remaining_symbols.add(e);
-
-                for (int k = 0; k < box_size; k++) {
-                    for (int m = 0; m < box_size; m++) {
-
-                        if (remaining_symbols.contains(grid[i + k][j + m]))
-                            remaining_symbols.remove((Object)grid[i + k][j + m]);
-                        else
-                            return false;
-
-                    }
-                }
-
-                remaining_symbols.clear();
-            }
-        }
-
-        //Check cages
-        ArrayList<Integer> symbols_in_cage = new ArrayList<>();
-        for (Cage cage : cages) {
-            int total = 0;
-            for (Cell cell : cage.cells) {
-                total += grid[cell.row][cell.col];
-                //unique symbols in cage
-                if (symbols_in_cage.contains(grid[cell.row][cell.col]))
-                    return false;
-                symbols_in_cage.add(grid[cell.row][cell.col]);
-            }
-            if (total != cage.total)
-                return false;
-            symbols_in_cage.clear();
-        }
+    //First row, column, box, then each cage found violated, numbered as in GridValidator, or GridValidator.VALID
+    @Override
+    public int firstViolatedUnit() {
+        return validator().firstViolation(grid, cages);
+    }
 
-        return true;
-    } // end of validate()
+    //Validator for the current symbols, made again only when the symbols change
+    private GridValidator validator() {
+        if (validator == null || !validator.hasSymbols(valid_symbols))
+            validator = new GridValidator(valid_symbols);
+        return validator;
+    }
 
     public int[][] getGrid() {
         return grid;
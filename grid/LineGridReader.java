@@ -0,0 +1,137 @@
+/**
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+package grid;
+
+import java.io.*;
+
+
+/**
+ * Reader of standard Sudoku puzzles stored one per line, as in most public
+ * puzzle corpora: 81 characters for 9x9, 256 for 16x16, 625 for 25x25 (16 for
+ * 4x4).  Cells are in row-major order, '.' or '0' is an empty cell, and symbol
+ * index i is written '1' to '9' and then 'A' onwards (see LineGridWriter).  The
+ * grid's valid symbols are 1 to the dimension.  Blank lines and lines starting
+ * with '#' are skipped.
+ *
+ * Input is read through one byte buffer and each line is decoded straight into
+ * the cells of a grid that is reused for every puzzle of the same dimension, so
+ * no String is made per line.
+ */
+public class LineGridReader implements Closeable
+{
+    private InputStream in;
+    private byte[] buffer = new byte[1 << 16];
+    private int pos = 0;
+    private int limit = 0;
+    private byte[] line = new byte[1024];
+    private int lineNumber = 0;
+
+    //Valid symbols 1 to dimension, shared by every grid of that dimension
+    private int[][] symbolsByDimension = new int[LineGridWriter.MAX_DIMENSION + 1][];
+
+    public LineGridReader(InputStream in) {
+        this.in = in;
+    } // end of LineGridReader()
+
+    public LineGridReader(String filename)
+        throws FileNotFoundException
+    {
+        this(new FileInputStream(filename));
+    } // end of LineGridReader()
+
+
+    //Line number of the puzzle last read, for error messages
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+
+    //Read the next line into line[], returning its length without the line ending, or -1 at end of input
+    private int readLine()
+        throws IOException
+    {
+        int length = 0;
+        while (true) {
+            if (pos == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return length > 0 ? length : -1;
+                }
+            }
+            byte b = buffer[pos++];
+            if (b == '\n')
+                return length;
+            if (b == '\r')
+                continue;
+            if (length == line.length) {
+                byte[] longer = new byte[line.length * 2];
+                System.arraycopy(line, 0, longer, 0, length);
+                line = longer;
+            }
+            line[length++] = b;
+        }
+    }
+
+
+    /**
+     * Load the next puzzle into grid, reusing its cells if it already has the
+     * puzzle's dimension.
+     *
+     * @return False if there are no more puzzles.
+     *
+     * @throws IOException If reading fails or a line is not a puzzle.
+     */
+    public boolean next(StdSudokuGrid grid)
+        throws IOException
+    {
+        int length;
+        do {
+            length = readLine();
+            lineNumber++;
+            if (length == -1)
+                return false;
+        }
+        while (length == 0 || line[0] == '#');
+
+        int grid_dim = (int)Math.sqrt(length);
+        if (grid_dim * grid_dim != length || grid_dim > LineGridWriter.MAX_DIMENSION)
+            throw new IOException("Line " + lineNumber + " has " + length + " characters, which is not a puzzle");
+
+        if (symbolsByDimension[grid_dim] == null) {
+            symbolsByDimension[grid_dim] = new int[grid_dim];
+            for (int i = 0; i < grid_dim; i++)
+                symbolsByDimension[grid_dim][i] = i + 1;
+        }
+        int[][] g = grid.getGrid();
+        if (g == null || g.length != grid_dim)
+            g = new int[grid_dim][grid_dim];
+        grid.initGrid(symbolsByDimension[grid_dim], g);
+
+        int i = 0;
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                byte b = line[i++];
+                int index = LineGridWriter.symbolIndexOf(b);
+                if (b == '.' || b == '0')
+                    g[r][c] = -1;
+                else if (index >= 0 && index < grid_dim)
+                    g[r][c] = index + 1;
+                else
+                    throw new IOException("Line " + lineNumber + " has an invalid cell '" + (char)b + "'");
+            }
+        }
+        return true;
+    }
+
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        in.close();
+    }
+
+} // end of class LineGridReader
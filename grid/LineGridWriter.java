@@ -0,0 +1,88 @@
+/**
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+package grid;
+
+import java.io.*;
+
+
+/**
+ * Writer of standard Sudoku grids one per line, the format read by
+ * LineGridReader.  Symbol index i is written '1' to '9', then 'A' onwards, and
+ * empty cells are written '.'.  Each grid is encoded into one reused byte array
+ * and written through a buffered stream.
+ */
+public class LineGridWriter implements Closeable, Flushable
+{
+    //Largest dimension with a character for every symbol: '1' to '9' then 'A' to 'Z'
+    public static final int MAX_DIMENSION = 35;
+
+    private OutputStream out;
+    private byte[] line = new byte[0];
+
+    public LineGridWriter(OutputStream out) {
+        this.out = out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out, 1 << 16);
+    } // end of LineGridWriter()
+
+    public LineGridWriter(String filename)
+        throws FileNotFoundException
+    {
+        this(new FileOutputStream(filename));
+    } // end of LineGridWriter()
+
+
+    //Character of a symbol index
+    public static byte symbolChar(int index) {
+        return (byte)(index < 9 ? '1' + index : 'A' + index - 9);
+    }
+
+    //Symbol index of a character, -1 if it is not a symbol character
+    public static int symbolIndexOf(byte b) {
+        if (b >= '1' && b <= '9')
+            return b - '1';
+        if (b >= 'A' && b <= 'Z')
+            return b - 'A' + 9;
+        if (b >= 'a' && b <= 'z')
+            return b - 'a' + 9;
+        return -1;
+    }
+
+
+    //Write the grid as one line
+    public void write(StdSudokuGrid grid)
+        throws IOException
+    {
+        int[][] g = grid.getGrid();
+        if (g.length > MAX_DIMENSION)
+            throw new IOException("Grids larger than " + MAX_DIMENSION + "x" + MAX_DIMENSION + " have no line format");
+
+        int length = g.length * g.length + 1;
+        if (line.length < length)
+            line = new byte[length];
+
+        int i = 0;
+        for (int r = 0; r < g.length; r++) {
+            for (int c = 0; c < g.length; c++) {
+                line[i++] = g[r][c] == -1 ? (byte)'.' : symbolChar(grid.symbolIndex(g[r][c]));
+            }
+        }
+        line[i] = '\n';
+        out.write(line, 0, length);
+    }
+
+
+    @Override
+    public void flush()
+        throws IOException
+    {
+        out.flush();
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        out.close();
+    }
+
+} // end of class LineGridWriter
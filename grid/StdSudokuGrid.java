@@ -5,6 +5,7 @@ package grid;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Scanner;
 
 
@@ -21,47 +22,127 @@ public class StdSudokuGrid extends SudokuGrid
 {
     private int[][] grid;
     private int[] valid_symbols;
+    private GridValidator validator;
+    //Symbols as read by the last initGrid(), before comparing with the current ones
+    private int[] read_symbols;
+    //Rules of the variant played on this grid, if any, kept across reset() and initGrid()
+    private ArrayList<VariantConstraint> constraints = new ArrayList<>();
+    //Units of the constraints, made again only when the dimension or constraints change
+    private int[][] variant_units = new int[0][];
+    private int variant_units_dim = -1;
 
     public StdSudokuGrid() {
         super();
     } // end of StdSudokuGrid()
 
+    //Construct a grid directly from its symbols and cells (-1 for empty), e.g. for generated puzzles
+    public StdSudokuGrid(int[] valid_symbols, int[][] grid) {
+        super();
+        this.valid_symbols = valid_symbols;
+        this.grid = grid;
+    } // end of StdSudokuGrid()
+
 
     /* ********************************************************* */
+
+    @Override
+    public StdSudokuGrid copy() {
+        int[][] cells = new int[grid.length][];
+        for (int i = 0; i < grid.length; i++)
+            cells[i] = grid[i].clone();
+        StdSudokuGrid copy = new StdSudokuGrid(valid_symbols, cells);
+        for (VariantConstraint constraint : constraints)
+            copy.addConstraint(constraint);
+        return copy;
+    } // end of copy()
     
-    //Get the index of the symbol in valid symbols
-    public int symbolIndex(int symbol){
-        for (int i = 0; i < valid_symbols.length; i ++){
-            if (valid_symbols[i] == symbol){
-                return i;
+    //Load the grid directly from its symbols and cells (-1 for empty), the arrays are used as is, not copied
+    public void initGrid(int[] valid_symbols, int[][] grid) {
+        this.valid_symbols = valid_symbols;
+        this.grid = grid;
+    } // end of initGrid()
+
+    @Override
+    public void reset() {
+        for (int[] row : grid)
+            Arrays.fill(row, -1);
+    } // end of reset()
+
+    //Add a variant rule to the grid, e.g. the diagonals of Sudoku-X
+    public void addConstraint(VariantConstraint constraint) {
+        constraints.add(constraint);
+        variant_units_dim = -1;
+    }
+
+    public ArrayList<VariantConstraint> getConstraints() {
+        return constraints;
+    }
+
+    public boolean hasConstraints() {
+        return !constraints.isEmpty();
+    }
+
+    /**
+     * Units of every variant constraint, in the order the constraints were added
+     * (see VariantConstraint).  The same array is returned while the dimension and
+     * constraints are unchanged, so solvers can tell when to rebuild.
+     *
+     * @return Cells of each unit, numbered r * dimension + c; empty if there are
+     *          no constraints.
+     */
+    public int[][] variantUnits() {
+        if (variant_units_dim != grid.length) {
+            ArrayList<int[]> units = new ArrayList<>();
+            for (VariantConstraint constraint : constraints) {
+                for (int[] unit : constraint.units(grid.length))
+                    units.add(unit);
             }
+            variant_units = units.toArray(new int[units.size()][]);
+            variant_units_dim = grid.length;
         }
-        return -1;
+        return variant_units;
+    }
+
+    //Get the index of the symbol in valid symbols
+    public int symbolIndex(int symbol){
+        return validator().symbolIndex(symbol);
     }
 
     @Override
     public void initGrid(String filename)
         throws FileNotFoundException, IOException
     {
-        File inFile = new File(filename);
-        Scanner in = new Scanner(inFile);
+        Scanner in = new Scanner(new File(filename));
+        initGrid(in);
+        in.close();
+    } // end of initBoard()
+
+    //Load the grid from text in the same format as the input files, e.g. a request body
+    public void initGrid(Reader reader) {
+        initGrid(new Scanner(reader));
+    } // end of initGrid()
+
+    private void initGrid(Scanner in) {
 
         //Get the dimension of the sudoku grid
         int grid_dim = in.nextInt();
+        if (grid_dim < 1)
+            throw new IllegalArgumentException("Grid dimension must be at least 1: " + grid_dim);
 
-        //store the list of integers from input file to valid symbols array
-        valid_symbols = new int[grid_dim];
+        //store the list of integers from input file to valid symbols array, keeping the
+        //current array (and its validator) if the symbols are the same
+        if (read_symbols == null || read_symbols.length != grid_dim)
+            read_symbols = new int[grid_dim];
         for (int i = 0; i < grid_dim; i++) {
-            valid_symbols[i] = in.nextInt();
+            read_symbols[i] = in.nextInt();
         }
+        if (!Arrays.equals(read_symbols, valid_symbols))
+            valid_symbols = read_symbols.clone();
 
-        //fill the empty grid with -1
-        grid = new int[grid_dim][grid_dim];
-        for (int i = 0; i < grid_dim; i++){
-            for (int j = 0; j < grid_dim; j++){
-                grid[i][j] = -1;
-            }
-        }
+        //fill the empty grid with -1, reusing the cells if the dimension is unchanged
+        if (grid == null || grid.length != grid_dim)
+            grid = new int[grid_dim][grid_dim];
+        reset();
 
         //fill the grid with the initial numbers from input file
         while(in.hasNext()){
@@ -74,23 +155,47 @@ public class StdSudokuGrid extends SudokuGrid
 
             grid[row][col] = in.nextInt();
         }
-        in.close();
-    } // end of initBoard()
+    } // end of initGrid()
 
 
     @Override
     public void outputGrid(String filename)
         throws FileNotFoundException, IOException
     {
+        //Same text as toString(), encoded straight into a buffer sized for this grid
+        GridWriter writer = GridWriter.forGrid(filename, this);
+        writer.write(this);
+        writer.close();
+    } // end of outputBoard()
+
+
+    //Write the grid out in the same format initGrid() reads: dimension, symbols, then one "r,c v" per filled cell
+    public void outputInitGrid(String filename)
+        throws FileNotFoundException, IOException
+    {
+        StringBuilder outStr = new StringBuilder();
+        outStr.append(grid.length).append('\n');
+        for (int i = 0; i < valid_symbols.length; i++) {
+            outStr.append(valid_symbols[i]);
+            outStr.append(i != valid_symbols.length - 1 ? ' ' : '\n');
+        }
+        for (int i = 0; i < grid.length; i++) {
+            for (int j = 0; j < grid.length; j++) {
+                if (grid[i][j] != -1)
+                    outStr.append(i).append(',').append(j).append(' ').append(grid[i][j]).append('\n');
+            }
+        }
+
         FileOutputStream outFile = new FileOutputStream(filename);
-        outFile.write(this.toString().getBytes());
+        outFile.write(outStr.toString().getBytes());
         outFile.close();
-    } // end of outputBoard()
+    } // end of outputInitGrid()
 
 
     @Override
     public String toString() {
-        StringBuilder outStr = new StringBuilder();
+        //Presized for up to two digits and a separator per cell, so it rarely grows
+        StringBuilder outStr = new StringBuilder(grid.length * grid.length * 3);
         for(int i = 0; i < grid.length; i++){
             for (int j = 0; j < grid.length; j++ ){
                 //loop through the grid on each row by iterating through each of the columns
@@ -118,84 +223,38 @@ public class StdSudokuGrid extends SudokuGrid
 
     @Override
     public boolean validate() {
-        //Create an array list
-        ArrayList<Integer> remaining_symbols = new ArrayList<>();
-
-        //Check rows
-        for (int i = 0; i < grid.length; i++) {
-            //add all the values (e.g. list of integers) in valid symbols to the arraylist
-            for (int e : valid_symbols)
-                remaining_symbols.add(e);
-
-            //iterate through the columns
-            for (int j = 0; j < grid.length; j++) {
-                //if still contains empty location, return false
-                if (grid[i][j] == -1)
-                    return false;
-
-                //if the remaining symbols contains the symbols/integer in the grid, remove the object
-                if (remaining_symbols.contains(grid[i][j]))
-                    remaining_symbols.remove((Object)grid[i][j]);
-                    
-                //if the remaining symbols does not contain in the grid, return false
-                else
-                    return false;
-            }
-
-            remaining_symbols.clear();
-        }
-
-
-        //Check cols
-        for (int i = 0; i < grid.length; i++) {
-            //add all the values (e.g. list of integers) in valid symbols to the arraylist
-            for (int e : valid_symbols)
-                remaining_symbols.add(e);
-            //iterate through the rows
-            for (int j = 0; j < grid.length; j++) {
-
-                //if the remaining symbols contains the symbols/integer in the grid, remove the object
-                if (remaining_symbols.contains(grid[j][i]))
-                    remaining_symbols.remove((Object)grid[j][i]);
-                    
-                //if the remaining symbols does not contain in the grid, return false
-                else
-                    return false;
-            }
-
-            remaining_symbols.clear();
-        }
-
+        return firstViolatedUnit() == GridValidator.VALID;
+    } // end of validate()
 
-        //Check boxes
-        int box_size = (int)Math.sqrt(grid.length); //square root the grid length to get box size
-        //iterate through each box row
-        for (int i = 0; i < grid.length; i += box_size) {
-            //iterate through each box column
-            for (int j = 0; j < grid.length; j += box_size) {
-                //add all the values (e.g. list of integers) in valid symbols to the arraylist
-                for (int e : valid_symbols)
-                    remaining_symbols.add(e);
-                //iterate through the row in the box
-                for (int k = 0; k < box_size; k++) {
-                    //iterate through the column in the box
-                    for (int m = 0; m < box_size; m++) {
-                        //if the remaining symbols contains the symbols/integer in the grid, remove the object
-                        if (remaining_symbols.contains(grid[i + k][j + m]))
-                            remaining_symbols.remove((Object)grid[i + k][j + m]);
-                        //if the remaining symbols does not contain in the grid, return false
-                        else
-                            return false;
-
-                    }
-                }
+    //First row, column, box or variant unit found violated, numbered as in GridValidator, or GridValidator.VALID
+    @Override
+    public int firstViolatedUnit() {
+        if (constraints.isEmpty())
+            return validator().firstViolation(grid);
+        return validator().firstViolation(grid, variantUnits());
+    }
 
-                remaining_symbols.clear();
+    //Variant units are named by their constraint, e.g. "diagonal 1"
+    @Override
+    public String describeUnit(int unit) {
+        int k = unit - 3 * grid.length;
+        if (k >= 0) {
+            for (VariantConstraint constraint : constraints) {
+                int num_units = constraint.units(grid.length).length;
+                if (k < num_units)
+                    return constraint.getName() + " " + k;
+                k -= num_units;
             }
         }
+        return super.describeUnit(unit);
+    }
 
-        return true;
-    } // end of validate()
+    //Validator for the current symbols, made again only when the symbols change
+    private GridValidator validator() {
+        if (validator == null || !validator.hasSymbols(valid_symbols))
+            validator = new GridValidator(valid_symbols);
+        return validator;
+    }
 
     //getter for grid
     public int[][] getGrid() {
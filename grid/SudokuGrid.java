@@ -30,6 +30,16 @@ public abstract class SudokuGrid
         throws FileNotFoundException, IOException;
 
 
+    /**
+     * Empties every cell (and drops constraints read with the puzzle, such as
+     * cages, but not the variant constraints of the game), keeping the grid's
+     * storage.  Loading a puzzle of the same dimension with initGrid() also
+     * reuses that storage, so one grid can be reloaded puzzle after puzzle
+     * without allocating new cells.
+     */
+    public abstract void reset();
+
+
     /**
      * Write out the current values in the grid to file.  This must be implemented
      * in order for your assignment to be evaluated by our testing.
@@ -44,6 +54,25 @@ public abstract class SudokuGrid
         throws FileNotFoundException, IOException;
 
 
+    /**
+     * Current values of the grid, indexed [row][column], with -1 for empty cells.
+     * This is the grid itself, not a copy.
+     *
+     * @return Cells of the grid.
+     */
+    public abstract int[][] getGrid();
+
+
+    /**
+     * Copy of the grid with its own cells, sharing nothing that a solver writes
+     * to, so the copy can be solved on another thread.  Symbols, cages and
+     * variant constraints are kept.
+     *
+     * @return The copy.
+     */
+    public abstract SudokuGrid copy();
+
+
     /**
      * Converts grid to a String representation.  Useful for displaying to
      * output streams.
@@ -62,4 +91,87 @@ public abstract class SudokuGrid
      */
     public abstract boolean validate();
 
+
+    /**
+     * Checks the grid like validate(), but reports which unit failed, for
+     * diagnostics.  Units are numbered as in GridValidator: rows, then columns,
+     * then boxes, then any game specific units such as cages.
+     *
+     * @return First violated unit, or GridValidator.VALID if the grid is valid.
+     */
+    public abstract int firstViolatedUnit();
+
+
+    /**
+     * Name of a unit numbered as in firstViolatedUnit(), for messages.
+     *
+     * @param unit Unit number.
+     *
+     * @return Name of the unit, e.g. "row 3".
+     */
+    public String describeUnit(int unit) {
+        return GridValidator.describe(unit, getGrid().length);
+    }
+
+
+    /**
+     * Height of the boxes of this grid, see boxHeight().
+     *
+     * @return Rows in each box.
+     */
+    public int getBoxHeight() {
+        return boxHeight(getGrid().length);
+    }
+
+
+    /**
+     * Width of the boxes of this grid, see boxHeight().
+     *
+     * @return Columns in each box.
+     */
+    public int getBoxWidth() {
+        return boxWidth(getGrid().length);
+    }
+
+
+    /**
+     * Height of the boxes of a grid of this dimension: its largest factor no
+     * greater than its square root.  Square dimensions have square boxes, others
+     * have boxes wider than they are tall, e.g. 2x3 boxes in a 6x6 grid and 3x4
+     * boxes in a 12x12 grid.  A prime dimension has boxes one row high.
+     *
+     * @param grid_dim Dimension of the grid.
+     *
+     * @return Rows in each box.
+     */
+    public static int boxHeight(int grid_dim) {
+        int height = (int)Math.sqrt(grid_dim);
+        while (height > 1 && grid_dim % height != 0)
+            height--;
+        return Math.max(height, 1);
+    }
+
+
+    /**
+     * Width of the boxes of a grid of this dimension, see boxHeight().
+     *
+     * @param grid_dim Dimension of the grid.
+     *
+     * @return Columns in each box.
+     */
+    public static int boxWidth(int grid_dim) {
+        return grid_dim / boxHeight(grid_dim);
+    }
+
+
+    /**
+     * Box containing a cell.  There are box_height boxes across the grid (its
+     * dimension divided by box_width), numbered across then down from 0.
+     *
+     * @return Box number of cell (r, c).
+     */
+    public static int boxOf(int r, int c, int box_height, int box_width) {
+        return (r / box_height) * box_height + c / box_width;
+    }
+
 } // end of abstract class SudokuGrid
@@ -0,0 +1,98 @@
+/**
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+package grid;
+
+import java.util.Arrays;
+
+
+/**
+ * An extra rule of a Sudoku variant, added to a standard grid on top of its
+ * rows, columns and boxes, e.g. the diagonals of Sudoku-X.
+ *
+ * A constraint is given as units: groups of cells that must all hold different
+ * symbols.  A unit of as many cells as the grid dimension must hold every symbol
+ * exactly once, like a row; the exact cover solvers add it as primary columns.
+ * A smaller unit must hold each symbol at most once; the solvers add it as
+ * secondary columns, which rows may cover but a solution need not.  Backtracking
+ * solvers check both kinds with one bitmask of used symbols per unit.
+ */
+public interface VariantConstraint
+{
+    /**
+     * Name of the constraint's units in messages, e.g. "diagonal".
+     *
+     * @return Name of the units.
+     */
+    String getName();
+
+
+    /**
+     * Units of this constraint in a grid of this dimension.  Each unit lists its
+     * cells as r * grid_dim + c, and no cell appears twice in one unit.
+     *
+     * @param grid_dim Dimension of the grid.
+     *
+     * @return Cells of each unit.
+     */
+    int[][] units(int grid_dim);
+
+
+    /**
+     * Constraint added by a variant game type.
+     *
+     * @param gameType "sudoku-x", "windoku" or "anti-knight".
+     *
+     * @return The game's constraint, or null if the game type has none.
+     */
+    static VariantConstraint forGame(String gameType) {
+        switch (gameType) {
+            case "sudoku-x":
+                return new DiagonalConstraint();
+            case "windoku":
+                return new WindokuConstraint();
+            case "anti-knight":
+                return new AntiKnightConstraint();
+            default:
+                return null;
+        }
+    }
+
+
+    /**
+     * Units containing each cell, for solvers that check a cell's units.
+     *
+     * @param grid_dim Dimension of the grid.
+     * @param units Units of the grid's constraints.
+     *
+     * @return Indices in units of the units of each cell, by r * grid_dim + c,
+     *          in increasing order.
+     */
+    static int[][] cellUnits(int grid_dim, int[][] units) {
+        int[] counts = new int[grid_dim * grid_dim];
+        for (int[] unit : units) {
+            for (int cell : unit)
+                counts[cell]++;
+        }
+        int[][] cell_units = new int[grid_dim * grid_dim][];
+        for (int cell = 0; cell < cell_units.length; cell++) {
+            cell_units[cell] = new int[counts[cell]];
+            counts[cell] = 0;
+        }
+        for (int u = 0; u < units.length; u++) {
+            for (int cell : units[u])
+                cell_units[cell][counts[cell]++] = u;
+        }
+        return cell_units;
+    }
+
+
+    /**
+     * Whether two lists of units are the same, so that whatever a solver built
+     * for one also fits the other.
+     */
+    static boolean sameUnits(int[][] a, int[][] b) {
+        return a == b || Arrays.deepEquals(a, b);
+    }
+
+} // end of interface VariantConstraint
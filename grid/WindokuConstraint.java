@@ -0,0 +1,42 @@
+/**
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+package grid;
+
+
+/**
+ * Windoku: extra windows the size of a box each hold every symbol once.  The
+ * windows sit one cell in from the edge with one cell between them, so a 9x9
+ * grid has four, starting at rows and columns 1 and 5.
+ */
+public class WindokuConstraint implements VariantConstraint
+{
+    @Override
+    public String getName() {
+        return "window";
+    }
+
+    //Windows numbered across then down
+    @Override
+    public int[][] units(int grid_dim) {
+        int box_height = SudokuGrid.boxHeight(grid_dim);
+        int box_width = grid_dim / box_height;
+        int down = Math.max(0, (grid_dim - 1) / (box_height + 1));
+        int across = Math.max(0, (grid_dim - 1) / (box_width + 1));
+
+        int[][] units = new int[down * across][grid_dim];
+        for (int i = 0; i < down; i++) {
+            for (int j = 0; j < across; j++) {
+                int top = 1 + i * (box_height + 1);
+                int left = 1 + j * (box_width + 1);
+                int k = 0;
+                for (int r = top; r < top + box_height; r++) {
+                    for (int c = left; c < left + box_width; c++)
+                        units[i * across + j][k++] = r * grid_dim + c;
+                }
+            }
+        }
+        return units;
+    }
+
+} // end of class WindokuConstraint
@@ -0,0 +1,417 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package server;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import grid.*;
+import solver.*;
+
+
+/**
+ * Resident solver service, so puzzles are solved by warmed-up solvers instead of
+ * paying for a JVM start each.  It listens for HTTP on a local port:
+ *
+ *   POST /solve?game=sudoku&solver=dancing
+ *        Body is one puzzle in the input file format (of the game), or for
+ *        standard Sudoku and its variants any number of one-line puzzles (see
+ *        LineGridReader).
+ *        The reply is the solved grid in the output file format, or one line
+ *        per puzzle with "no solution" for puzzles that have none.
+ *   GET  /metrics
+ *        Request counts, queue depth and recent latency percentiles, one
+ *        "name value" per line.
+ *
+ * game is sudoku (default), killer or a variant (sudoku-x, windoku or
+ * anti-knight), and solver takes the same names as in RmitSudoku (default
+ * advanced for killer, dancing otherwise).  Requests are
+ * handled concurrently, on virtual threads when the JVM has them and on a
+ * cached thread pool otherwise.  Solvers are not thread safe, so each request
+ * borrows one from a SolverPool of its type and returns it after.
+ */
+public class SudokuServer
+{
+    //Number of recent request latencies kept for the percentiles
+    private static final int LATENCY_WINDOW = 4096;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    //Pool of solvers of each game and solver type
+    private HashMap<String, SolverPool> pools = new HashMap<>();
+
+    //Metrics
+    private AtomicInteger queued = new AtomicInteger();
+    private AtomicInteger active = new AtomicInteger();
+    private AtomicLong requests = new AtomicLong();
+    private AtomicLong puzzles = new AtomicLong();
+    private AtomicLong errors = new AtomicLong();
+    private long[] latencies = new long[LATENCY_WINDOW];
+    private long numLatencies = 0;
+
+    public SudokuServer(InetSocketAddress address)
+        throws IOException
+    {
+        executor = newExecutor();
+        server = HttpServer.create(address, 0);
+        server.createContext("/solve", this::handleSolve);
+        server.createContext("/metrics", this::handleMetrics);
+
+        //Count requests waiting for a thread separately from those being handled
+        server.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                queued.incrementAndGet();
+                executor.execute(() -> {
+                    queued.decrementAndGet();
+                    active.incrementAndGet();
+                    try {
+                        task.run();
+                    }
+                    finally {
+                        active.decrementAndGet();
+                    }
+                });
+            }
+        });
+    } // end of SudokuServer()
+
+
+    //A virtual thread per task if the JVM has them (Java 21 on), otherwise a cached pool
+    private static ExecutorService newExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)method.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "sudoku-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    } // end of newExecutor()
+
+
+    public void start() {
+        server.start();
+    } // end of start()
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    } // end of stop()
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    } // end of getAddress()
+
+
+    /* ********************************************************* */
+
+
+    //Factory of solvers of this game and solver type, null if there is no such solver
+    private static Supplier<SudokuSolver> solverFactory(String game, String solverType) {
+        //Variants are standard grids with extra constraints, solved by the standard solvers
+        if (game.equals("sudoku") || VariantConstraint.forGame(game) != null) {
+            switch (solverType) {
+                case "backtracking":
+                    return BackTrackingSolver::new;
+                case "algorx":
+                    return AlgorXSolver::new;
+                case "dancing":
+                    return DancingLinksSolver::new;
+                case "logical":
+                    return LogicalSolver::new;
+                case "sat":
+                    return SatSolver::new;
+                case "portfolio":
+                    return () -> new PortfolioSolver(new DancingLinksSolver(), new SatSolver());
+                case "auto":
+                    return AutoSolver::new;
+            }
+        }
+        else if (game.equals("killer")) {
+            switch (solverType) {
+                case "backtracking":
+                    return KillerBackTrackingSolver::new;
+                case "advanced":
+                    return KillerAdvancedSolver::new;
+                case "sat":
+                    return SatSolver::new;
+                case "portfolio":
+                    return () -> new PortfolioSolver(new KillerBackTrackingSolver(), new KillerAdvancedSolver(),
+                        new SatSolver());
+                case "auto":
+                    return AutoSolver::new;
+            }
+        }
+        return null;
+    } // end of solverFactory()
+
+    //Pool of solvers of this game and solver type, null if there is no such solver
+    private SolverPool pool(String game, String solverType) {
+        String key = game + " " + solverType;
+        synchronized (pools) {
+            SolverPool pool = pools.get(key);
+            if (pool == null) {
+                Supplier<SudokuSolver> factory = solverFactory(game, solverType);
+                if (factory == null)
+                    return null;
+                pool = new SolverPool(factory);
+                pools.put(key, pool);
+            }
+            return pool;
+        }
+    } // end of pool()
+
+
+    private void handleSolve(HttpExchange exchange)
+        throws IOException
+    {
+        long startTime = System.nanoTime();
+        requests.incrementAndGet();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                reply(exchange, 405, "Use POST\n");
+                return;
+            }
+
+            HashMap<String, String> params = queryParams(exchange);
+            String game = params.getOrDefault("game", "sudoku");
+            String solverType = params.getOrDefault("solver", game.equals("killer") ? "advanced" : "dancing");
+
+            SolverPool pool = pool(game, solverType);
+            if (pool == null) {
+                reply(exchange, 400, "Unknown game or solver type: " + game + " " + solverType + "\n");
+                return;
+            }
+            byte[] body = readBody(exchange);
+            SudokuSolver solver = pool.acquire();
+            try {
+                if (!game.equals("killer") && isLineFormat(body))
+                    reply(exchange, 200, solveLines(body, game, solver));
+                else
+                    solveGrid(exchange, body, game, solver);
+            }
+            finally {
+                pool.release(solver);
+            }
+        }
+        catch (NoSuchElementException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            //Scanner and parse errors from a badly formed puzzle
+            reply(exchange, 400, "Badly formed puzzle. " + e + "\n");
+        }
+        catch (IOException e) {
+            reply(exchange, 400, "Badly formed puzzle. " + e.getMessage() + "\n");
+        }
+        catch (RuntimeException e) {
+            //Anything else failed in a solver, reply anyway so the error is counted
+            reply(exchange, 500, "Solver error. " + e + "\n");
+        }
+        finally {
+            recordLatency(System.nanoTime() - startTime);
+        }
+    } // end of handleSolve()
+
+
+    //Solve one puzzle in the input file format and reply with the grid in the output file format
+    private void solveGrid(HttpExchange exchange, byte[] body, String game, SudokuSolver solver)
+        throws IOException
+    {
+        Reader reader = new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.US_ASCII);
+        SudokuGrid grid;
+        if (game.equals("killer")) {
+            KillerSudokuGrid killer_grid = new KillerSudokuGrid();
+            killer_grid.initGrid(reader);
+            grid = killer_grid;
+        }
+        else {
+            StdSudokuGrid std_grid = newStdGrid(game);
+            std_grid.initGrid(reader);
+            grid = std_grid;
+        }
+
+        puzzles.incrementAndGet();
+        if (solver.solve(grid) && grid.validate())
+            reply(exchange, 200, grid.toString() + "\n");
+        else
+            reply(exchange, 422, "No solution found\n");
+    } // end of solveGrid()
+
+    //Standard grid with the constraints of this game, if it is a variant
+    private static StdSudokuGrid newStdGrid(String game) {
+        StdSudokuGrid grid = new StdSudokuGrid();
+        VariantConstraint constraint = VariantConstraint.forGame(game);
+        if (constraint != null)
+            grid.addConstraint(constraint);
+        return grid;
+    } // end of newStdGrid()
+
+    //Solve every one-line puzzle of the body, returning one line per puzzle
+    private byte[] solveLines(byte[] body, String game, SudokuSolver solver)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + 64);
+        StdSudokuGrid grid = newStdGrid(game);
+        try (LineGridReader reader = new LineGridReader(new ByteArrayInputStream(body));
+            LineGridWriter writer = new LineGridWriter(out))
+        {
+            while (reader.next(grid)) {
+                puzzles.incrementAndGet();
+                if (solver.solve(grid) && grid.validate())
+                    writer.write(grid);
+                else {
+                    writer.flush();
+                    out.write("no solution\n".getBytes(StandardCharsets.US_ASCII));
+                }
+            }
+        }
+        return out.toByteArray();
+    } // end of solveLines()
+
+    //One-line puzzles start with a line of a square number (at least 4) of cells, the input format with the dimension
+    private static boolean isLineFormat(byte[] body) {
+        int start = 0;
+        while (true) {
+            while (start < body.length && (body[start] == '\n' || body[start] == '\r'))
+                start++;
+            if (start < body.length && body[start] == '#') {
+                while (start < body.length && body[start] != '\n')
+                    start++;
+                continue;
+            }
+            break;
+        }
+        int end = start;
+        while (end < body.length && body[end] != '\n' && body[end] != '\r') {
+            if (body[end] == ' ' || body[end] == '\t')
+                return false;
+            end++;
+        }
+        int length = end - start;
+        int dim = (int)Math.sqrt(length);
+        return length >= 4 && dim * dim == length;
+    } // end of isLineFormat()
+
+
+    private void handleMetrics(HttpExchange exchange)
+        throws IOException
+    {
+        long[] window;
+        synchronized (latencies) {
+            window = Arrays.copyOf(latencies, (int)Math.min(numLatencies, LATENCY_WINDOW));
+        }
+        Arrays.sort(window);
+
+        StringBuilder outStr = new StringBuilder();
+        outStr.append("requests_total ").append(requests.get()).append('\n');
+        outStr.append("requests_queued ").append(queued.get()).append('\n');
+        outStr.append("requests_active ").append(active.get()).append('\n');
+        outStr.append("puzzles_total ").append(puzzles.get()).append('\n');
+        outStr.append("errors_total ").append(errors.get()).append('\n');
+        outStr.append("latency_ms_p50 ").append(percentile(window, 0.50)).append('\n');
+        outStr.append("latency_ms_p90 ").append(percentile(window, 0.90)).append('\n');
+        outStr.append("latency_ms_p99 ").append(percentile(window, 0.99)).append('\n');
+        outStr.append("latency_ms_max ").append(percentile(window, 1.0)).append('\n');
+        reply(exchange, 200, outStr.toString());
+    } // end of handleMetrics()
+
+    //Latency in milliseconds at this fraction of the sorted window
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0)
+            return 0;
+        int i = (int)Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(i, 0)] / 1e6;
+    } // end of percentile()
+
+    private void recordLatency(long nanos) {
+        synchronized (latencies) {
+            latencies[(int)(numLatencies++ % LATENCY_WINDOW)] = nanos;
+        }
+    } // end of recordLatency()
+
+
+    private static HashMap<String, String> queryParams(HttpExchange exchange) {
+        HashMap<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                int equals = param.indexOf('=');
+                if (equals > 0)
+                    params.put(param.substring(0, equals), param.substring(equals + 1));
+            }
+        }
+        return params;
+    } // end of queryParams()
+
+    private static byte[] readBody(HttpExchange exchange)
+        throws IOException
+    {
+        try (InputStream in = exchange.getRequestBody()) {
+            return in.readAllBytes();
+        }
+    } // end of readBody()
+
+    private void reply(HttpExchange exchange, int status, String text)
+        throws IOException
+    {
+        reply(exchange, status, text.getBytes(StandardCharsets.US_ASCII));
+    } // end of reply()
+
+    private void reply(HttpExchange exchange, int status, byte[] body)
+        throws IOException
+    {
+        if (status >= 400)
+            errors.incrementAndGet();
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=us-ascii");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    } // end of reply()
+
+
+    /**
+     * Run the server until the process is stopped.
+     *
+     * @param args <port> <bind address>, by default 8080 on the loopback address
+     *          only.
+     */
+    public static void main(String[] args) {
+        try {
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+            InetAddress address = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+            SudokuServer server = new SudokuServer(new InetSocketAddress(address, port));
+            server.start();
+            System.out.println("Listening on " + server.getAddress());
+        }
+        catch (NumberFormatException e) {
+            System.err.println("SudokuServer: <port> <bind address>");
+            System.exit(1);
+        }
+        catch (IOException e) {
+            System.err.println("IOExeption occurred. " + e.getMessage());
+            System.exit(1);
+        }
+    } // end of main()
+
+} // end of class SudokuServer
@@ -3,14 +3,27 @@
  */
 package solver;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 import grid.StdSudokuGrid;
 import grid.SudokuGrid;
+import grid.VariantConstraint;
 
 
 /**
- * Algorithm X solver for standard Sudoku.
+ * Algorithm X solver for standard Sudoku and its variants.  Variant units add a
+ * column per unit and symbol after the standard ones: primary for units that
+ * hold every symbol, secondary (never branched on, need not be covered) for
+ * smaller units.
+ *
+ * The solver keeps one matrix of every (row, column, symbol) placement and
+ * reuses it for every grid of the same dimension.  solve() chooses the givens'
+ * rows and copies the rows left in each column into lists kept for that, so
+ * the search never steps over rows the givens ruled out, and the next reset()
+ * restores the full lists.  Setup is therefore still O(n^3) a solve and the
+ * full matrix stays in memory: a matrix of only the rows the givens allow
+ * would take less of both, but would be built anew for every grid instead of
+ * being reused with no allocation.
  */
 public class AlgorXSolver extends StdSudokuSolver
 {
@@ -29,22 +42,37 @@ public class AlgorXSolver extends StdSudokuSolver
     //Class for binary matrix
     private static class Matrix {
 
-        boolean[][] values;     //the matrix itself
+        //The matrix itself, stored sparsely: each row has a 1 in four columns (plus its variant units) and
+        //each column in grid_dim rows (or the size of its variant unit),
+        //so a 36x36 grid takes a few megabytes instead of the quarter gigabyte a dense boolean matrix would
+        int[][] rowColumns;     //columns with a 1 in each row
+        int[][] columnRows;     //rows with a 1 in each column, in increasing order
         Row[] rows;             //used to easily access the (r, c, v) of a row in the matrix
         int grid_dim;
+        int[][] units;          //variant units the matrix was built for
         int col_amt;
+        int primary_amt;        //columns that must be covered come first, then secondary columns
         int row_amt;
-        HashMap<Integer, Boolean> rowDeleted;       //maps a row's index to if it is deleted
-        HashMap<Integer, Boolean> columnDeleted;    //maps a column's index to if it is deleted
-
-        //constructor of Matrix class wiith grid dimension/length parameter
-        public Matrix(int grid_dim) {
+        boolean[] rowDeleted;       //whether the row at each index is deleted
+        boolean[] columnDeleted;    //whether the column at each index is deleted
+        int[] columnSize;           //rows of each column not deleted
+        //Rows searched in each column: columnRows, or once pruned only the rows the givens left
+        int[][] liveRows;
+        int[] liveCount;
+        int[][] prunedRows;         //storage of the pruned lists, made on the first prune
+        boolean pruned;
+        //Rows (as index) and columns (as ~index) deleted by the choices in place, in order
+        int[] trail;
+        int trailSize = 0;
+
+        //constructor of Matrix class wiith grid dimension/length parameter and the grid's variant units
+        public Matrix(int grid_dim, int[][] units) {
 
             //Initialization of fields
-            values = new boolean[grid_dim * grid_dim * grid_dim][grid_dim * grid_dim * 4];  //matrix size
             this.grid_dim = grid_dim;
+            this.units = units;
             this.row_amt = grid_dim * grid_dim * grid_dim; //9 rows x 9 columns x 9 values = possible candidate values
-            this.col_amt = grid_dim * grid_dim * 4; //9 rows x 9 columns x 4 constrains = constraints to be met.
+            this.col_amt = grid_dim * grid_dim * 4 + units.length * grid_dim; //9 rows x 9 columns x 4 constrains = constraints to be met, plus variant units
             /*
             The 4 constraints that must be met for every cell are:
                 A single value in each cell
@@ -53,36 +81,100 @@ public class AlgorXSolver extends StdSudokuSolver
                 Values 1 through n must exist only once in each box
             */
             rows = new Row[row_amt];
-            rowDeleted = new HashMap<>();
-            columnDeleted = new HashMap<>();
+            rowColumns = new int[row_amt][];
+            columnRows = new int[col_amt][];
+            for (int j = 0; j < grid_dim * grid_dim * 4; j++)
+                columnRows[j] = new int[grid_dim];
+
+            //First column of each variant unit, those holding every symbol first
+            int[] unitColumn = new int[units.length];
+            int next_column = grid_dim * grid_dim * 4;
+            for (int pass = 0; pass < 2; pass++) {
+                for (int u = 0; u < units.length; u++) {
+                    if ((units[u].length == grid_dim) == (pass == 0)) {
+                        unitColumn[u] = next_column;
+                        for (int v = 0; v < grid_dim; v++)
+                            columnRows[next_column++] = new int[units[u].length];
+                    }
+                }
+                if (pass == 0)
+                    primary_amt = next_column;
+            }
+            int[][] cell_units = VariantConstraint.cellUnits(grid_dim, units);
+            rowDeleted = new boolean[row_amt];
+            columnDeleted = new boolean[col_amt];
+            columnSize = new int[col_amt];
+            //Every row and column is deleted at most once at a time
+            trail = new int[row_amt + col_amt];
+
+            //boxes are box_height rows by box_width columns, e.g. 2x3 in a 6x6 grid
+            int box_height = SudokuGrid.boxHeight(grid_dim);
+            int box_width = grid_dim / box_height;
 
             //For each row, fill the necessary columns
             int current_index = 0;
             for (int r = 0; r < grid_dim; r++) {
                 for (int c = 0; c < grid_dim; c++) {
                     for (int v = 0; v < grid_dim; v++) {
-
                         //Add this row to rows[] utility
                         rows[current_index] = new Row(r, c, v);
 
                         //Place a 1 in each of this row's satisfied columns
-                        values[current_index][getColumnIndex_RowCol(r, c)] = true;
-                        values[current_index][getColumnIndex_RowVal(r, v)] = true;
-                        values[current_index][getColumnIndex_ColVal(c, v)] = true;
-                        
-                        //square root the gird length to get the box size
-                        int box_size = (int)Math.sqrt(grid_dim);
-                        //get int of box corner of the row by having row minus the remainder from the divison of row and box size
-                        int boxCornerR = r - r % box_size;
-                        //get int of box corner of the column by having column minus the remainder from the division of column and box size
-                        int boxCornerC = c - c % box_size;
-                        //get the box number with the following formula
-                        int box_num = (boxCornerR * box_size + boxCornerC) / box_size;
-
-                        values[current_index++][getColumnIndex_BoxVal(box_num, v)] = true;
+                        int box_num = SudokuGrid.boxOf(r, c, box_height, box_width);
+                        int[] cellUnits = cell_units[r * grid_dim + c];
+                        rowColumns[current_index] = new int[4 + cellUnits.length];
+                        rowColumns[current_index][0] = getColumnIndex_RowCol(r, c);
+                        rowColumns[current_index][1] = getColumnIndex_RowVal(r, v);
+                        rowColumns[current_index][2] = getColumnIndex_ColVal(c, v);
+                        rowColumns[current_index][3] = getColumnIndex_BoxVal(box_num, v);
+                        for (int k = 0; k < cellUnits.length; k++)
+                            rowColumns[current_index][4 + k] = unitColumn[cellUnits[k]] + v;
+                        for (int j : rowColumns[current_index])
+                            columnRows[j][columnSize[j]++] = current_index;
+
+                        current_index++;
                     }
                 }
             }
+
+            liveRows = columnRows.clone();
+            liveCount = columnSize.clone();
+        }
+
+        //Choose the grid's filled cells for good, then keep in each column left only the rows they left,
+        //so the search starts as if they were chosen and never steps over their deleted rows;
+        //false if the filled cells clash
+        public boolean prune(StdSudokuGrid std_grid) {
+            int[][] g = std_grid.getGrid();
+            for (int r = 0; r < grid_dim; r++) {
+                for (int c = 0; c < grid_dim; c++) {
+                    if (g[r][c] == -1)
+                        continue;
+                    int row = getRowIndex(r, c, std_grid.symbolIndex(g[r][c]));
+                    if (rowDeleted[row])
+                        return false;
+                    chooseRow(row);
+                }
+            }
+
+            if (prunedRows == null)
+                prunedRows = new int[col_amt][];
+            for (int j = 0; j < col_amt; j++) {
+                if (columnDeleted[j])
+                    continue;
+                if (prunedRows[j] == null)
+                    prunedRows[j] = new int[columnRows[j].length];
+                int count = 0;
+                for (int i : columnRows[j]) {
+                    if (!rowDeleted[i])
+                        prunedRows[j][count++] = i;
+                }
+                liveRows[j] = prunedRows[j];
+                liveCount[j] = count;
+            }
+            trailSize = 0;
+            pruned = true;
+            return true;
         }
 
         //Calculate index of row using (r, c, v)
@@ -104,66 +196,126 @@ public class AlgorXSolver extends StdSudokuSolver
             return grid_dim * grid_dim * 3 + v + grid_dim * b;
         }
 
-        //Get column with least amount of 1s
+        //Get primary column with least amount of 1s
         public int getLeastColumnIndex() {
             int leastColumnIndex = -1;
-            int leastVal = row_amt;
-
-            //Loop through every column that is not deleted
-            for (int j = 0; j < col_amt; j++) {
-                if (columnDeleted.get(j) == null || !columnDeleted.get(j)) {
-
-                    //Calc column's size
-                    int size = 0;
-                    for (int i = 0; i < row_amt; i++) {
-                        if (values[i][j] && (rowDeleted.get(i) == null || !rowDeleted.get(i)))
-                            size++;
-                    }
-
-                    //Compare column to current least, and set if necessary
-                    if (size < leastVal) {
-                        leastVal = size;
-                        leastColumnIndex = j;
-                    }
+            int leastVal = Integer.MAX_VALUE;
+
+            //Loop through every primary column that is not deleted, comparing to current least
+            for (int j = 0; j < primary_amt; j++) {
+                if (!columnDeleted[j] && columnSize[j] < leastVal) {
+                    leastVal = columnSize[j];
+                    leastColumnIndex = j;
+                    //Nothing can cover this column, no need to look further
+                    if (leastVal == 0)
+                        break;
                 }
             }
             
             return leastColumnIndex;
         }
 
-        //Include (delete = true) or Revert (delete = false) row from choices
-        public void chooseRow(int r, int c, int v, boolean delete) {
+        //Include the row of (r, c, v) in choices
+        public void chooseRow(int r, int c, int v) {
+            chooseRow(getRowIndex(r, c, v));
+        }
 
-            int row = getRowIndex(r, c, v);
+        //Include row in choices, recording on the trail only the rows and columns this choice deleted
+        //so that reverting it cannot undelete rows removed by earlier choices that are still in place
+        public void chooseRow(int row) {
+
+            for (int j : rowColumns[row]) {
+                if (!columnDeleted[j]) {
+
+                    for (int n = 0; n < liveCount[j]; n++) {
+                        int i = liveRows[j][n];
+                        if (!rowDeleted[i]) {
+                            rowDeleted[i] = true;
+                            for (int k : rowColumns[i])
+                                columnSize[k]--;
+                            trail[trailSize++] = i;
+                        }
+                    }
 
-            //For each column that this row has a 1 in
-            for (int j = 0; j < col_amt; j++) {
-                if (values[row][j]) {
+                    columnDeleted[j] = true;
+                    trail[trailSize++] = ~j;
+                }
+            }
 
-                    //For each row that has a 1 in this column
-                    for (int i = 0; i < row_amt; i++) {
-                        if (values[i][j])
+        }
 
-                            //Delete or Undelete row
-                            rowDeleted.put(i, delete);
-                    }
+        //Delete a single row, e.g. to rule out a placement, recording it on the trail
+        public void excludeRow(int row) {
+            if (rowDeleted[row])
+                return;
+            rowDeleted[row] = true;
+            for (int k : rowColumns[row])
+                columnSize[k]--;
+            trail[trailSize++] = row;
+        }
 
-                    //Delete or Undelete column
-                    columnDeleted.put(j, delete);
+        //Undo every choice made since the trail had this size
+        public void revert(int mark) {
+            while (trailSize > mark) {
+                int entry = trail[--trailSize];
+                if (entry >= 0) {
+                    rowDeleted[entry] = false;
+                    for (int k : rowColumns[entry])
+                        columnSize[k]++;
                 }
+                else
+                    columnDeleted[~entry] = false;
+            }
+        }
+
+        //Undelete every row and column, as freshly constructed
+        public void reset() {
+            if (!pruned) {
+                revert(0);
+                return;
+            }
+            Arrays.fill(rowDeleted, false);
+            Arrays.fill(columnDeleted, false);
+            for (int j = 0; j < col_amt; j++) {
+                columnSize[j] = columnRows[j].length;
+                liveRows[j] = columnRows[j];
+                liveCount[j] = columnSize[j];
             }
+            trailSize = 0;
+            pruned = false;
+        }
+
+        public boolean isRowDeleted(int i) {
+            return rowDeleted[i];
+        }
 
+        public boolean isColumnDeleted(int j) {
+            return columnDeleted[j];
         }
 
 
     }
 
+    //Matrix kept between solves and counts, reset instead of rebuilt while the dimension is unchanged
+    private Matrix reusableMatrix;
+    //Hash of the rows chosen (see DeadStates), kept only if the solver has a table
+    private long hash;
+    //Rows chosen by the search so far, and cells given, for the progress of a solve
+    private int depth;
+    private int givens;
+
     public AlgorXSolver() {
     } // end of AlgorXSolver()
 
     //Recursive Algo X solve method
     public boolean solve(int[][] g, Matrix matrix) {
 
+        //Give up if cancelled from another thread
+        if (isCancelled())
+            return false;
+        if (progress != null)
+            progress.node(depth, givens + depth);
+
         //Get least column
         int leastColumnIndex = matrix.getLeastColumnIndex();
 
@@ -171,70 +323,248 @@ public class AlgorXSolver extends StdSudokuSolver
         if (leastColumnIndex == -1)
             return true;
 
+        //Give up at once on rows known to leave no solution
+        if (deadStates != null && deadStates.isDead(hash))
+            return false;
+        int tried = 0;
+
         //For each row that has a 1 in this column
-        for (int i = 0; i < matrix.row_amt; i++) {
-            if (matrix.values[i][leastColumnIndex] && (matrix.rowDeleted.get(i) == null || !matrix.rowDeleted.get(i))) {
+        int[] column = matrix.liveRows[leastColumnIndex];
+        for (int n = 0; n < matrix.liveCount[leastColumnIndex]; n++) {
+            int i = column[n];
+            if (!matrix.isRowDeleted(i)) {
+                if (progress != null)
+                    progress.branch(depth, tried++, matrix.columnSize[leastColumnIndex]);
 
                 //Include row
                 g[matrix.rows[i].r][matrix.rows[i].c] = matrix.rows[i].v;   //Uses rows[] utility to get (r, c, v) at this index
-                matrix.chooseRow(matrix.rows[i].r, matrix.rows[i].c, matrix.rows[i].v,true);
+                int mark = matrix.trailSize;
+                matrix.chooseRow(i);
+                long key = rowKey(matrix, i);
+                hash ^= key;
 
                 //If recursion is successful, grid is complete
-                if (solve(g, matrix))
+                depth++;
+                boolean solved = solve(g, matrix);
+                depth--;
+                if (solved)
                     return true;
                 else {
                     //Otherwise, revert row back to not included and move to the next row to try
                     g[matrix.rows[i].r][matrix.rows[i].c] = -1;
-                    matrix.chooseRow(matrix.rows[i].r, matrix.rows[i].c, matrix.rows[i].v,false);
+                    matrix.revert(mark);
+                    hash ^= key;
                 }
 
             }
         }
 
-        //No row in this branch worked, return false
+        //No row in this branch worked, remember so and return false
+        if (deadStates != null && !isCancelled())
+            deadStates.addDead(hash);
         return false;
 
     }
 
 
+    //Recursive Algo X counter, stops once limit solutions have been found
+    private int countSolutions(Matrix matrix, int limit) {
+
+        //If every column is deleted, this branch is one complete solution
+        int leastColumnIndex = matrix.getLeastColumnIndex();
+        if (leastColumnIndex == -1)
+            return 1;
+
+        //Rows known to leave no solution
+        if (deadStates != null && deadStates.isDead(hash))
+            return 0;
+
+        int count = 0;
+        int[] column = matrix.liveRows[leastColumnIndex];
+        for (int n = 0; n < matrix.liveCount[leastColumnIndex]; n++) {
+            int i = column[n];
+            if (count >= limit)
+                break;
+            if (!matrix.isRowDeleted(i)) {
+
+                //Count the solutions below this row, then revert it
+                int mark = matrix.trailSize;
+                matrix.chooseRow(i);
+                long key = rowKey(matrix, i);
+                hash ^= key;
+                count += countSolutions(matrix, limit - count);
+                hash ^= key;
+                matrix.revert(mark);
+            }
+        }
+
+        //Every row was counted out, none leads to a solution
+        if (count == 0 && deadStates != null)
+            deadStates.addDead(hash);
+        return count;
+    }
+
+
+    //Key of the row at index i in the dead state hash, 0 if the solver has no table
+    private long rowKey(Matrix matrix, int i) {
+        if (deadStates == null)
+            return 0;
+        Row row = matrix.rows[i];
+        return deadStates.key(row.r * matrix.grid_dim + row.c, row.v);
+    }
+
+
+    //The reusable matrix for this grid's dimension and variant, reset
+    private Matrix reusableMatrix(StdSudokuGrid std_grid) {
+        int grid_dim = std_grid.getGrid().length;
+        int[][] units = std_grid.variantUnits();
+        if (reusableMatrix == null || reusableMatrix.grid_dim != grid_dim
+            || !VariantConstraint.sameUnits(reusableMatrix.units, units))
+            reusableMatrix = new Matrix(grid_dim, units);
+        else
+            reusableMatrix.reset();
+        return reusableMatrix;
+    }
+
+
     @Override
     public boolean solve(SudokuGrid grid) {
         StdSudokuGrid std_grid = (StdSudokuGrid)grid;
         int[][] g = std_grid.getGrid();
 
-        //Make matrix from grid
-        Matrix matrix = new Matrix(g.length);
-
-        //Include initial value rows
+        //Prune the reusable matrix by the grid's initial values, null if they clash
+        Matrix matrix = reusableMatrix(std_grid);
+        if (!matrix.prune(std_grid))
+            matrix = null;
+        if (deadStates != null)
+            hash = deadStates.start(std_grid);
+        depth = 0;
+        if (progress != null)
+            givens = progress.start(std_grid);
+
+        //Set grid values to the index of their symbol
         for (int r = 0; r < g.length; r++) {
             for (int c = 0; c < g.length; c++) {
-                if (g[r][c] != -1) {
-
-                    //Set grid values to the index of their symbol
+                if (g[r][c] != -1)
                     g[r][c] = std_grid.symbolIndex(g[r][c]);
-
-                    matrix.chooseRow(r, c, g[r][c], true);
-                }
             }
         }
 
 
         //Call recursive solver
-        boolean result = solve(g, matrix);
-
-        if (!result) {
-            System.out.println("Initial Values Error");
-        }
-        else {
-            for (int i = 0; i < g.length; i++) {
-                for (int j = 0; j < g.length; j++) {
-                    //Reset grid values from their indexes to their proper symbols
+        boolean result = matrix != null && solve(g, matrix);
+        if (progress != null)
+            progress.finish();
+
+        //Reset grid values from their indexes to their proper symbols, the givens alone if unsolved
+        for (int i = 0; i < g.length; i++) {
+            for (int j = 0; j < g.length; j++) {
+                if (g[i][j] != -1)
                     g[i][j] = std_grid.getValidSymbols()[g[i][j]];
-                }
             }
         }
 
         return result;
 
     } // end of solve()
+
+
+    @Override
+    public int countSolutions(SudokuGrid grid, int limit) {
+        StdSudokuGrid std_grid = (StdSudokuGrid)grid;
+        int[][] g = std_grid.getGrid();
+
+        //Include initial value rows without changing the grid itself
+        Matrix matrix = reusableMatrix(std_grid);
+        if (deadStates != null)
+            hash = deadStates.start(std_grid);
+        for (int r = 0; r < g.length; r++) {
+            for (int c = 0; c < g.length; c++) {
+                if (g[r][c] != -1)
+                    matrix.chooseRow(r, c, std_grid.symbolIndex(g[r][c]));
+            }
+        }
+
+        return countSolutions(matrix, limit);
+
+    } // end of countSolutions()
+
+
+    /**
+     * Searches by where another solution first differs from known: for each empty
+     * cell in row-major order, a search without known's symbol there, with the
+     * empty cells before it fixed to known's symbols.  These searches cover
+     * disjoint parts of the solutions other than known, and the fixed cells stay
+     * chosen in the solver's matrix from one search to the next.
+     */
+    @Override
+    public boolean findOtherSolution(SudokuGrid grid, int[][] known) {
+        StdSudokuGrid std_grid = (StdSudokuGrid)grid;
+        int[][] g = std_grid.getGrid();
+        if (candidates(std_grid) == null)
+            return false;
+
+        //Search on a copy holding symbol indexes, so grid is only changed if another solution is found
+        int[][] indexes = new int[g.length][g.length];
+        Matrix matrix = reusableMatrix(std_grid);
+        for (int r = 0; r < g.length; r++) {
+            for (int c = 0; c < g.length; c++) {
+                indexes[r][c] = g[r][c] == -1 ? -1 : std_grid.symbolIndex(g[r][c]);
+                if (g[r][c] != -1)
+                    matrix.chooseRow(r, c, indexes[r][c]);
+            }
+        }
+        depth = 0;
+        if (deadStates != null)
+            hash = deadStates.start(std_grid);
+
+        boolean found = false;
+        for (int r = 0; r < g.length && !found; r++) {
+            for (int c = 0; c < g.length && !found; c++) {
+                if (g[r][c] != -1)
+                    continue;
+                int v = std_grid.symbolIndex(known[r][c]);
+
+                //Known's symbol cannot go here, so every solution left differs from it
+                if (v == -1 || matrix.isRowDeleted(matrix.getRowIndex(r, c, v))) {
+                    found = solve(indexes, matrix);
+                    break;
+                }
+
+                //Search without known's symbol here
+                int row = matrix.getRowIndex(r, c, v);
+                int mark = matrix.trailSize;
+                matrix.excludeRow(row);
+                long excluded = deadStates == null ? 0 : deadStates.excludedKey(r * g.length + c, v);
+                hash ^= excluded;
+                found = solve(indexes, matrix);
+                if (found)
+                    break;
+                if (isCancelled())
+                    return false;
+                hash ^= excluded;
+                matrix.revert(mark);
+
+                //then fix it there for the cells after
+                matrix.chooseRow(row);
+                indexes[r][c] = v;
+                hash ^= rowKey(matrix, row);
+            }
+        }
+        if (!found)
+            return false;
+
+        for (int r = 0; r < g.length; r++) {
+            for (int c = 0; c < g.length; c++)
+                g[r][c] = std_grid.getValidSymbols()[indexes[r][c]];
+        }
+        return true;
+    } // end of findOtherSolution()
+
+
+    @Override
+    public void reset() {
+        reusableMatrix = null;
+    } // end of reset()
+
 } // end of class AlgorXSolver
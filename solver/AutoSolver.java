@@ -0,0 +1,286 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package solver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Properties;
+
+import grid.KillerSudokuGrid;
+import grid.StdSudokuGrid;
+import grid.SudokuGrid;
+
+
+/**
+ * Solver that picks one of the other solvers for each grid from cheap features
+ * of the puzzle, so callers need not choose.
+ *
+ * The features (see Features) are put into a bucket, e.g. "sudoku.25.4" for a
+ * 25x25 grid with 40-49% of its cells given, or "killer.9.5" for a 9x9 killer
+ * grid whose cages have about 10^5 orderings of the symbol sets adding to their
+ * totals (the rows KillerAdvancedSolver would build).  A table maps buckets to
+ * the solver type that was fastest on them, as in RmitSudoku's solver types.  It
+ * is learnt offline by generator.AutoTable from generated puzzles and shipped as
+ * the resource auto-solver.properties next to this class.
+ *
+ * A bucket missing from the table takes the nearest bucket of the same game and
+ * dimension, then the entry for the game and dimension, then for the game, then
+ * dancing for standard grids and advanced for killer grids.  Variant grids use
+ * the standard buckets.  countSolutions() and findOtherSolution() go to the
+ * solver chosen for the grid too, as every solver type implements them.
+ *
+ * One solver of each type is made when first chosen and reused after, so their
+ * matrices are kept between puzzles as usual.
+ */
+public class AutoSolver extends SudokuSolver
+{
+    //Name of the resource holding the table, next to this class
+    public static final String TABLE = "auto-solver.properties";
+
+    private Properties table;
+    private HashMap<String, SudokuSolver> solvers = new HashMap<>();
+    //Solver type and bucket chosen for the last grid
+    private String lastType;
+    private String lastBucket;
+
+
+    /**
+     * Features of a puzzle cheap enough to compute before every solve.
+     */
+    public static class Features {
+        public String game;             //"sudoku" or "killer"
+        public int grid_dim;
+        public int givens;              //cells given
+        public int cages;               //0 for standard grids
+        public int max_cage;            //cells in the largest cage
+        public long combinations;       //symbol sets adding to the totals, over all cages
+        public double orderings;        //orderings of those sets over their cages' cells
+
+        public Features(SudokuGrid grid) {
+            int[][] g = grid.getGrid();
+            grid_dim = g.length;
+            if (grid_dim < 1)
+                throw new IllegalArgumentException("Grid dimension must be at least 1: " + grid_dim);
+            for (int[] row : g) {
+                for (int value : row) {
+                    if (value != -1)
+                        givens++;
+                }
+            }
+            if (!(grid instanceof KillerSudokuGrid)) {
+                game = "sudoku";
+                return;
+            }
+
+            game = "killer";
+            KillerSudokuGrid killer_grid = (KillerSudokuGrid)grid;
+            int[] symbols = killer_grid.getValidSymbols();
+            for (KillerSudokuGrid.Cage cage : killer_grid.getCages()) {
+                int size = cage.cells.size();
+                long sets = countSets(symbols, size, cage.total);
+                cages++;
+                max_cage = Math.max(max_cage, size);
+                combinations += sets;
+                double factorial = 1;
+                for (int i = 2; i <= size; i++)
+                    factorial *= i;
+                orderings += sets * factorial;
+            }
+        } // end of Features()
+
+        //Bucket within the game and dimension: tenths of cells given, or powers of ten of orderings
+        public int level() {
+            if (game.equals("killer"))
+                return orderings < 1 ? 0 : (int)Math.floor(Math.log10(orderings));
+            return Math.min(9, givens * 10 / (grid_dim * grid_dim));
+        }
+
+        public String bucket() {
+            return game + "." + grid_dim + "." + level();
+        }
+
+        @Override
+        public String toString() {
+            return bucket() + " (givens " + givens + ", cages " + cages + ", largest cage " + max_cage
+                + ", combinations " + combinations + ", orderings " + String.format("%.3g", orderings) + ")";
+        }
+    } // end of class Features
+
+
+    //Number of sets of size distinct symbols adding to total
+    private static long countSets(int[] symbols, int size, int total) {
+        if (total < 0)
+            return 0;
+        //ways[k][s]: sets of k of the symbols seen so far adding to s
+        long[][] ways = new long[size + 1][total + 1];
+        ways[0][0] = 1;
+        for (int symbol : symbols) {
+            if (symbol < 0 || symbol > total)
+                continue;
+            for (int k = size; k >= 1; k--) {
+                for (int s = total; s >= symbol; s--)
+                    ways[k][s] += ways[k - 1][s - symbol];
+            }
+        }
+        return ways[size][total];
+    }
+
+
+    //Solver using the shipped table
+    public AutoSolver() {
+        this(loadTable());
+    } // end of AutoSolver()
+
+    //Solver using this table of bucket to solver type
+    public AutoSolver(Properties table) {
+        this.table = table;
+    } // end of AutoSolver()
+
+
+    //The shipped table, empty if it is missing so every grid gets its game's default
+    public static Properties loadTable() {
+        Properties table = new Properties();
+        try (InputStream in = AutoSolver.class.getResourceAsStream(TABLE)) {
+            if (in != null)
+                table.load(in);
+        }
+        catch (IOException e) {
+            System.err.println("Solver table not loaded. " + e.getMessage());
+        }
+        return table;
+    } // end of loadTable()
+
+
+    /**
+     * Solver type for a grid, looked up as described above.
+     *
+     * @param grid Grid to solve.
+     *
+     * @return Solver type, e.g. "dancing".
+     */
+    public String choose(SudokuGrid grid) {
+        Features features = new Features(grid);
+        String prefix = features.game + "." + features.grid_dim;
+        int level = features.level();
+        lastBucket = features.bucket();
+
+        //Nearest level first, the lower one on ties
+        for (int d = 0; d <= 20; d++) {
+            String type = table.getProperty(prefix + "." + (level - d));
+            if (type == null)
+                type = table.getProperty(prefix + "." + (level + d));
+            if (type != null)
+                return type.trim();
+        }
+        String type = table.getProperty(prefix, table.getProperty(features.game));
+        if (type != null)
+            return type.trim();
+        return features.game.equals("killer") ? "advanced" : "dancing";
+    } // end of choose()
+
+
+    @Override
+    public boolean solve(SudokuGrid grid) {
+        return chosen(grid).solve(grid);
+    } // end of solve()
+
+
+    @Override
+    public int countSolutions(SudokuGrid grid, int limit) {
+        return chosen(grid).countSolutions(grid, limit);
+    } // end of countSolutions()
+
+
+    @Override
+    public boolean findOtherSolution(SudokuGrid grid, int[][] known) {
+        return chosen(grid).findOtherSolution(grid, known);
+    } // end of findOtherSolution()
+
+
+    //Solver type chosen for the last grid, null before the first
+    public String getLastType() {
+        return lastType;
+    }
+
+    //Bucket of the last grid, null before the first
+    public String getLastBucket() {
+        return lastBucket;
+    }
+
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        synchronized (solvers) {
+            for (SudokuSolver solver : solvers.values())
+                solver.cancel();
+        }
+    } // end of cancel()
+
+
+    @Override
+    public void clearCancel() {
+        super.clearCancel();
+        synchronized (solvers) {
+            for (SudokuSolver solver : solvers.values())
+                solver.clearCancel();
+        }
+    } // end of clearCancel()
+
+
+    @Override
+    public void reset() {
+        synchronized (solvers) {
+            solvers.clear();
+        }
+    } // end of reset()
+
+
+    /* ********************************************************* */
+
+
+    //The solver of the type chosen for the grid, made on first use
+    private SudokuSolver chosen(SudokuGrid grid) {
+        lastType = choose(grid);
+        boolean killer = grid instanceof KillerSudokuGrid;
+        String key = (killer ? "killer " : "sudoku ") + lastType;
+        synchronized (solvers) {
+            SudokuSolver solver = solvers.get(key);
+            if (solver == null) {
+                solver = newSolver(killer, lastType);
+                if (solver == null)
+                    throw new IllegalStateException("Unknown solver type " + lastType + " in " + TABLE);
+                solvers.put(key, solver);
+            }
+            if (isCancelled())
+                solver.cancel();
+            //Only the solver of the current grid publishes
+            solver.setProgress(progress);
+            return solver;
+        }
+    }
+
+    //Solver of a type in RmitSudoku's names, null if there is no such type for the game
+    private static SudokuSolver newSolver(boolean killer, String type) {
+        switch (type) {
+            case "backtracking":
+                return killer ? new KillerBackTrackingSolver() : new BackTrackingSolver();
+            case "algorx":
+                return killer ? null : new AlgorXSolver();
+            case "dancing":
+                return killer ? null : new DancingLinksSolver();
+            case "logical":
+                return killer ? null : new LogicalSolver();
+            case "advanced":
+                return killer ? new KillerAdvancedSolver() : null;
+            case "sat":
+                return new SatSolver();
+            default:
+                return null;
+        }
+    }
+
+} // end of class AutoSolver
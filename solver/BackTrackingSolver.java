@@ -4,17 +4,272 @@
 
 package solver;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import grid.StdSudokuGrid;
 import grid.SudokuGrid;
+import grid.VariantConstraint;
 
 
 /**
- * Backtracking solver for standard Sudoku.
+ * Backtracking solver for standard Sudoku and its variants.  The units of a
+ * variant's constraints are checked with a bitmask of the symbol indexes used in
+ * each, kept up to date as symbols are placed and removed.
+ *
+ * By default the first empty cell is filled with each symbol in turn, so a bad
+ * early choice can cost minutes on a puzzle of a size most solve in
+ * milliseconds.  Either option below switches to an ordered search instead,
+ * which fills the empty cell with the fewest symbols allowed (minimum remaining
+ * values) and fails at once on a cell with none:
+ *
+ * - setRestarts() breaks ties between cells, and orders each cell's symbols, at
+ *   random, and restarts the search from the given cells whenever it has visited
+ *   RESTART_NODES times the next Luby number of nodes.  A run of bad choices is
+ *   then abandoned rather than searched out, so the rare very long solves become
+ *   a few short ones.  The budgets grow without bound, so a puzzle with no
+ *   solution is still found out.
+ * - setLeastConstraining() tries each cell's symbols in order of how few of its
+ *   empty peers' choices they remove (least constraining value first), ties in
+ *   random order with restarts and in symbol order without.
+ *
+ * Counting solutions always uses the plain search, which has to visit every
+ * branch whatever the order.
  */
 public class BackTrackingSolver extends StdSudokuSolver
 {
+    //Nodes before the first restart, multiplied by the Luby sequence after
+    public static final long RESTART_NODES = 1000;
+
+    //Variant units of the grid being solved, null if it has none
+    private int[][] units;
+    private int[][] cell_units;         //variant units of each cell, by r * grid_dim + c
+    private int words;                  //longs per unit mask
+    private long[] unitMasks;           //symbol indexes used in each unit, words per unit
+    private StdSudokuGrid std_grid;
+
+    //Options of the ordered search, off for the plain one
+    private boolean restarts = false;
+    private boolean least_constraining = false;
+    private Random random = new Random(1);
+    //Units, peers and used symbols of the grid being solved by the ordered search
+    private Candidates candidates;
+    private long nodes_left;
+    private boolean out_of_nodes;
+    private int restart_count;          //restarts in the last solve
+    //Hash of the grid being solved (see DeadStates), kept only if the solver has a table
+    private long hash;
+    //Cells filled by the search so far, and given, for the progress of a solve
+    private int depth;
+    private int givens;
+
     public BackTrackingSolver() {
     } // end of BackTrackingSolver()
+
+
+    /**
+     * Units of every cell (rows, columns, boxes and variant units) with a bitmask
+     * of the symbol indexes used in each, and the peers of every cell, for the
+     * ordered search.
+     */
+    private static class Candidates {
+        int grid_dim;
+        int[][] variant_units;
+        int words;                      //longs per unit mask
+        int[][] cell_units;             //units of each cell, by r * grid_dim + c
+        int[][] peers;                  //other cells sharing a unit with each cell
+        long[] masks;                   //symbol indexes used in each unit, words per unit
+
+        Candidates(int grid_dim, int[][] variant_units) {
+            this.grid_dim = grid_dim;
+            this.variant_units = variant_units;
+            words = (grid_dim + 63) >>> 6;
+
+            //Rows, columns and boxes, then the variant units
+            int box_height = SudokuGrid.boxHeight(grid_dim);
+            int box_width = grid_dim / box_height;
+            int[][] units = new int[3 * grid_dim + variant_units.length][];
+            for (int i = 0; i < grid_dim; i++) {
+                int[] row = new int[grid_dim];
+                int[] col = new int[grid_dim];
+                int[] box = new int[grid_dim];
+                int corner_r = i / (grid_dim / box_width) * box_height;
+                int corner_c = i % (grid_dim / box_width) * box_width;
+                for (int j = 0; j < grid_dim; j++) {
+                    row[j] = i * grid_dim + j;
+                    col[j] = j * grid_dim + i;
+                    box[j] = (corner_r + j / box_width) * grid_dim + corner_c + j % box_width;
+                }
+                units[i] = row;
+                units[grid_dim + i] = col;
+                units[2 * grid_dim + i] = box;
+            }
+            System.arraycopy(variant_units, 0, units, 3 * grid_dim, variant_units.length);
+            cell_units = VariantConstraint.cellUnits(grid_dim, units);
+            masks = new long[units.length * words];
+
+            //Peers of each cell, each listed once
+            int cells = grid_dim * grid_dim;
+            peers = new int[cells][];
+            int[] stamp = new int[cells];
+            int[] found = new int[cells];
+            for (int cell = 0; cell < cells; cell++) {
+                int count = 0;
+                stamp[cell] = cell + 1;
+                for (int u : cell_units[cell]) {
+                    for (int other : units[u]) {
+                        if (stamp[other] != cell + 1) {
+                            stamp[other] = cell + 1;
+                            found[count++] = other;
+                        }
+                    }
+                }
+                peers[cell] = Arrays.copyOf(found, count);
+            }
+        }
+
+        //Set the masks from the grid's current values
+        void load(StdSudokuGrid std_grid, int[][] g) {
+            Arrays.fill(masks, 0);
+            for (int r = 0; r < grid_dim; r++) {
+                for (int c = 0; c < grid_dim; c++) {
+                    if (g[r][c] != -1)
+                        mark(r * grid_dim + c, std_grid.symbolIndex(g[r][c]), true);
+                }
+            }
+        }
+
+        //Set or clear symbol index v in the masks of the cell's units
+        void mark(int cell, int v, boolean used) {
+            for (int u : cell_units[cell]) {
+                if (used)
+                    masks[u * words + (v >>> 6)] |= 1L << v;
+                else
+                    masks[u * words + (v >>> 6)] &= ~(1L << v);
+            }
+        }
+
+        //Whether symbol index v is unused in every unit of the cell
+        boolean allows(int cell, int v) {
+            for (int u : cell_units[cell]) {
+                if ((masks[u * words + (v >>> 6)] & (1L << v)) != 0)
+                    return false;
+            }
+            return true;
+        }
+
+        //Number of symbol indexes the cell allows, listed in allowed if it is not null
+        int allowed(int cell, int[] allowed) {
+            int count = 0;
+            for (int w = 0; w < words; w++) {
+                long used = 0;
+                for (int u : cell_units[cell])
+                    used |= masks[u * words + w];
+                long free = ~used;
+                if (w == words - 1 && (grid_dim & 63) != 0)
+                    free &= (1L << (grid_dim & 63)) - 1;
+                if (allowed == null) {
+                    count += Long.bitCount(free);
+                    continue;
+                }
+                while (free != 0) {
+                    allowed[count++] = (w << 6) + Long.numberOfTrailingZeros(free);
+                    free &= free - 1;
+                }
+            }
+            return count;
+        }
+    } // end of class Candidates
+
+
+    /**
+     * Search with random tie-breaks and Luby restarts, or fill the first empty
+     * cell in symbol order as before.
+     *
+     * @param restarts Whether to restart.
+     */
+    public void setRestarts(boolean restarts) {
+        this.restarts = restarts;
+    } // end of setRestarts()
+
+
+    /**
+     * Try each cell's symbols least constraining first, or in symbol order (at
+     * random with restarts).
+     *
+     * @param least_constraining Whether to order symbols by how constraining they are.
+     */
+    public void setLeastConstraining(boolean least_constraining) {
+        this.least_constraining = least_constraining;
+    } // end of setLeastConstraining()
+
+
+    //Seed of the random tie-breaks, so runs with restarts can be repeated
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+
+    //Restarts in the last solve, 0 without restarts
+    public int getRestarts() {
+        return restart_count;
+    }
+
+
+    //Set up the unit masks of a variant grid from its current values
+    private void initUnits(StdSudokuGrid std_grid) {
+        this.std_grid = std_grid;
+        int[][] g = std_grid.getGrid();
+        int[][] grid_units = std_grid.variantUnits();
+        if (grid_units.length == 0) {
+            units = null;
+            return;
+        }
+        if (units == null || !VariantConstraint.sameUnits(units, grid_units)) {
+            units = grid_units;
+            cell_units = VariantConstraint.cellUnits(g.length, units);
+            words = (g.length + 63) >>> 6;
+            unitMasks = new long[units.length * words];
+        }
+        Arrays.fill(unitMasks, 0);
+        for (int r = 0; r < g.length; r++) {
+            for (int c = 0; c < g.length; c++) {
+                if (g[r][c] != -1)
+                    mark(r * g.length + c, std_grid.symbolIndex(g[r][c]), true);
+            }
+        }
+    }
+
+    //Set or clear symbol index v in the masks of the cell's variant units
+    private void mark(int cell, int v, boolean used) {
+        for (int u : cell_units[cell]) {
+            if (used)
+                unitMasks[u * words + (v >>> 6)] |= 1L << v;
+            else
+                unitMasks[u * words + (v >>> 6)] &= ~(1L << v);
+        }
+    }
+
+    //Whether symbol index v is unused in every variant unit of the cell
+    private boolean unitsAllow(int cell, int v) {
+        for (int u : cell_units[cell]) {
+            if ((unitMasks[u * words + (v >>> 6)] & (1L << v)) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    //Place symbol in a cell, or empty it (symbol -1), keeping the unit masks
+    private void set(int[][] g, int r, int c, int symbol) {
+        if (units != null) {
+            int previous = g[r][c];
+            if (previous != -1)
+                mark(r * g.length + c, std_grid.symbolIndex(previous), false);
+            if (symbol != -1)
+                mark(r * g.length + c, std_grid.symbolIndex(symbol), true);
+        }
+        g[r][c] = symbol;
+    }
     
     //Check if placing this value in this position is allowable
     //takes grid, row, column and value as parameter
@@ -33,20 +288,25 @@ public class BackTrackingSolver extends StdSudokuSolver
         }
 
         //Check box for this value
-        int box_size = (int)Math.sqrt(grid.length); //square root the gird length to get the box size
-        //get int of box corner of the row by having row minus the remainder from the division oof row and box size
-        int boxCornerR = r - r % box_size;
-        //get int of box corner of the column by having column minus the remainder from the division of column and box size
-        int boxCornerC = c - c % box_size;
+        int box_height = SudokuGrid.boxHeight(grid.length); //rows in a box, e.g. 2 for the 2x3 boxes of a 6x6 grid
+        int box_width = grid.length / box_height;
+        //get int of box corner of the row by having row minus the remainder from the division of row and box height
+        int boxCornerR = r - r % box_height;
+        //get int of box corner of the column by having column minus the remainder from the division of column and box width
+        int boxCornerC = c - c % box_width;
 
         //iterate through the box
-        for (int i = 0; i < box_size; i++) {
-            for (int j = 0; j < box_size; j++) {
+        for (int i = 0; i < box_height; i++) {
+            for (int j = 0; j < box_width; j++) {
                 //if the box contains the value, return false
                 if (grid[boxCornerR + i][boxCornerC + j] == v)
                     return false;
             }
         }
+        //check the variant units of this cell, if any
+        if (units != null && !unitsAllow(r * grid.length + c, std_grid.symbolIndex(v)))
+            return false;
+
         //return true if the value can be placed
         return true;
     }
@@ -54,7 +314,167 @@ public class BackTrackingSolver extends StdSudokuSolver
     @Override
     public boolean solve(SudokuGrid grid) {
         StdSudokuGrid std_grid = (StdSudokuGrid)grid;
-        int[][] g = std_grid.getGrid();
+        restart_count = 0;
+        if (deadStates != null)
+            hash = deadStates.start(std_grid);
+        depth = 0;
+        if (progress != null)
+            givens = progress.start(std_grid);
+
+        boolean result;
+        if (restarts || least_constraining)
+            result = orderedSolve(std_grid, std_grid.getGrid());
+        else {
+            initUnits(std_grid);
+            result = solve(std_grid, std_grid.getGrid());
+        }
+        if (progress != null)
+            progress.finish();
+        return result;
+    } // end of solve()
+
+
+    //Ordered search from the given cells, restarting while it runs out of nodes
+    private boolean orderedSolve(StdSudokuGrid std_grid, int[][] g) {
+        int[][] grid_units = std_grid.variantUnits();
+        if (candidates == null || candidates.grid_dim != g.length
+            || !VariantConstraint.sameUnits(candidates.variant_units, grid_units))
+            candidates = new Candidates(g.length, grid_units);
+        candidates.load(std_grid, g);
+
+        int[] valid_symbols = std_grid.getValidSymbols();
+        while (true) {
+            out_of_nodes = false;
+            nodes_left = restarts ? RESTART_NODES * SatEngine.luby(restart_count) : Long.MAX_VALUE;
+            if (orderedSolve(g, valid_symbols))
+                return true;
+            //Every branch failed within the budget, or the search was stopped
+            if (!out_of_nodes || isCancelled())
+                return false;
+            restart_count++;
+        }
+    }
+
+
+    //Recursive ordered search, filling the empty cell with the fewest symbols allowed
+    private boolean orderedSolve(int[][] g, int[] valid_symbols) {
+
+        //Give up if cancelled from another thread, or restart when the budget runs out
+        if (isCancelled())
+            return false;
+        //Give up at once on a grid known to have no solution, e.g. from an earlier restart
+        if (deadStates != null && deadStates.isDead(hash))
+            return false;
+        if (nodes_left-- == 0) {
+            out_of_nodes = true;
+            return false;
+        }
+        if (progress != null)
+            progress.node(depth, givens + depth);
+
+        //Find the empty cell with fewest symbols, ties at random with restarts
+        int best = -1;
+        int best_count = Integer.MAX_VALUE;
+        int ties = 0;
+        for (int cell = 0; cell < g.length * g.length; cell++) {
+            if (g[cell / g.length][cell % g.length] != -1)
+                continue;
+            int count = candidates.allowed(cell, null);
+            if (count == 0)
+                return false;
+            if (count < best_count) {
+                best = cell;
+                best_count = count;
+                ties = 1;
+            }
+            else if (count == best_count && restarts && random.nextInt(++ties) == 0)
+                best = cell;
+        }
+
+        //If there are no empty locations, the grid is filled properly, return true
+        if (best == -1)
+            return true;
+
+        int[] values = new int[best_count];
+        candidates.allowed(best, values);
+        order(g, best, values);
+
+        int row = best / g.length;
+        int col = best % g.length;
+        for (int i = 0; i < values.length; i++) {
+            int v = values[i];
+            g[row][col] = valid_symbols[v];
+            candidates.mark(best, v, true);
+            if (deadStates != null)
+                hash ^= deadStates.key(best, v);
+            if (progress != null)
+                progress.branch(depth, i, values.length);
+            depth++;
+            boolean solved = orderedSolve(g, valid_symbols);
+            depth--;
+            if (solved)
+                return true;
+            candidates.mark(best, v, false);
+            g[row][col] = -1;
+            if (deadStates != null)
+                hash ^= deadStates.key(best, v);
+            if (out_of_nodes)
+                return false;
+        }
+
+        //Every symbol was searched out, so this grid has no solution
+        if (deadStates != null && !isCancelled())
+            deadStates.addDead(hash);
+        return false;
+    }
+
+    //Order a cell's symbol indexes: shuffled with restarts, then least constraining first
+    private void order(int[][] g, int cell, int[] values) {
+        if (restarts) {
+            for (int i = values.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int value = values[i];
+                values[i] = values[j];
+                values[j] = value;
+            }
+        }
+        if (!least_constraining)
+            return;
+
+        //Empty peers that would lose each value, then a stable insertion sort by it
+        int[] removed = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            for (int peer : candidates.peers[cell]) {
+                if (g[peer / g.length][peer % g.length] == -1 && candidates.allows(peer, values[i]))
+                    removed[i]++;
+            }
+        }
+        for (int i = 1; i < values.length; i++) {
+            int value = values[i];
+            int key = removed[i];
+            int j = i - 1;
+            while (j >= 0 && removed[j] > key) {
+                values[j + 1] = values[j];
+                removed[j + 1] = removed[j];
+                j--;
+            }
+            values[j + 1] = value;
+            removed[j + 1] = key;
+        }
+    }
+
+
+    //Recursive solver, filling the first empty location in turn
+    private boolean solve(StdSudokuGrid std_grid, int[][] g) {
+
+        //Give up if cancelled from another thread
+        if (isCancelled())
+            return false;
+        //or at once on a grid known to have no solution
+        if (deadStates != null && deadStates.isDead(hash))
+            return false;
+        if (progress != null)
+            progress.node(depth, givens + depth);
 
         //Try to find an empty spot in the grid
         int row = -1;
@@ -90,16 +510,132 @@ public class BackTrackingSolver extends StdSudokuSolver
 
             //If symbol(e.g. integer) is allowed here, place it and make a recursion
             if (canPlace(g, row, col, symbol)) {
-                g[row][col] = symbol;
+                set(g, row, col, symbol);
+                if (deadStates != null)
+                    hash ^= deadStates.key(row * g.length + col, i);
+                if (progress != null)
+                    progress.branch(depth, i, g.length);
                 //recursion
-                if (solve(grid))
+                depth++;
+                boolean solved = solve(std_grid, g);
+                depth--;
+                if (solved)
                     return true;
                 else
                     //Otherwise, revert change and move on to next symbol
-                    g[row][col] = -1;
+                    set(g, row, col, -1);
+                if (deadStates != null)
+                    hash ^= deadStates.key(row * g.length + col, i);
             }
         }
 
+        //No symbol fits here, remember this grid has no solution
+        if (deadStates != null && !isCancelled())
+            deadStates.addDead(hash);
         return false;
-    } // end of solve()
+    }
+
+
+    @Override
+    public int countSolutions(SudokuGrid grid, int limit) {
+        StdSudokuGrid std_grid = (StdSudokuGrid)grid;
+        initUnits(std_grid);
+        return countSolutions(std_grid.getGrid(), std_grid.getValidSymbols(), limit);
+    } // end of countSolutions()
+
+
+    /**
+     * Tries, for each empty cell in row-major order, every symbol but known's
+     * there, with the empty cells before it fixed to known's symbols.  A symbol
+     * countSolutions() finds a solution for is then solved; otherwise the cell is
+     * fixed to known's symbol for the cells after, so every solution other than
+     * known is reached at the first cell where it differs.
+     */
+    @Override
+    public boolean findOtherSolution(SudokuGrid grid, int[][] known) {
+        StdSudokuGrid std_grid = (StdSudokuGrid)grid;
+        int[][] g = std_grid.getGrid();
+        int[] valid_symbols = std_grid.getValidSymbols();
+        initUnits(std_grid);
+
+        //Cells fixed to known's symbols, emptied again if no other solution is found
+        int[] fixed = new int[g.length * g.length];
+        int num_fixed = 0;
+        boolean found = false;
+        boolean done = false;
+        for (int r = 0; r < g.length && !done; r++) {
+            for (int c = 0; c < g.length && !done; c++) {
+                if (g[r][c] != -1)
+                    continue;
+
+                for (int symbol : valid_symbols) {
+                    if (symbol == known[r][c] || !canPlace(g, r, c, symbol))
+                        continue;
+                    set(g, r, c, symbol);
+                    if (countSolutions(g, valid_symbols, 1) > 0) {
+                        depth = 0;
+                        if (deadStates != null)
+                            hash = deadStates.start(std_grid);
+                        found = solve(std_grid, g);
+                        if (!found)
+                            set(g, r, c, -1);
+                        done = true;
+                        break;
+                    }
+                    set(g, r, c, -1);
+                }
+
+                //Fix known's symbol here for the cells after, unless it cannot go here either
+                if (done || isCancelled() || !canPlace(g, r, c, known[r][c]))
+                    done = true;
+                else {
+                    set(g, r, c, known[r][c]);
+                    fixed[num_fixed++] = r * g.length + c;
+                }
+            }
+        }
+
+        if (!found) {
+            for (int i = 0; i < num_fixed; i++)
+                set(g, fixed[i] / g.length, fixed[i] % g.length, -1);
+        }
+        return found;
+    } // end of findOtherSolution()
+
+
+    //Recursive counter, every placement is reverted so the grid ends as it started
+    private int countSolutions(int[][] g, int[] valid_symbols, int limit) {
+
+        //Find the first empty location
+        for (int row = 0; row < g.length; row++) {
+            for (int col = 0; col < g.length; col++) {
+                if (g[row][col] == -1) {
+
+                    //Count the solutions below each symbol allowed here
+                    int count = 0;
+                    for (int i = 0; i < g.length && count < limit; i++) {
+                        if (canPlace(g, row, col, valid_symbols[i])) {
+                            set(g, row, col, valid_symbols[i]);
+                            count += countSolutions(g, valid_symbols, limit - count);
+                            set(g, row, col, -1);
+                        }
+                    }
+                    return count;
+                }
+            }
+        }
+
+        //No empty locations, this is one complete solution
+        return 1;
+    }
+
+
+    @Override
+    public void reset() {
+        units = null;
+        cell_units = null;
+        unitMasks = null;
+        std_grid = null;
+        candidates = null;
+    } // end of reset()
 } // end of class BackTrackingSolver()
@@ -0,0 +1,183 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package solver;
+
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import grid.CanonicalForm;
+import grid.LineGridWriter;
+import grid.StdSudokuGrid;
+import grid.SudokuGrid;
+
+
+/**
+ * Solver that looks puzzles up in a cache of solutions before handing them to
+ * another solver.  Standard puzzles are keyed by their canonical form (see
+ * CanonicalForm), so a repeated puzzle, or one that is a relabelling, band,
+ * stack, row or column permutation, or transpose of a cached one, is solved by
+ * one lookup and mapping the cached solution back.  Other grids, including
+ * variant grids, go straight to the solver.
+ *
+ * The cache keeps the most recently used entries up to its capacity.  It can be
+ * loaded from and saved to a file of one "puzzle solution" pair per line, least
+ * recently used first, so the order survives a restart.
+ */
+public class CachedSolver extends SudokuSolver implements Closeable
+{
+    private SudokuSolver solver;
+    private String filename;
+    private LinkedHashMap<String, String> cache;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param solver Solver used for puzzles that are not in the cache.
+     * @param capacity Most entries kept.
+     * @param filename File the cache is loaded from, if it exists, and saved to
+     *          on close(), or null to keep it in memory only.
+     *
+     * @throws IOException If the file exists but cannot be read.
+     */
+    public CachedSolver(SudokuSolver solver, int capacity, String filename)
+        throws IOException
+    {
+        this.solver = solver;
+        this.filename = filename;
+        cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        if (filename != null && new File(filename).exists()) {
+            try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    int space = line.indexOf(' ');
+                    if (space > 0)
+                        cache.put(line.substring(0, space), line.substring(space + 1));
+                }
+            }
+        }
+    } // end of CachedSolver()
+
+
+    @Override
+    public boolean solve(SudokuGrid grid) {
+        //Variant rules are not preserved by the canonical form's symmetries
+        if (!(grid instanceof StdSudokuGrid) || grid.getGrid().length > LineGridWriter.MAX_DIMENSION
+            || ((StdSudokuGrid)grid).hasConstraints())
+            return solver.solve(grid);
+
+        StdSudokuGrid std_grid = (StdSudokuGrid)grid;
+        CanonicalForm form = new CanonicalForm(std_grid);
+        String solution;
+        synchronized (this) {
+            solution = cache.get(form.getKey());
+            if (solution != null)
+                hits++;
+            else
+                misses++;
+        }
+        if (solution != null) {
+            form.decode(solution, std_grid);
+            return true;
+        }
+
+        if (!solver.solve(grid))
+            return false;
+        //Only complete, valid solutions are kept
+        if (grid.validate()) {
+            String encoded = form.encode(std_grid);
+            synchronized (this) {
+                cache.put(form.getKey(), encoded);
+            }
+        }
+        return true;
+    } // end of solve()
+
+
+    @Override
+    public int countSolutions(SudokuGrid grid, int limit) {
+        return solver.countSolutions(grid, limit);
+    } // end of countSolutions()
+
+    @Override
+    public boolean findOtherSolution(SudokuGrid grid, int[][] known) {
+        return solver.findOtherSolution(grid, known);
+    } // end of findOtherSolution()
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        solver.cancel();
+    } // end of cancel()
+
+    @Override
+    public void clearCancel() {
+        super.clearCancel();
+        solver.clearCancel();
+    } // end of clearCancel()
+
+    //Only cache misses are searched, by the wrapped solver, so only they publish progress
+    @Override
+    public void setProgress(Progress progress) {
+        super.setProgress(progress);
+        solver.setProgress(progress);
+    } // end of setProgress()
+
+
+    public SudokuSolver getSolver() {
+        return solver;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+
+    //Write the cache to its file, least recently used first
+    public synchronized void save()
+        throws IOException
+    {
+        if (filename == null)
+            return;
+        //Written to a temporary file first, so a failed save leaves the old cache intact
+        File tmp = new File(filename + ".tmp");
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(tmp))) {
+            for (Map.Entry<String, String> entry : cache.entrySet()) {
+                out.write(entry.getKey());
+                out.write(' ');
+                out.write(entry.getValue());
+                out.write('\n');
+            }
+        }
+        File file = new File(filename);
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file))
+                throw new IOException("Cannot replace " + filename);
+        }
+    } // end of save()
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        save();
+    } // end of close()
+
+} // end of class CachedSolver
@@ -5,19 +5,61 @@
 package solver;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import grid.StdSudokuGrid;
 import grid.SudokuGrid;
+import grid.VariantConstraint;
 
 
 /**
- * Dancing links solver for standard Sudoku.
+ * Dancing links solver for standard Sudoku and its variants.  The units of a
+ * grid's variant constraints add a column per unit and symbol: primary columns
+ * for units that hold every symbol, which the search must cover like the rest,
+ * and secondary columns for smaller units, which only stop a symbol being
+ * chosen twice in the unit.
+ *
+ * The solver keeps one matrix of every (row, column, symbol) placement, 4n^3
+ * nodes for an n x n grid, and reuses it for every grid of the same dimension.
+ * solve() chooses the givens' rows and relinks only the rows left into the
+ * columns, so the search never steps over rows the givens ruled out, and the
+ * next reset() relinks every row again.  Setup is therefore still O(n^3) a
+ * solve and the full matrix stays in memory: a matrix of only the rows the
+ * givens allow would take less of both, but would be built anew for every grid
+ * instead of being reused with no allocation.
  */
 public class DancingLinksSolver extends StdSudokuSolver
 {
+    //Largest grid whose solutions solutions() can encode, a symbol index per unsigned byte
+    public static final int MAX_ENCODED_DIMENSION = 256;
+
+    //If set, rows of a column are tried in random order instead of matrix order
+    private Random random;
+    //Matrix kept between solves and counts, reset instead of rebuilt while the dimension is unchanged
+    private Matrix reusableMatrix;
+    //Nodes the current count may still visit before it gives up
+    private long nodesLeft;
+    //Choices made by the search below the initial values
+    private int depth = 0;
+    //Hash of the rows chosen (see DeadStates), kept only if the solver has a table
+    private long hash;
+    //Cells given in the grid being solved, for its progress
+    private int givens;
+
     public DancingLinksSolver() {
     } // end of DancingLinksSolver()
 
+    //Solver that fills grids in random order, e.g. to generate random complete grids
+    public DancingLinksSolver(Random random) {
+        this.random = random;
+    } // end of DancingLinksSolver()
+
     //Holds (r, c, v) and points to head of list of nodes in this row
     private static class Row {
         public int r;
@@ -37,7 +79,11 @@ public class DancingLinksSolver extends StdSudokuSolver
     private static class Column {
         public MatrixNode head;
         public int length = 0;
+        public int size = 0;            //length with no rows deleted
         public boolean deleted = false;
+        public boolean primary = false;
+        public Column left;             //neighbours in the list of primary columns not deleted
+        public Column right;
     }
 
     //Represents a 1 in the matrix, 2D doubly linked, hold pointers to Row and Column representation
@@ -60,16 +106,26 @@ public class DancingLinksSolver extends StdSudokuSolver
         Column[][] row_val;
         Column[][] col_val;
         Column[][] box_val;
-        Column[] all_columns;
-        //constructor for column list with a grid dimension / length parameter
-        public ColumnList(int grid_dim) {
+        Column[][] unit_val;            //variant unit and value
+        Column[] all_columns;           //primary columns, every one must be covered
+        Column[] secondary_columns;     //columns of variant units smaller than a row, covered at most once
+        Column root = new Column();     //head of the circular list of primary columns not deleted, in all_columns order
+        //constructor for column list with a grid dimension / length parameter and the grid's variant units
+        public ColumnList(int grid_dim, int[][] units) {
 
             //Initialize all fields
             row_col = new Column[grid_dim][grid_dim];
             row_val = new Column[grid_dim][grid_dim];
             col_val = new Column[grid_dim][grid_dim];
             box_val = new Column[grid_dim][grid_dim];
-            all_columns = new Column[grid_dim * grid_dim * 4];
+            unit_val = new Column[units.length][grid_dim];
+            int num_primary = 0;
+            for (int[] unit : units) {
+                if (unit.length == grid_dim)
+                    num_primary++;
+            }
+            all_columns = new Column[grid_dim * grid_dim * 4 + num_primary * grid_dim];
+            secondary_columns = new Column[(units.length - num_primary) * grid_dim];
 
             //iterate through the grid's dimension and increment of current index for the initialization of the variables
             int current_index = 0;
@@ -87,6 +143,35 @@ public class DancingLinksSolver extends StdSudokuSolver
                 }
             }
 
+            //then the variant units, primary after the standard columns
+            int secondary_index = 0;
+            for (int u = 0; u < units.length; u++) {
+                for (int v = 0; v < grid_dim; v++) {
+                    unit_val[u][v] = new Column();
+                    if (units[u].length == grid_dim)
+                        all_columns[current_index++] = unit_val[u][v];
+                    else
+                        secondary_columns[secondary_index++] = unit_val[u][v];
+                }
+            }
+
+            for (Column column : all_columns)
+                column.primary = true;
+            link();
+        }
+
+        //Link every primary column not deleted into the list after root, in all_columns order
+        public void link() {
+            Column last = root;
+            for (Column column : all_columns) {
+                if (!column.deleted) {
+                    last.right = column;
+                    column.left = last;
+                    last = column;
+                }
+            }
+            last.right = root;
+            root.left = last;
         }
     }
 
@@ -95,13 +180,29 @@ public class DancingLinksSolver extends StdSudokuSolver
         Row[] rows;
         ColumnList columns;
         int grid_dim;
-
-        public Matrix(int grid_dim) {
+        int[][] units;      //variant units the matrix was built for
+        //Rows and columns deleted by the choices in place, in order
+        Row[] row_trail;
+        Column[] column_trail;
+        int row_trail_size = 0;
+        int column_trail_size = 0;
+        //Whether prune() left rows out of the columns since the matrix last held every row
+        boolean pruned = false;
+
+        //Matrix of every row, for any grid of this dimension and these variant units
+        public Matrix(int grid_dim, int[][] units) {
 
             //Initialize fields
-            rows = new Row[grid_dim * grid_dim * grid_dim];
-            columns = new ColumnList(grid_dim);
+            int num_rows = grid_dim * grid_dim * grid_dim;
+            rows = new Row[num_rows];
+            columns = new ColumnList(grid_dim, units);
             this.grid_dim = grid_dim;
+            this.units = units;
+            int box_height = SudokuGrid.boxHeight(grid_dim);
+            int box_width = grid_dim / box_height;
+
+            //Variant units of each cell
+            int[][] cell_units = VariantConstraint.cellUnits(grid_dim, units);
             
             //Iterate through the grid's column, row, value and increment of current index
             int current_index = 0;
@@ -130,21 +231,79 @@ public class DancingLinksSolver extends StdSudokuSolver
                         appendToColumn(n_row_val, columns.row_val[r][v]);
                         appendToColumn(n_col_val, columns.col_val[c][v]);
 
-                        //square root the gird length to get the box size
-                        int box_size = (int)Math.sqrt(grid_dim);
-                        //get int of box corner of the row by having row minus the remainder of row and box size
-                        int boxCornerR = r - r % box_size;
-                        //get int of box corner of the column by having column minus the remainder of row and box size
-                        int boxCornerC = c - c % box_size;
-                        //get the box number with the following formula
-                        int box_num = (boxCornerR * box_size + boxCornerC) / box_size;
+                        //get the box number, boxes being box_height rows by box_width columns
+                        int box_num = SudokuGrid.boxOf(r, c, box_height, box_width);
                         
                         //link node to the column (vertically)
                         appendToColumn(n_box_val, columns.box_val[box_num][v]);
+
+                        //and a node for each variant unit of this cell
+                        for (int u : cell_units[r * grid_dim + c]) {
+                            MatrixNode n_unit_val = new MatrixNode();
+                            appendToRow(n_unit_val, row);
+                            appendToColumn(n_unit_val, columns.unit_val[u][v]);
+                        }
                     }
                 }
             }
 
+            for (Column column : columns.all_columns)
+                column.size = column.length;
+            for (Column column : columns.secondary_columns)
+                column.size = column.length;
+
+            //Each row and column is deleted at most once at a time
+            row_trail = new Row[rows.length];
+            column_trail = new Column[columns.all_columns.length + columns.secondary_columns.length];
+
+        }
+
+        //Choose the rows of the grid's filled cells, then take every row deleted out of its columns and
+        //forget the choices, so the search starts as if the filled cells were chosen but only meets the rows
+        //they leave.  The matrix's own rows and nodes are relinked, so nothing is allocated; reset() puts
+        //every row back.  False if the filled cells clash, the matrix then only fit for reset()
+        public boolean prune(StdSudokuGrid std_grid) {
+            int[][] g = std_grid.getGrid();
+            for (int r = 0; r < grid_dim; r++) {
+                for (int c = 0; c < grid_dim; c++) {
+                    if (g[r][c] == -1)
+                        continue;
+                    Row row = getRow(r, c, std_grid.symbolIndex(g[r][c]));
+                    if (row.deleted)
+                        return false;
+                    chooseRow(row);
+                }
+            }
+
+            relink();
+            row_trail_size = 0;
+            column_trail_size = 0;
+            pruned = true;
+            return true;
+        }
+
+        //Link the nodes of every row not deleted into their columns, in row order, and the primary
+        //columns not deleted into the list to cover
+        private void relink() {
+            for (Column column : columns.all_columns) {
+                column.head = null;
+                column.length = 0;
+            }
+            for (Column column : columns.secondary_columns) {
+                column.head = null;
+                column.length = 0;
+            }
+            for (Row row : rows) {
+                if (row.deleted)
+                    continue;
+                MatrixNode node = row.head;
+                do {
+                    appendToColumn(node, node.column);
+                    node = node.right;
+                }
+                while (node != row.head);
+            }
+            columns.link();
         }
 
         //Places node at end of the linked list pointed to by this row's head
@@ -157,13 +316,10 @@ public class DancingLinksSolver extends StdSudokuSolver
                 n.right = n;
             }
             else {
-                //Find node whose right, points back to head (last node in list), append this node
-                MatrixNode curr = row.head;
-                while (curr.right != row.head) {
-                    curr = curr.right;
-                }
-                curr.right = n;
-                n.setLeft(curr);
+                //The list is circular, so the head's left is the last node; append this node after it
+                MatrixNode last = row.head.left;
+                last.right = n;
+                n.setLeft(last);
                 n.right = row.head;
                 row.head.setLeft(n);
             }
@@ -181,13 +337,10 @@ public class DancingLinksSolver extends StdSudokuSolver
                 n.up = n;
                 n.down = n;
             } else {
-                //Find node whose down, points back to head (last node in list), append this node
-                MatrixNode curr = column.head;
-                while (curr.down != column.head) {
-                    curr = curr.down;
-                }
-                curr.down = n;
-                n.up = curr;
+                //The list is circular, so the head's up is the last node; append this node after it
+                MatrixNode last = column.head.up;
+                last.down = n;
+                n.up = last;
                 n.down = column.head;
                 column.head.up = n;
             }
@@ -206,8 +359,13 @@ public class DancingLinksSolver extends StdSudokuSolver
             while (curr != row.head);
         }
 
+        //Set column's deleted to true and, if primary, unlink it from the list of columns to cover
         public void removeColumn(Column column) {
             column.deleted = true;
+            if (column.primary) {
+                column.left.right = column.right;
+                column.right.left = column.left;
+            }
         }
 
         //Undo deletion of this row, update length of columns affected
@@ -221,179 +379,733 @@ public class DancingLinksSolver extends StdSudokuSolver
             while (curr != row.head);
         }
 
+        //Undo deletion of this column, relinking it where it was, as columns are re-added in reverse order
         public void reAddColumn(Column column) {
             column.deleted = false;
+            if (column.primary) {
+                column.left.right = column;
+                column.right.left = column;
+            }
         }
 
-        //Get column with least length (least amount of 1s or least amount of nodes)
+        //Include this row in the solution: delete every row sharing a column with it, then its columns and itself.
+        //Deleted rows and columns are recorded on the trails so the choice may be reverted
+        public void chooseRow(Row row) {
+
+            //Loop through nodes in this row
+            MatrixNode currRow = row.head;
+            do {
+
+                //If this column is not deleted
+                if (!currRow.column.deleted) {
+
+                    //Loop through nodes in this column
+                    MatrixNode currCol = currRow;
+                    do {
+
+                        //Delete the row of each node in this column's linked list (delete each row with a 1 in this column)
+                        if (currCol != currRow && !currCol.row.deleted) {
+                            removeRow(currCol.row);
+                            row_trail[row_trail_size++] = currCol.row;
+                        }
+
+                        currCol = currCol.down;
+                    }
+                    while (currCol != currRow);
+
+                    //Delete this column
+                    removeColumn(currRow.column);
+                    column_trail[column_trail_size++] = currRow.column;
+
+                }
+
+                currRow = currRow.right;
+            }
+            while (currRow != row.head);
+
+            //Delete this chosen row
+            if (!row.deleted) {
+                removeRow(row);
+                row_trail[row_trail_size++] = row;
+            }
+        }
+
+        //Undo every choice made since the trails had these sizes
+        public void revert(int row_mark, int column_mark) {
+            while (row_trail_size > row_mark)
+                reAddRow(row_trail[--row_trail_size]);
+            while (column_trail_size > column_mark)
+                reAddColumn(column_trail[--column_trail_size]);
+        }
+
+        //Get primary column with least length (least amount of 1s or least amount of nodes)
         public Column getLeastColumn() {
             Column leastColumn = null;
             int leastVal = grid_dim * grid_dim * grid_dim;
-            for (Column column : columns.all_columns) {
-                if (!column.deleted && column.length < leastVal) {
+            for (Column column = columns.root.right; column != columns.root; column = column.right) {
+                if (column.length < leastVal) {
                     leastColumn = column;
                     leastVal = column.length;
+                    //No row can cover this column, the branch fails whichever column is chosen
+                    if (leastVal == 0)
+                        break;
                 }
             }
             return leastColumn;
         }
 
-        //Get row from rows[] using (r, c, v)
+        //Undelete every row and column, as freshly constructed
+        public void reset() {
+            row_trail_size = 0;
+            column_trail_size = 0;
+            for (Row row : rows)
+                row.deleted = false;
+            for (Column column : columns.all_columns) {
+                column.deleted = false;
+                column.length = column.size;
+            }
+            for (Column column : columns.secondary_columns) {
+                column.deleted = false;
+                column.length = column.size;
+            }
+            if (pruned) {
+                relink();
+                pruned = false;
+            }
+            else
+                columns.link();
+        }
+
+        //Get row from rows[] using (r, c, v), in a matrix of every row
         public Row getRow(int r, int c, int v) {
             return rows[v + grid_dim * c + grid_dim * grid_dim * r];
         }
 
     }
 
+    //Iterative Dancing Links search that stops after each solution and resumes where it left off.
+    //Each depth keeps the column it branched on, the node of the row currently chosen in it,
+    //and the sizes of the matrix's trails before that choice
+    private static class SolutionIterator implements Iterator<byte[]> {
+        private Matrix matrix;
+        private Column[] columns;
+        private MatrixNode[] nodes;
+        private int[] row_marks;
+        private int[] column_marks;
+        private int[] slots;        //position in the encoding of each cell, by r * grid_dim + c
+        private byte[] encoding;    //reused for every solution
+        private int depth;
+        private boolean started = false;
+        private boolean ready = false;
+        private boolean exhausted = false;
+
+        //A null matrix is a grid whose initial values clash, with no solutions
+        public SolutionIterator(Matrix matrix, int[][] g) {
+            this.matrix = matrix;
+            exhausted = matrix == null;
+
+            //Number the empty cells in row-major order
+            slots = new int[g.length * g.length];
+            int empty = 0;
+            for (int r = 0; r < g.length; r++) {
+                for (int c = 0; c < g.length; c++) {
+                    slots[r * g.length + c] = g[r][c] == -1 ? empty++ : -1;
+                }
+            }
+            encoding = new byte[empty];
+
+            //Every choice fills one empty cell, plus a final depth that finds no column left
+            columns = new Column[empty + 1];
+            nodes = new MatrixNode[empty + 1];
+            row_marks = new int[empty + 1];
+            column_marks = new int[empty + 1];
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!ready && !exhausted) {
+                ready = findNext();
+                exhausted = !ready;
+            }
+            return ready;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            ready = false;
+            return encoding;
+        }
+
+        //Start branching at this depth, false if no columns remain (the current choices are a solution)
+        private boolean openDepth(int d) {
+            columns[d] = matrix.getLeastColumn();
+            nodes[d] = null;
+            return columns[d] != null;
+        }
+
+        //Revert the row chosen at this depth and choose the next live row in its column, false if none is left
+        private boolean advanceDepth(int d) {
+            MatrixNode node;
+            if (nodes[d] == null) {
+                //A column of a pruned matrix may have no rows at all
+                if (columns[d].head == null)
+                    return false;
+                node = columns[d].head;
+            }
+            else {
+                matrix.revert(row_marks[d], column_marks[d]);
+                node = nodes[d].down;
+                if (node == columns[d].head) {
+                    nodes[d] = null;
+                    return false;
+                }
+            }
+
+            //Skip deleted rows
+            while (node.row.deleted) {
+                node = node.down;
+                if (node == columns[d].head) {
+                    nodes[d] = null;
+                    return false;
+                }
+            }
+
+            row_marks[d] = matrix.row_trail_size;
+            column_marks[d] = matrix.column_trail_size;
+            matrix.chooseRow(node.row);
+            encoding[slots[node.row.r * matrix.grid_dim + node.row.c]] = (byte)node.row.v;
+            nodes[d] = node;
+            return true;
+        }
+
+        //Move the search on to its next solution
+        private boolean findNext() {
+            if (!started) {
+                started = true;
+                depth = 0;
+                if (!openDepth(0)) {
+                    //Grid was already complete, it is its own only solution
+                    depth = -1;
+                    return true;
+                }
+            }
+
+            //depth is the deepest choice still in place, try its next row
+            while (depth >= 0) {
+                if (advanceDepth(depth)) {
+                    if (!openDepth(depth + 1))
+                        return true;
+                    depth++;
+                }
+                else {
+                    depth--;
+                }
+            }
+
+            return false;
+        }
+    }
+
+
     //Recursive Dancing Links solver
     public boolean solve(int[][] g, Matrix matrix) {
 
+        //Give up if cancelled from another thread
+        if (isCancelled())
+            return false;
+        if (progress != null)
+            progress.node(depth, givens + depth);
+
         //Get least column
         Column leastColumn = matrix.getLeastColumn();
         //If all columns deleted, grid is complete
         if (leastColumn == null)
             return true;
+        //A column of a pruned matrix with no rows at all can never be covered
+        if (leastColumn.head == null)
+            return false;
+
+        //Give up at once on rows known to leave no solution
+        if (deadStates != null && deadStates.isDead(hash))
+            return false;
+        int tried = 0;
+
+        //Try the rows of this column in random order
+        if (random != null) {
+            for (MatrixNode rowNode : shuffledRows(leastColumn)) {
+                if (progress != null)
+                    progress.branch(depth, tried++, leastColumn.length);
+                if (tryRow(g, matrix, rowNode))
+                    return true;
+            }
+            if (deadStates != null && !isCancelled())
+                deadStates.addDead(hash);
+            return false;
+        }
 
         //Try each node in this column
         MatrixNode rowNode = leastColumn.head;
         do {
 
-            //Keep track of removed rows and columns so they may be reverted if branch fails
-           ArrayList<Row> removedRows = new ArrayList<>();
-           ArrayList<Column> removedColumns = new ArrayList<>();
-
-           //If this row is not deleted
+           //If this row is not deleted and recursion is successful, grid is complete
            if (!rowNode.row.deleted) {
+               if (progress != null)
+                   progress.branch(depth, tried++, leastColumn.length);
+               if (tryRow(g, matrix, rowNode))
+                   return true;
+           }
 
-               //Loop through nodes in this row
-               MatrixNode currRow = rowNode;
-               do {
+           rowNode = rowNode.down;
+       }
+       while (rowNode != leastColumn.head);
 
-                   //If this column is not deleted
-                   if (!currRow.column.deleted) {
+       //No row in this branch worked, remember so and return false
+       if (deadStates != null && !isCancelled())
+           deadStates.addDead(hash);
+       return false;
 
-                       //Loop through nodes in this column
-                       MatrixNode currCol = currRow;
-                       do {
+    }
 
-                           //Delete the row of each node in this column's linked list (delete each row with a 1 in this column)
-                           if (currCol != currRow && !currCol.row.deleted) {
-                               matrix.removeRow(currCol.row);
-                               removedRows.add(currCol.row);
-                           }
 
-                           currCol = currCol.down;
-                       }
-                       while (currCol != currRow);
+    //Include this node's row in grid and recurse, reverting the row if the branch fails
+    private boolean tryRow(int[][] g, Matrix matrix, MatrixNode rowNode) {
 
-                       //Delete this column
-                       matrix.removeColumn(currRow.column);
-                       removedColumns.add(currRow.column);
+        //Mark the trails so the rows and columns this choice removes may be reverted if the branch fails
+        int row_mark = matrix.row_trail_size;
+        int column_mark = matrix.column_trail_size;
+        matrix.chooseRow(rowNode.row);
 
-                   }
+        //Include row in grid
+        g[rowNode.row.r][rowNode.row.c] = rowNode.row.v;
+        long key = rowKey(matrix, rowNode.row);
+        hash ^= key;
 
-                   currRow = currRow.right;
-               }
-               while (currRow != rowNode);
+        //If recursion is successful, grid is complete
+        depth++;
+        boolean solved = solve(g, matrix);
+        depth--;
+        if (solved)
+            return true;
 
-               //Delete this chosen row
-               matrix.removeRow(currRow.row);
-               removedRows.add(currRow.row);
+        //Otherwise revert back
+        g[rowNode.row.r][rowNode.row.c] = -1;
+        hash ^= key;
+        matrix.revert(row_mark, column_mark);
+        return false;
+    }
 
-               //Include row in grid
-               g[rowNode.row.r][rowNode.row.c] = rowNode.row.v;
 
-               //If recursion is successful, grid is complete
-               if (solve(g, matrix))
-                   return true;
-               else {
-                   //Otherwise revert back and move to next row
-                   g[rowNode.row.r][rowNode.row.c] = -1;
-                   for (Row row : removedRows)
-                       matrix.reAddRow(row);
-                   for (Column col : removedColumns)
-                       matrix.reAddColumn(col);
-               }
+    //Key of the row in the dead state hash, 0 if the solver has no table
+    private long rowKey(Matrix matrix, Row row) {
+        if (deadStates == null)
+            return 0;
+        return deadStates.key(row.r * matrix.grid_dim + row.c, row.v);
+    }
 
-           }
 
-           rowNode = rowNode.down;
-       }
-       while (rowNode != leastColumn.head);
+    //Live rows of this column in random order
+    private ArrayList<MatrixNode> shuffledRows(Column column) {
+        ArrayList<MatrixNode> nodes = new ArrayList<>();
+        MatrixNode rowNode = column.head;
+        do {
+            if (!rowNode.row.deleted) {
+                //Insert at a random position, an inside-out shuffle
+                nodes.add(nodes.isEmpty() ? 0 : random.nextInt(nodes.size() + 1), rowNode);
+            }
+            rowNode = rowNode.down;
+        }
+        while (rowNode != column.head);
+        return nodes;
+    }
 
-       //No row in this branch worked, return false
-       return false;
 
+    //Recursive Dancing Links counter, stops once limit solutions have been found
+    private int countSolutions(Matrix matrix, int limit) {
+
+        //If all columns deleted, this branch is one complete solution
+        Column leastColumn = matrix.getLeastColumn();
+        if (leastColumn == null)
+            return 1;
+
+        //Rows known to leave no solution
+        if (deadStates != null && deadStates.isDead(hash))
+            return 0;
+
+        //Out of nodes, report the limit as reached
+        if (--nodesLeft < 0)
+            return limit;
+
+        int count = 0;
+        MatrixNode rowNode = leastColumn.head;
+        do {
+
+            if (!rowNode.row.deleted) {
+
+                //Count the solutions below this row, then revert it
+                int row_mark = matrix.row_trail_size;
+                int column_mark = matrix.column_trail_size;
+                matrix.chooseRow(rowNode.row);
+                long key = rowKey(matrix, rowNode.row);
+                hash ^= key;
+                depth++;
+                count += countSolutions(matrix, limit - count);
+                depth--;
+                hash ^= key;
+                matrix.revert(row_mark, column_mark);
+
+                if (count >= limit)
+                    return count;
+            }
+
+            rowNode = rowNode.down;
+        }
+        while (rowNode != leastColumn.head);
+
+        //Every row was counted out (running out of nodes counts as the limit), none leads to a solution
+        if (count == 0 && deadStates != null)
+            deadStates.addDead(hash);
+        return count;
     }
 
 
-    @Override
-    public boolean solve(SudokuGrid grid) {
+    //New matrix pruned to the grid's filled cells (see Matrix.prune()), null if the filled cells clash
+    private static Matrix prunedMatrix(StdSudokuGrid std_grid) {
+        Matrix matrix = new Matrix(std_grid.getGrid().length, std_grid.variantUnits());
+        return matrix.prune(std_grid) ? matrix : null;
+    }
+
+
+    //The reusable matrix for this grid's dimension and variant, reset, with the rows of the grid's initial values chosen
+    private Matrix reusableMatrix(StdSudokuGrid std_grid) {
+        chooseInitialValues(emptyMatrix(std_grid), std_grid);
+        return reusableMatrix;
+    }
+
+
+    //The reusable matrix for this grid's dimension and variant, reset, with nothing chosen
+    private Matrix emptyMatrix(StdSudokuGrid std_grid) {
+        int dim = std_grid.getGrid().length;
+        int[][] units = std_grid.variantUnits();
+        if (reusableMatrix == null || reusableMatrix.grid_dim != dim || !VariantConstraint.sameUnits(reusableMatrix.units, units))
+            reusableMatrix = new Matrix(dim, units);
+        else
+            reusableMatrix.reset();
+        return reusableMatrix;
+    }
 
-        StdSudokuGrid std_grid = (StdSudokuGrid)grid;
-        int[][] g = std_grid.getGrid();
 
-        //Make matrix from grid
-        Matrix matrix = new Matrix(g.length);
+    //Choose the rows of the grid's initial values in a fresh or reset matrix
+    private void chooseInitialValues(Matrix matrix, StdSudokuGrid std_grid) {
 
-        //Choose initial values using same method as recursive solver
+        int[][] g = std_grid.getGrid();
         for (int r = 0; r < g.length; r++) {
             for (int c = 0; c < g.length; c++) {
-
                 if (g[r][c] != -1) {
+                    //Initial values stay on the trails below every choice of the search
+                    matrix.chooseRow(matrix.getRow(r, c, std_grid.symbolIndex(g[r][c])));
+                }
+            }
+        }
+    }
 
-                    //Set grid values to the index of their symbol
-                    g[r][c] = std_grid.symbolIndex(g[r][c]);
 
-                    MatrixNode currRow = matrix.getRow(r, c, g[r][c]).head;
+    @Override
+    public boolean solve(SudokuGrid grid) {
 
-                    do {
-                        if (!currRow.column.deleted) {
+        StdSudokuGrid std_grid = (StdSudokuGrid)grid;
+        int[][] g = std_grid.getGrid();
 
-                            MatrixNode currCol = currRow;
+        //Prune the reusable matrix to the placements the initial values leave, null if they clash
+        Matrix matrix = emptyMatrix(std_grid);
+        if (!matrix.prune(std_grid))
+            matrix = null;
+        depth = 0;
+        if (deadStates != null)
+            hash = deadStates.start(std_grid);
+        if (progress != null)
+            givens = progress.start(std_grid);
+
+        //Set grid values to the index of their symbol
+        for (int r = 0; r < g.length; r++) {
+            for (int c = 0; c < g.length; c++) {
+                if (g[r][c] != -1)
+                    g[r][c] = std_grid.symbolIndex(g[r][c]);
+            }
+        }
 
-                            do {
-                                if (currCol != currRow && !currCol.row.deleted) {
-                                    matrix.removeRow(currCol.row);
-                                }
+        //Call recursive solver
+        boolean result = matrix != null && solve(g, matrix);
+        if (progress != null)
+            progress.finish();
+
+        //Reset grid values from their indexes to their proper symbols, the givens alone if unsolved
+        for (int i = 0; i < g.length; i++) {
+            for (int j = 0; j < g.length; j++) {
+                if (g[i][j] != -1)
+                    g[i][j] = std_grid.getValidSymbols()[g[i][j]];
+            }
+        }
 
-                                currCol = currCol.down;
-                            }
-                            while (currCol != currRow);
+        return result;
 
-                            matrix.removeColumn(currRow.column);
 
-                        }
+    } // end of solve()
 
-                        currRow = currRow.right;
-                    }
-                    while (currRow != matrix.getRow(r, c, g[r][c]).head);
 
-                    matrix.removeRow(currRow.row);
-                    matrix.removeColumn(currRow.column);
+    @Override
+    public int countSolutions(SudokuGrid grid, int limit) {
+
+        //Only the matrix is searched, so the grid keeps its initial values
+        Matrix matrix = reusableMatrix((StdSudokuGrid)grid);
+        depth = 0;
+        nodesLeft = Long.MAX_VALUE;
+        if (deadStates != null)
+            hash = deadStates.start((StdSudokuGrid)grid);
+        return countSolutions(matrix, limit);
+
+    } // end of countSolutions()
+
+
+    /**
+     * Checks whether the grid has any solution that does not place symbol at
+     * (r, c).  When the grid is known to have a solution with symbol there (e.g.
+     * a clue was just removed from a unique puzzle), this decides uniqueness with
+     * one search that stops at the first solution, rather than counting to two.
+     * Like countSolutions(), it reuses the solver's matrix, so repeated checks on
+     * grids of the same dimension allocate no new matrix.
+     *
+     * The search gives up after visiting nodeLimit nodes and then answers true,
+     * so false always means proven: no such solution exists.
+     *
+     * @param grid Grid to check, left unchanged.
+     * @param r Row of the excluded placement.
+     * @param c Column of the excluded placement.
+     * @param symbol Symbol that may not be placed at (r, c).
+     * @param nodeLimit Most search nodes to visit before giving up.
+     *
+     * @return True if some solution has a different symbol at (r, c), or the
+     *          search gave up; false if there is provably none.
+     */
+    public boolean hasSolutionWithout(SudokuGrid grid, int r, int c, int symbol, long nodeLimit) {
+        StdSudokuGrid std_grid = (StdSudokuGrid)grid;
+        reusableMatrix(std_grid);
+        depth = 0;
+
+        //Take the excluded placement out of the search
+        Row excluded = reusableMatrix.getRow(r, c, std_grid.symbolIndex(symbol));
+        if (!excluded.deleted)
+            reusableMatrix.removeRow(excluded);
+        if (deadStates != null)
+            hash = deadStates.start(std_grid) ^ deadStates.excludedKey(r * grid.getGrid().length + c, excluded.v);
+
+        nodesLeft = nodeLimit;
+        return countSolutions(reusableMatrix, 1) > 0;
+    } // end of hasSolutionWithout()
+
+
+    /**
+     * Searches by where another solution first differs from known: for each empty
+     * cell in row-major order, a search without known's symbol there, with the
+     * empty cells before it fixed to known's symbols.  These searches cover
+     * disjoint parts of the solutions other than known, and the fixed cells stay
+     * chosen in the solver's matrix from one search to the next.
+     */
+    @Override
+    public boolean findOtherSolution(SudokuGrid grid, int[][] known) {
+        StdSudokuGrid std_grid = (StdSudokuGrid)grid;
+        int[][] g = std_grid.getGrid();
+        if (candidates(std_grid) == null)
+            return false;
 
+        //Search on a copy holding symbol indexes, so grid is only changed if another solution is found
+        int[][] indexes = new int[g.length][g.length];
+        for (int r = 0; r < g.length; r++) {
+            for (int c = 0; c < g.length; c++)
+                indexes[r][c] = g[r][c] == -1 ? -1 : std_grid.symbolIndex(g[r][c]);
+        }
+        Matrix matrix = reusableMatrix(std_grid);
+        depth = 0;
+        if (deadStates != null)
+            hash = deadStates.start(std_grid);
+
+        boolean found = false;
+        for (int r = 0; r < g.length && !found; r++) {
+            for (int c = 0; c < g.length && !found; c++) {
+                if (g[r][c] != -1)
+                    continue;
+                int v = std_grid.symbolIndex(known[r][c]);
+
+                //Known's symbol cannot go here, so every solution left differs from it
+                if (v == -1 || matrix.getRow(r, c, v).deleted) {
+                    found = solve(indexes, matrix);
+                    break;
                 }
 
+                //Search without known's symbol here
+                Row row = matrix.getRow(r, c, v);
+                matrix.removeRow(row);
+                long excluded = deadStates == null ? 0 : deadStates.excludedKey(r * g.length + c, v);
+                hash ^= excluded;
+                found = solve(indexes, matrix);
+                if (found)
+                    break;
+                if (isCancelled())
+                    return false;
+                hash ^= excluded;
+                matrix.reAddRow(row);
+
+                //then fix it there for the cells after
+                matrix.chooseRow(row);
+                indexes[r][c] = v;
+                hash ^= rowKey(matrix, row);
             }
         }
+        if (!found)
+            return false;
 
-        //Call recursive solver
-        boolean result = solve(g, matrix);
-
-        if (!result) {
-            System.out.println("Initial Values Error");
+        for (int r = 0; r < g.length; r++) {
+            for (int c = 0; c < g.length; c++)
+                g[r][c] = std_grid.getValidSymbols()[indexes[r][c]];
         }
-        else {
-            for (int i = 0; i < g.length; i++) {
-                for (int j = 0; j < g.length; j++) {
-                    //Reset grid values from their indexes to their proper symbols
-                    g[i][j] = std_grid.getValidSymbols()[g[i][j]];
-                }
+        return true;
+    } // end of findOtherSolution()
+
+
+    /**
+     * Removes the clues of a puzzle with a unique solution (e.g. a complete grid)
+     * in the order given, keeping a removal only if hasSolutionWithout() finds no
+     * other solution, with the same node limit.
+     *
+     * The search state is carried from one removal to the next instead of being
+     * rebuilt: the clues are chosen in the matrix once, in reverse order of
+     * removal, so the clue to check next is chosen last but for the clues kept
+     * so far.  Each check reverts those kept clues and the clue itself, chooses
+     * the kept clues again and searches; a clue that must stay is chosen again
+     * on top.  A check thus costs a few choices per clue kept so far, not a
+     * reset of the matrix and a choice per clue still in the puzzle.
+     *
+     * @param puzzle Puzzle to remove clues from, in place.
+     * @param cells Cells to try, as r * grid_dim + c, in order; empty ones are skipped.
+     * @param nodeLimit Most search nodes each check may visit before the clue is kept.
+     */
+    public void removeClues(StdSudokuGrid puzzle, int[] cells, long nodeLimit) {
+        int[][] g = puzzle.getGrid();
+        int grid_dim = g.length;
+        Matrix matrix = emptyMatrix(puzzle);
+
+        //Clues chosen, bottom to top, and the trail sizes before each was chosen
+        Row[] chosen = new Row[cells.length];
+        int[] row_marks = new int[cells.length];
+        int[] column_marks = new int[cells.length];
+        int top = 0;
+        for (int i = cells.length - 1; i >= 0; i--) {
+            int r = cells[i] / grid_dim;
+            int c = cells[i] % grid_dim;
+            if (g[r][c] != -1)
+                chooseClue(matrix, matrix.getRow(r, c, puzzle.symbolIndex(g[r][c])), chosen, row_marks, column_marks, top++);
+        }
+
+        //Clues kept so far, the top of the stack
+        int kept = 0;
+        for (int cell : cells) {
+            int r = cell / grid_dim;
+            int c = cell % grid_dim;
+            if (g[r][c] == -1)
+                continue;
+            int symbol = g[r][c];
+
+            //Revert the kept clues and this clue below them, then choose the kept clues again
+            int below = top - kept - 1;
+            Row clue = chosen[below];
+            matrix.revert(row_marks[below], column_marks[below]);
+            top = below;
+            for (int k = 0; k < kept; k++)
+                chooseClue(matrix, chosen[below + 1 + k], chosen, row_marks, column_marks, top++);
+
+            //Search for a solution with another symbol there
+            g[r][c] = -1;
+            matrix.removeRow(clue);
+            if (deadStates != null)
+                hash = deadStates.start(puzzle) ^ deadStates.excludedKey(cell, clue.v);
+            depth = 0;
+            nodesLeft = nodeLimit;
+            boolean other = countSolutions(matrix, 1) > 0;
+            matrix.reAddRow(clue);
+
+            //Another solution (or one not ruled out), the clue must stay
+            if (other) {
+                g[r][c] = symbol;
+                chooseClue(matrix, clue, chosen, row_marks, column_marks, top++);
+                kept++;
             }
         }
+    } // end of removeClues()
 
-        return result;
 
+    //Choose the row of a clue at position top of the clue stack, recording the trail sizes before it
+    private static void chooseClue(Matrix matrix, Row row, Row[] chosen, int[] row_marks, int[] column_marks, int top) {
+        chosen[top] = row;
+        row_marks[top] = matrix.row_trail_size;
+        column_marks[top] = matrix.column_trail_size;
+        matrix.chooseRow(row);
+    }
 
-    } // end of solve()
+
+    @Override
+    public void reset() {
+        reusableMatrix = null;
+        depth = 0;
+    } // end of reset()
+
+
+    /**
+     * Lazily enumerates every solution of the grid.  The search only advances when
+     * the next solution is requested, so a slow consumer holds it back and nothing
+     * is buffered.  The grid itself is never changed.
+     *
+     * Each solution is encoded as the symbol index of every initially empty cell,
+     * in row-major order (see decodeSolution()), one unsigned byte each, so grids
+     * of up to MAX_ENCODED_DIMENSION symbols can be enumerated.  The same array
+     * is refilled for every solution, so copy it if it must outlive the next call
+     * to next().
+     *
+     * @param grid Grid whose solutions are enumerated.
+     *
+     * @return Iterator over the encoded solutions.
+     */
+    public Iterator<byte[]> solutions(SudokuGrid grid) {
+        StdSudokuGrid std_grid = (StdSudokuGrid)grid;
+        if (std_grid.getGrid().length > MAX_ENCODED_DIMENSION)
+            throw new IllegalArgumentException("Solutions of grids larger than " + MAX_ENCODED_DIMENSION
+                + " symbols cannot be encoded in bytes");
+        return new SolutionIterator(prunedMatrix(std_grid), std_grid.getGrid());
+    } // end of solutions()
+
+
+    /**
+     * Stream view of solutions(), with the same encoding and buffer reuse.
+     */
+    public Stream<byte[]> solutionStream(SudokuGrid grid) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(solutions(grid),
+            Spliterator.ORDERED | Spliterator.NONNULL), false);
+    } // end of solutionStream()
+
+
+    /**
+     * Writes an encoded solution of grid into target, which must have the same
+     * dimension.  Initial values are copied from grid and the empty cells are
+     * filled with the symbols in the encoding.
+     */
+    public static void decodeSolution(StdSudokuGrid grid, byte[] encoding, int[][] target) {
+        int[][] g = grid.getGrid();
+        int[] valid_symbols = grid.getValidSymbols();
+        int slot = 0;
+        for (int r = 0; r < g.length; r++) {
+            for (int c = 0; c < g.length; c++) {
+                target[r][c] = g[r][c] == -1 ? valid_symbols[encoding[slot++] & 0xFF] : g[r][c];
+            }
+        }
+    } // end of decodeSolution()
 } // end of class DancingLinksSolver
@@ -0,0 +1,228 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package solver;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.IntUnaryOperator;
+
+import grid.KillerSudokuGrid;
+import grid.StdSudokuGrid;
+
+
+/**
+ * Bounded table of partial grids known to have no solution, so a search that
+ * comes back to one can give it up with one probe instead of searching it out
+ * again.
+ *
+ * A partial grid is the set of symbols placed (given or chosen), hashed by
+ * Zobrist hashing: every placement of symbol index v in a cell has a random
+ * 64 bit key, and the hash of a grid is the exclusive or of the keys of its
+ * placements, so a search keeps it up to date by xoring a key in when it places
+ * a symbol and out again when it takes it back.  The exact cover solvers choose
+ * rows that are placements, so the set of rows chosen hashes the same way; a
+ * row excluded from the search has a key of its own.  Two grids with the same
+ * hash are taken to be the same grid, which for 64 bit keys is wrong about once
+ * in 2^64 probes.
+ *
+ * The table is for one puzzle's rules at a time: use() is called at the start
+ * of each search with the dimension and a fingerprint of the rules (variant
+ * units, or killer cages), and empties the table when they change.  Grids whose
+ * rules are the same share what was learnt, e.g. puzzles with some clues in
+ * common, or solve() then countSolutions() of one puzzle.
+ *
+ * Hashes are kept in buckets of BUCKET slots; when a bucket is full the new hash
+ * replaces one of them in turn, so the table never grows past its capacity.
+ * Not thread safe, so give each solver its own table.
+ */
+public class DeadStates
+{
+    public static final int BUCKET = 4;
+
+    private long[] slots;               //hashes of dead grids, 0 for empty slots
+    private int mask;                   //slots - 1, the slot count being a power of two
+    private int next_victim = 0;        //slot of a full bucket replaced next
+    private int grid_dim = -1;
+    private long rules;
+    private long[] keys = new long[0];  //placement keys, then exclusion keys, by cell * grid_dim + v
+    private long probes = 0;
+    private long hits = 0;
+    private long stores = 0;
+
+    /**
+     * @param capacity Most grids the table remembers, rounded up to a power of two.
+     */
+    public DeadStates(int capacity) {
+        int size = BUCKET;
+        while (size < capacity)
+            size <<= 1;
+        slots = new long[size];
+        mask = size - 1;
+    } // end of DeadStates()
+
+
+    /**
+     * Start a search of a grid with this dimension and these rules, emptying the
+     * table if either changed since the last search.
+     *
+     * @param grid_dim Dimension of the grid.
+     * @param rules Fingerprint of the rules, see unitsRules() and cageRules().
+     */
+    public void use(int grid_dim, long rules) {
+        if (grid_dim == this.grid_dim && rules == this.rules)
+            return;
+        if (grid_dim != this.grid_dim) {
+            //Same keys for the same dimension on every run, so runs can be repeated
+            SplittableRandom random = new SplittableRandom(grid_dim);
+            keys = new long[2 * grid_dim * grid_dim * grid_dim];
+            for (int i = 0; i < keys.length; i++)
+                keys[i] = random.nextLong();
+        }
+        this.grid_dim = grid_dim;
+        this.rules = rules;
+        clear();
+    } // end of use()
+
+
+    /**
+     * use() the table for a standard grid (and its variant units).
+     *
+     * @return Hash of the grid's given cells, to start the search from.
+     */
+    public long start(StdSudokuGrid grid) {
+        use(grid.getGrid().length, unitsRules(grid.variantUnits()));
+        return givens(grid.getGrid(), grid::symbolIndex);
+    } // end of start()
+
+
+    /**
+     * use() the table for a killer grid (and its cages).
+     *
+     * @return Hash of the grid's given cells, to start the search from.
+     */
+    public long start(KillerSudokuGrid grid) {
+        use(grid.getGrid().length, cageRules(grid));
+        return givens(grid.getGrid(), grid::symbolIndex);
+    } // end of start()
+
+
+    //Hash of the filled cells of g, by the index of their symbols
+    private long givens(int[][] g, IntUnaryOperator symbolIndex) {
+        long hash = 0;
+        for (int r = 0; r < g.length; r++) {
+            for (int c = 0; c < g.length; c++) {
+                if (g[r][c] != -1)
+                    hash ^= key(r * g.length + c, symbolIndex.applyAsInt(g[r][c]));
+            }
+        }
+        return hash;
+    }
+
+
+    //Key of symbol index v placed in the cell numbered r * grid_dim + c
+    public long key(int cell, int v) {
+        return keys[cell * grid_dim + v];
+    }
+
+    //Key of the placement of symbol index v in the cell being ruled out
+    public long excludedKey(int cell, int v) {
+        return keys[(grid_dim + cell) * grid_dim + v];
+    }
+
+
+    //Whether the grid with this hash is known to have no solution
+    public boolean isDead(long hash) {
+        probes++;
+        long stored = hash == 0 ? 1 : hash;
+        int start = (int)hash & mask & ~(BUCKET - 1);
+        for (int i = start; i < start + BUCKET; i++) {
+            if (slots[i] == stored) {
+                hits++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Remember that the grid with this hash has no solution
+    public void addDead(long hash) {
+        stores++;
+        long stored = hash == 0 ? 1 : hash;
+        int start = (int)hash & mask & ~(BUCKET - 1);
+        for (int i = start; i < start + BUCKET; i++) {
+            if (slots[i] == 0 || slots[i] == stored) {
+                slots[i] = stored;
+                return;
+            }
+        }
+        slots[start + next_victim] = stored;
+        next_victim = (next_victim + 1) & (BUCKET - 1);
+    }
+
+
+    //Forget every grid, keeping the keys
+    public void clear() {
+        Arrays.fill(slots, 0);
+    }
+
+
+    public long getProbes() {
+        return probes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getStores() {
+        return stores;
+    }
+
+
+    /**
+     * Fingerprint of a grid's variant units (see StdSudokuGrid.variantUnits()),
+     * 0 for a grid with none.
+     */
+    public static long unitsRules(int[][] units) {
+        long fingerprint = 0;
+        for (int[] unit : units) {
+            long unit_print = mix(unit.length);
+            for (int cell : unit)
+                unit_print = mix(unit_print ^ cell);
+            fingerprint = mix(fingerprint ^ unit_print);
+        }
+        return fingerprint;
+    }
+
+
+    /**
+     * Fingerprint of a killer grid's cages and symbols, the same whatever order
+     * the cages and their cells are listed in.  Cage totals are sums of symbols,
+     * so grids with the same cages but other symbols have other rules.
+     */
+    public static long cageRules(KillerSudokuGrid grid) {
+        int grid_dim = grid.getGrid().length;
+        long symbols = 0;
+        for (int symbol : grid.getValidSymbols())
+            symbols = mix(symbols ^ symbol);
+        long fingerprint = symbols;
+        for (KillerSudokuGrid.Cage cage : grid.getCages()) {
+            long cells = 0;
+            for (KillerSudokuGrid.Cell cell : cage.cells)
+                cells += mix(cell.row * grid_dim + cell.col + 1);
+            fingerprint += mix(cells ^ mix(cage.total));
+        }
+        return fingerprint;
+    }
+
+
+    //Splitmix64 finaliser, spreads every input bit over the output
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+} // end of class DeadStates
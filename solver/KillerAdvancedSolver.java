@@ -5,6 +5,7 @@
 package solver;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import grid.KillerSudokuGrid;
 import grid.SudokuGrid;
@@ -31,6 +32,7 @@ public class KillerAdvancedSolver extends KillerSudokuSolver
         public ArrayList<Placement> placements;
         public KillerSudokuGrid.Cage cage;
         public boolean deleted;
+        public Column[] columns;    //columns this row has a 1 in
         public Row(ArrayList<Placement> placements, KillerSudokuGrid.Cage cage) {
             this.placements = placements;
             this.cage = cage;
@@ -42,20 +44,18 @@ public class KillerAdvancedSolver extends KillerSudokuSolver
     public static class Column {
         public ArrayList<Row> rows;
         public boolean deleted;
+        public int live;            //rows of this column not deleted, kept up to date by the matrix
         public Column() {
             rows = new ArrayList<>();
             deleted = false;
+            live = 0;
         }
         public void add(Row row) {
             rows.add(row);
+            live++;
         }
         public int size() {
-            int size = 0;
-            for (Row row : rows) {
-                if (!row.deleted)
-                    size++;
-            }
-            return size;
+            return live;
         }
     }
 
@@ -98,240 +98,547 @@ public class KillerAdvancedSolver extends KillerSudokuSolver
         KillerSudokuGrid grid;
         int grid_dim;
         int num_cages;
+        boolean[] given;        //whether each cell, by r * grid_dim + c, was filled when the matrix was built
+        //Every column, in the order getLeastColumn() breaks ties
+        Column[] all_columns;
+
+        //Rows and columns deleted by the choices in place, in order, so each choice is undone exactly
+        Row[] row_trail;
+        int row_trail_size = 0;
+        Column[] column_trail;
+        int column_trail_size = 0;
 
-        public Matrix(KillerSudokuGrid grid) {
+        //Rows are the orderings of each cage's symbols worked out by cageOrderings()
+        public Matrix(KillerSudokuGrid grid, ArrayList<ArrayList<int[]>> orderings) {
 
             this.grid = grid;
             this.grid_dim = grid.getGrid().length;
             this.num_cages = grid.getCages().size();
             columns = new ColumnList(grid_dim, grid.getCages().size());
+            given = new boolean[grid_dim * grid_dim];
+            for (int r = 0; r < grid_dim; r++) {
+                for (int c = 0; c < grid_dim; c++)
+                    given[r * grid_dim + c] = grid.getGrid()[r][c] != -1;
+            }
+
+            int box_height = SudokuGrid.boxHeight(grid_dim);
+            int box_width = grid_dim / box_height;
+            int num_rows = 0;
 
             //For each cage
-            for (KillerSudokuGrid.Cage cage : grid.getCages()) {
-                for (int[] combination : getSumCombinations(cage.cells.size(), cage.total)) {
+            for (int cage_index = 0; cage_index < num_cages; cage_index++) {
+                KillerSudokuGrid.Cage cage = grid.getCages().get(cage_index);
+                for (int[] ordering : orderings.get(cage_index)) {
 
-                    int[] index_combination = new int[cage.cells.size()];
+                    //Add this ordering of symbols as placements in a row
+                    ArrayList<Placement> placements = new ArrayList<>();
                     for (int i = 0; i < cage.cells.size(); i++) {
-                        index_combination[i] = grid.symbolIndex(combination[i]);
+                        KillerSudokuGrid.Cell cell = cage.cells.get(i);
+                        placements.add(new Placement(cell.row, cell.col, ordering[i]));
                     }
 
-                    for (int[] ordering : getAllOrderings(index_combination)) {
+                    Row row = new Row(placements, cage);
+                    row.columns = new Column[placements.size() * 4 + 1];
+                    num_rows++;
 
-                        //For every possible ordering of every possible combination of valid symbols that add to this cage's total
+                    //Add this row to its satisfied columns: four per placement, then its cage
+                    int k = 0;
+                    for (Placement placement: placements) {
+                        int box_num = SudokuGrid.boxOf(placement.r, placement.c, box_height, box_width);
 
-                        //Add this ordering of symbols as placements in a row
-                        ArrayList<Placement> placements = new ArrayList<>();
-                        for (int i = 0; i < cage.cells.size(); i++) {
-                            KillerSudokuGrid.Cell cell = cage.cells.get(i);
-                            placements.add(new Placement(cell.row, cell.col, ordering[i]));
-                        }
-
-                        Row row = new Row(placements, cage);
-
-                        //Add this row to its satisfied columns
-                        for (Placement placement: placements) {
-                            columns.row_col[placement.r][placement.c].add(row);
-                            columns.row_val[placement.r][placement.v].add(row);
-                            columns.col_val[placement.c][placement.v].add(row);
+                        row.columns[k++] = columns.row_col[placement.r][placement.c];
+                        row.columns[k++] = columns.row_val[placement.r][placement.v];
+                        row.columns[k++] = columns.col_val[placement.c][placement.v];
+                        row.columns[k++] = columns.box_val[box_num][placement.v];
+                    }
+                    row.columns[k] = columns.cage_total[cage_index];
 
-                            int box_size = (int)Math.sqrt(grid_dim);
-                            int boxCornerR = placement.r - placement.r % box_size;
-                            int boxCornerC = placement.c - placement.c % box_size;
-                            int box_num = (boxCornerR * box_size + boxCornerC) / box_size;
-                            columns.box_val[box_num][placement.v].add(row);
-                        }
+                    for (Column column : row.columns)
+                        column.add(row);
 
-                        columns.cage_total[grid.getCages().indexOf(cage)].add(row);
+                }
+            }
 
-                    }
+            //Scan order: the four columns of each (i, j), cage i after (i, 0), then the remaining cages
+            all_columns = new Column[grid_dim * grid_dim * 4 + num_cages];
+            int n = 0;
+            for (int i = 0; i < grid_dim; i++) {
+                for (int j = 0; j < grid_dim; j++) {
+                    all_columns[n++] = columns.row_col[i][j];
+                    all_columns[n++] = columns.row_val[i][j];
+                    all_columns[n++] = columns.col_val[i][j];
+                    all_columns[n++] = columns.box_val[i][j];
+                    if (i < num_cages && j == 0)
+                        all_columns[n++] = columns.cage_total[i];
                 }
             }
+            for (int i = grid_dim; i < num_cages; i++)
+                all_columns[n++] = columns.cage_total[i];
 
-        }
+            //Each row and column is deleted at most once at a time
+            row_trail = new Row[num_rows];
+            column_trail = new Column[all_columns.length];
 
-        //Get all possible orderings of an array
-        public ArrayList<int[]> getAllOrderings(int[] values) {
-            return getAllOrderings(new ArrayList<>(), values, 0, values.length - 1);
         }
 
-        public ArrayList<int[]> getAllOrderings(ArrayList<int[]> orderings, int[] values, int l, int r) {
-            if (l == r) {
-                orderings.add(values);
-                return orderings;
+        //Live column with fewest live rows, null if every column is deleted
+        public Column getLeastColumn() {
+            Column leastColumn = null;
+            int leastVal = Integer.MAX_VALUE;
+
+            for (Column column : all_columns) {
+                if (!column.deleted && column.live < leastVal) {
+                    leastColumn = column;
+                    leastVal = column.live;
+                    //No row can cover this column, the branch is dead whichever column is chosen
+                    if (leastVal == 0)
+                        break;
+                }
             }
-            for (int i = l; i <= r; i++) {
-                int[] newValues = values.clone();
-
-                int tmp = newValues[l];
-                newValues[l] = newValues[i];
-                newValues[i] = tmp;
 
-                orderings = getAllOrderings(orderings, newValues, l + 1, r);
+            return leastColumn;
+        }
 
-                tmp = values[l];
-                values[l] = values[i];
-                values[i] = tmp;
-            }
-            return orderings;
+        //Delete a row, keeping the live sizes of its columns
+        private void deleteRow(Row row) {
+            row.deleted = true;
+            for (Column column : row.columns)
+                column.live--;
+            row_trail[row_trail_size++] = row;
         }
 
-        //Get all possible length-num_cells combinations of the valid symbols that add to a cage's total
-        public ArrayList<int[]> getSumCombinations(int num_cells, int total) {
-            ArrayList<int[]> combinations = getCombinations(new ArrayList<>(), grid.getValidSymbols(), num_cells, new int[num_cells], 0, grid.getValidSymbols().length - 1, 0);
-            for (int i = 0; i < combinations.size(); i++) {
-                int sum = 0;
-                for (int j = 0; j < num_cells; j++) {
-                    sum += combinations.get(i)[j];
-                }
-                if (sum != total) {
-                    combinations.remove(i--);
+        //Include this row in the solution, recording on the trails exactly the rows and columns this
+        //choice deleted, so reverting it cannot undelete rows removed by earlier choices still in place
+        public void chooseRow(Row row) {
+            for (Column column : row.columns) {
+                if (!column.deleted) {
+                    for (Row delRow : column.rows) {
+                        if (!delRow.deleted)
+                            deleteRow(delRow);
+                    }
+                    column.deleted = true;
+                    column_trail[column_trail_size++] = column;
                 }
             }
-            return combinations;
         }
 
-        //Get all possible length-num_cells combinations of the valid symbols
-        public ArrayList<int[]> getCombinations(ArrayList<int[]> combinations, int[] valid_symbols, int num_cells, int[] current_combination, int start, int end, int current_index) {
-            current_combination = current_combination.clone();
-            if (current_index == num_cells)
-            {
-                combinations.add(current_combination);
-                return combinations;
+        //Undo every choice made since the trails had these sizes
+        public void revert(int row_mark, int column_mark) {
+            while (row_trail_size > row_mark) {
+                Row row = row_trail[--row_trail_size];
+                row.deleted = false;
+                for (Column column : row.columns)
+                    column.live++;
             }
-
-            for (int i = start; i <= end && end - i + 1 >= num_cells - current_index; i++)
-            {
-                current_combination[current_index] = valid_symbols[i];
-                combinations = getCombinations(combinations, valid_symbols, num_cells, current_combination,  i+1, end, current_index+1);
-            }
-            return combinations;
+            while (column_trail_size > column_mark)
+                column_trail[--column_trail_size].deleted = false;
         }
 
 
-        public Column getLeastColumn() {
-            Column leastColumn = null;
-            int leastVal = grid_dim * grid_dim * grid_dim;
+    }
 
-            for (int i = 0; i < grid_dim; i++) {
-                for (int j = 0; j < grid_dim; j++) {
-                    if (!columns.row_col[i][j].deleted && columns.row_col[i][j].size() < leastVal) {
-                        leastColumn = columns.row_col[i][j];
-                        leastVal = leastColumn.size();
-                    }
-                    if (!columns.row_val[i][j].deleted && columns.row_val[i][j].size() < leastVal) {
-                        leastColumn = columns.row_val[i][j];
-                        leastVal = leastColumn.size();
-                    }
-                    if (!columns.col_val[i][j].deleted && columns.col_val[i][j].size() < leastVal) {
-                        leastColumn = columns.col_val[i][j];
-                        leastVal = leastColumn.size();
-                    }
-                    if (!columns.box_val[i][j].deleted && columns.box_val[i][j].size() < leastVal) {
-                        leastColumn = columns.box_val[i][j];
-                        leastVal = leastColumn.size();
-                    }
-                    if (i < num_cages) {
-                        if (!columns.cage_total[i].deleted && columns.cage_total[i].size() < leastVal) {
-                            leastColumn = columns.cage_total[i];
-                            leastVal = leastColumn.size();
-                        }
-                    }
-                }
-            }
 
-            for (int i = grid_dim; i < num_cages; i++) {
-                if (!columns.cage_total[i].deleted && columns.cage_total[i].size() < leastVal) {
-                    leastColumn = columns.cage_total[i];
-                    leastVal = leastColumn.size();
+    /**
+     * Orderings of symbol indexes over each cage's cells, one per row of the
+     * matrix, worked out before any of the matrix is allocated.
+     *
+     * Each cell may take its given symbol, or any symbol not given in its row,
+     * column or box.  A cage's symbol sets are enumerated in increasing order,
+     * skipping any whose smallest or largest reachable sum misses the total,
+     * and each set is only ordered over the cells that allow its symbols.  Every
+     * cell then keeps only the symbols some ordering of its cage gives it, and
+     * symbols every ordering of a cage uses are taken out of the other cells of
+     * any row, column or box holding the whole cage; cages whose cells lost a
+     * symbol are worked out again, until none did.
+     *
+     * @return Orderings of each cage, in the order of the cage's cells; null if
+     *          the grid cannot be solved (some cage has no ordering, or cages
+     *          covering every cell do not add up to the grid's total), or if
+     *          solver (if any) was cancelled.
+     */
+    static ArrayList<ArrayList<int[]>> cageOrderings(KillerSudokuGrid grid, SudokuSolver solver) {
+        int[][] g = grid.getGrid();
+        int grid_dim = g.length;
+        int[] symbols = grid.getValidSymbols();
+        ArrayList<KillerSudokuGrid.Cage> cages = grid.getCages();
+        int box_height = SudokuGrid.boxHeight(grid_dim);
+        int box_width = grid_dim / box_height;
+
+        //Cages covering every cell once add up to every symbol once per row
+        int covered = 0;
+        long cage_sum = 0;
+        for (KillerSudokuGrid.Cage cage : cages) {
+            covered += cage.cells.size();
+            cage_sum += cage.total;
+        }
+        boolean every_cell = covered == grid_dim * grid_dim;
+        for (int r = 0; r < grid_dim && every_cell; r++) {
+            for (int c = 0; c < grid_dim; c++)
+                every_cell &= grid.getCage(r, c) != null;
+        }
+        long symbol_sum = 0;
+        for (int symbol : symbols)
+            symbol_sum += symbol;
+        if (every_cell && cage_sum != grid_dim * symbol_sum)
+            return null;
+
+        //Symbols each cell allows: its given, or those not given in its row, column and box
+        boolean[][] allowed = new boolean[grid_dim * grid_dim][grid_dim];
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                if (g[r][c] == -1)
+                    Arrays.fill(allowed[r * grid_dim + c], true);
+                else
+                    allowed[r * grid_dim + c][grid.symbolIndex(g[r][c])] = true;
+            }
+        }
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                if (g[r][c] == -1)
+                    continue;
+                int v = grid.symbolIndex(g[r][c]);
+                for (int cell : unitCells(r, c, grid_dim, box_height, box_width)) {
+                    if (cell != r * grid_dim + c)
+                        allowed[cell][v] = false;
                 }
             }
-
-            return leastColumn;
         }
 
-        //Include this row in the solution
-        public void chooseRow(Row row, boolean delete) {
-
-            for (Placement p : row.placements) {
+        //Cage of each cell, -1 if none
+        int[] cage_of = new int[grid_dim * grid_dim];
+        Arrays.fill(cage_of, -1);
+        for (int i = 0; i < cages.size(); i++) {
+            for (KillerSudokuGrid.Cell cell : cages.get(i).cells)
+                cage_of[cell.row * grid_dim + cell.col] = i;
+        }
 
-                //For each column that this row satisfies, delete all rows that also satisfy this column, then delete column
-                for (Row delRow : columns.row_col[p.r][p.c].rows) {
-                    delRow.deleted = delete;
+        //Work out every cage, then again each cage some of whose cells lost a symbol since
+        ArrayList<ArrayList<int[]>> orderings = new ArrayList<>();
+        boolean[] dirty = new boolean[cages.size()];
+        for (int i = 0; i < cages.size(); i++) {
+            orderings.add(null);
+            dirty[i] = true;
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int cage_index = 0; cage_index < cages.size(); cage_index++) {
+                if (!dirty[cage_index])
+                    continue;
+                dirty[cage_index] = false;
+                KillerSudokuGrid.Cage cage = cages.get(cage_index);
+                int size = cage.cells.size();
+                int[] cells = new int[size];
+                for (int i = 0; i < size; i++)
+                    cells[i] = cage.cells.get(i).row * grid_dim + cage.cells.get(i).col;
+
+                ArrayList<int[]> cage_orderings = orderings(cells, cage.total, symbols, allowed, solver);
+                if (cage_orderings.isEmpty() || (solver != null && solver.isCancelled()))
+                    return null;
+                orderings.set(cage_index, cage_orderings);
+
+                //Symbols the orderings give each cell, and how many orderings use each symbol
+                boolean[][] given = new boolean[size][grid_dim];
+                int[] uses = new int[grid_dim];
+                for (int[] ordering : cage_orderings) {
+                    for (int i = 0; i < size; i++) {
+                        given[i][ordering[i]] = true;
+                        uses[ordering[i]]++;
+                    }
                 }
-                columns.row_col[p.r][p.c].deleted = delete;
-
-                for (Row delRow : columns.row_val[p.r][p.v].rows) {
-                    delRow.deleted = delete;
+                for (int i = 0; i < size; i++) {
+                    for (int v = 0; v < grid_dim; v++) {
+                        if (allowed[cells[i]][v] && !given[i][v])
+                            allowed[cells[i]][v] = false;
+                    }
                 }
-                columns.row_val[p.r][p.v].deleted = delete;
 
-                for (Row delRow : columns.col_val[p.c][p.v].rows) {
-                    delRow.deleted = delete;
+                //Symbols of every ordering are in the cage, so not elsewhere in a unit holding it
+                for (int[] unit : enclosingUnits(cells, grid_dim, box_height, box_width)) {
+                    for (int cell : unit) {
+                        if (cage_of[cell] == cage_index)
+                            continue;
+                        for (int v = 0; v < grid_dim; v++) {
+                            if (uses[v] == cage_orderings.size() && allowed[cell][v]) {
+                                allowed[cell][v] = false;
+                                if (cage_of[cell] != -1) {
+                                    dirty[cage_of[cell]] = true;
+                                    changed = true;
+                                }
+                            }
+                        }
+                    }
                 }
-                columns.col_val[p.c][p.v].deleted = delete;
-
+            }
+        }
+        return orderings;
+    }
 
-                int box_size = (int) Math.sqrt(grid_dim);
-                int boxCornerR = p.r - p.r % box_size;
-                int boxCornerC = p.c - p.c % box_size;
-                int box_num = (boxCornerR * box_size + boxCornerC) / box_size;
 
-                for (Row delRow : columns.box_val[box_num][p.v].rows) {
-                    delRow.deleted = delete;
+    //Orderings of distinct symbol indexes over the cells, allowed in each, adding to total
+    private static ArrayList<int[]> orderings(int[] cells, int total, int[] symbols,
+        boolean[][] allowed, SudokuSolver solver)
+    {
+        //Symbols some cell allows, by increasing value, with prefix sums of their values
+        int size = cells.length;
+        ArrayList<Integer> usable = new ArrayList<>();
+        for (int v = 0; v < symbols.length; v++) {
+            for (int cell : cells) {
+                if (allowed[cell][v]) {
+                    usable.add(v);
+                    break;
                 }
-                columns.box_val[box_num][p.v].deleted = delete;
-
             }
+        }
+        usable.sort((a, b) -> Integer.compare(symbols[a], symbols[b]));
+        int[] indexes = new int[usable.size()];
+        long[] prefix = new long[indexes.length + 1];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = usable.get(i);
+            prefix[i + 1] = prefix[i] + symbols[indexes[i]];
+        }
 
-            int cage_index = grid.getCages().indexOf(row.cage);
-            for (Row delRow : columns.cage_total[cage_index].rows) {
-                delRow.deleted = delete;
-            }
-            columns.cage_total[cage_index].deleted = delete;
+        ArrayList<int[]> orderings = new ArrayList<>();
+        if (size > indexes.length)
+            return orderings;
+        chooseSet(cells, total, symbols, allowed, solver, indexes, prefix, new int[size], 0, 0, 0, orderings);
+        return orderings;
+    }
 
-            row.deleted = delete;
+    //Extend set[0..count) with symbols from position start on, keeping the total reachable
+    private static void chooseSet(int[] cells, long total, int[] symbols, boolean[][] allowed, SudokuSolver solver,
+        int[] indexes, long[] prefix, int[] set, int count, int start, long sum, ArrayList<int[]> orderings)
+    {
+        int need = set.length - count;
+        if (need == 0) {
+            if (sum == total)
+                order(cells, allowed, set, new boolean[set.length], new int[set.length], 0, orderings);
+            return;
+        }
+        if (solver != null && solver.isCancelled())
+            return;
+        int m = indexes.length;
+        for (int i = start; i <= m - need; i++) {
+            //Smallest sum using this symbol, larger for every later one
+            if (sum + prefix[i + need] - prefix[i] > total)
+                break;
+            //Largest sum using this symbol
+            if (sum + symbols[indexes[i]] + prefix[m] - prefix[m - need + 1] < total)
+                continue;
+            set[count] = indexes[i];
+            chooseSet(cells, total, symbols, allowed, solver, indexes, prefix, set, count + 1, i + 1,
+                sum + symbols[indexes[i]], orderings);
+        }
+    }
 
+    //Give cells[i..] the unused symbols of set they allow, adding every complete ordering
+    private static void order(int[] cells, boolean[][] allowed, int[] set, boolean[] used, int[] ordering,
+        int i, ArrayList<int[]> orderings)
+    {
+        if (i == cells.length) {
+            orderings.add(ordering.clone());
+            return;
+        }
+        for (int j = 0; j < set.length; j++) {
+            if (!used[j] && allowed[cells[i]][set[j]]) {
+                used[j] = true;
+                ordering[i] = set[j];
+                order(cells, allowed, set, used, ordering, i + 1, orderings);
+                used[j] = false;
+            }
         }
+    }
 
 
+    //Cells of the row, column and box of (r, c), numbered r * grid_dim + c; cells may repeat
+    private static int[] unitCells(int r, int c, int grid_dim, int box_height, int box_width) {
+        int[] cells = new int[3 * grid_dim];
+        int corner_r = r - r % box_height;
+        int corner_c = c - c % box_width;
+        for (int i = 0; i < grid_dim; i++) {
+            cells[i] = r * grid_dim + i;
+            cells[grid_dim + i] = i * grid_dim + c;
+            cells[2 * grid_dim + i] = (corner_r + i / box_width) * grid_dim + corner_c + i % box_width;
+        }
+        return cells;
     }
 
+    //Cells of each row, column and box that holds all of these cells
+    private static ArrayList<int[]> enclosingUnits(int[] cells, int grid_dim, int box_height, int box_width) {
+        int r = cells[0] / grid_dim;
+        int c = cells[0] % grid_dim;
+        boolean same_row = true;
+        boolean same_col = true;
+        boolean same_box = true;
+        for (int cell : cells) {
+            same_row &= cell / grid_dim == r;
+            same_col &= cell % grid_dim == c;
+            same_box &= SudokuGrid.boxOf(cell / grid_dim, cell % grid_dim, box_height, box_width)
+                == SudokuGrid.boxOf(r, c, box_height, box_width);
+        }
+        int[] unit_cells = unitCells(r, c, grid_dim, box_height, box_width);
+        ArrayList<int[]> units = new ArrayList<>();
+        if (same_row)
+            units.add(Arrays.copyOfRange(unit_cells, 0, grid_dim));
+        if (same_col)
+            units.add(Arrays.copyOfRange(unit_cells, grid_dim, 2 * grid_dim));
+        if (same_box)
+            units.add(Arrays.copyOfRange(unit_cells, 2 * grid_dim, 3 * grid_dim));
+        return units;
+    }
+
+    //Hash of the grid being solved (see DeadStates), kept only if the solver has a table
+    private long hash;
+    //Cages chosen by the search so far and the cells they fill, for the progress of a solve
+    private int depth;
+    private int filled;
 
     public KillerAdvancedSolver() {
     } // end of KillerAdvancedSolver()
 
+
+    //Key of the row's placements in the dead state hash, 0 if the solver has no table.  Given cells are
+    //left out, as start() hashed them already and the hash is of the cells filled
+    private long rowKey(Row row, Matrix matrix) {
+        if (deadStates == null)
+            return 0;
+        long key = 0;
+        for (Placement p : row.placements) {
+            int cell = p.r * matrix.grid_dim + p.c;
+            if (!matrix.given[cell])
+                key ^= deadStates.key(cell, p.v);
+        }
+        return key;
+    }
+
     public boolean solve(int[][] g, Matrix matrix) {
 
+        //Give up if cancelled from another thread
+        if (isCancelled())
+            return false;
+        if (progress != null)
+            progress.node(depth, filled);
+
         Column leastColumn = matrix.getLeastColumn();
 
         //No more columns, grid is complete
         if (leastColumn == null)
             return true;
 
+        //Give up at once on a grid known to have no solution
+        if (deadStates != null && deadStates.isDead(hash))
+            return false;
+        int tried = 0;
+
         //Choose a row in the least column
         for (Row row : leastColumn.rows) {
             if (!row.deleted) {
+                if (progress != null)
+                    progress.branch(depth, tried++, leastColumn.live);
 
                 //Apply the placements of this row and recurse
                 for (Placement p : row.placements) {
                     g[p.r][p.c] = p.v;
                 }
-                matrix.chooseRow(row,true);
-
-                if (solve(g, matrix))
+                int row_mark = matrix.row_trail_size;
+                int column_mark = matrix.column_trail_size;
+                matrix.chooseRow(row);
+                long key = rowKey(row, matrix);
+                hash ^= key;
+
+                depth++;
+                filled += row.placements.size();
+                boolean solved = solve(g, matrix);
+                depth--;
+                filled -= row.placements.size();
+                if (solved)
                     return true;
                 else {
 
-                    //This branch failed, undo placements and undelete rows and columns
+                    //This branch failed, undo placements and the rows and columns this choice deleted
                     for (Placement p : row.placements) {
                         g[p.r][p.c] = -1;
                     }
-                    matrix.chooseRow(row, false);
+                    matrix.revert(row_mark, column_mark);
+                    hash ^= key;
                 }
 
             }
         }
 
+        //No row worked, remember this grid has no solution
+        if (deadStates != null && !isCancelled())
+            deadStates.addDead(hash);
+        return false;
+    }
+
+    //Recursive counter, stops once limit solutions have been found
+    private int countSolutions(Matrix matrix, int limit) {
+
+        //No more columns, this branch is one complete solution
+        Column leastColumn = matrix.getLeastColumn();
+        if (leastColumn == null)
+            return 1;
+
+        //A grid known to have no solution
+        if (deadStates != null && deadStates.isDead(hash))
+            return 0;
+
+        int count = 0;
+        for (Row row : leastColumn.rows) {
+            if (!row.deleted) {
+
+                //Count the solutions below this row, then revert it
+                int row_mark = matrix.row_trail_size;
+                int column_mark = matrix.column_trail_size;
+                matrix.chooseRow(row);
+                long key = rowKey(row, matrix);
+                hash ^= key;
+                count += countSolutions(matrix, limit - count);
+                hash ^= key;
+                matrix.revert(row_mark, column_mark);
+
+                if (count >= limit)
+                    break;
+            }
+        }
+
+        //Every row was counted out, none leads to a solution
+        if (count == 0 && deadStates != null)
+            deadStates.addDead(hash);
+        return count;
+    }
+
+    //Recursive search that only accepts a complete grid once some placement differs from known (symbol indexes)
+    private boolean findOtherSolution(int[][] g, int[][] known, Matrix matrix, boolean differs) {
+
+        //No more columns, accept the grid if it is not the known solution
+        Column leastColumn = matrix.getLeastColumn();
+        if (leastColumn == null)
+            return differs;
+
+        for (Row row : leastColumn.rows) {
+            if (!row.deleted) {
+
+                boolean rowDiffers = differs;
+                for (Placement p : row.placements) {
+                    g[p.r][p.c] = p.v;
+                    rowDiffers |= p.v != known[p.r][p.c];
+                }
+                int row_mark = matrix.row_trail_size;
+                int column_mark = matrix.column_trail_size;
+                matrix.chooseRow(row);
+
+                if (findOtherSolution(g, known, matrix, rowDiffers))
+                    return true;
+
+                for (Placement p : row.placements) {
+                    g[p.r][p.c] = -1;
+                }
+                matrix.revert(row_mark, column_mark);
+            }
+        }
+
         return false;
     }
 
@@ -341,23 +648,73 @@ public class KillerAdvancedSolver extends KillerSudokuSolver
         KillerSudokuGrid killer_grid = (KillerSudokuGrid) grid;
         int[][] g = killer_grid.getGrid();
 
-        //Make matrix from grid
-        Matrix matrix = new Matrix(killer_grid);
-
-        boolean result = solve(g, matrix);
-        if (!result) {
-            System.out.println("Initial Values Error");
-        }
-        else {
-            for (int i = 0; i < g.length; i++) {
-                for (int j = 0; j < g.length; j++) {
-                    //Reset grid values from their indexes to their proper symbols
-                    g[i][j] = killer_grid.getValidSymbols()[g[i][j]];
-                }
+        //Make matrix from grid, unless some cage cannot be filled
+        if (deadStates != null)
+            hash = deadStates.start(killer_grid);
+        depth = 0;
+        filled = 0;
+        if (progress != null)
+            progress.start(killer_grid);
+        ArrayList<ArrayList<int[]>> orderings = cageOrderings(killer_grid, this);
+
+        //Search on a copy holding symbol indexes, so an unsolved grid keeps its givens as they were
+        int[][] indexes = new int[g.length][g.length];
+        for (int[] line : indexes)
+            Arrays.fill(line, -1);
+        boolean result = orderings != null && solve(indexes, new Matrix(killer_grid, orderings));
+        if (progress != null)
+            progress.finish();
+        if (!result)
+            return false;
+
+        //Set grid values from their indexes to their proper symbols
+        for (int i = 0; i < g.length; i++) {
+            for (int j = 0; j < g.length; j++) {
+                g[i][j] = killer_grid.getValidSymbols()[indexes[i][j]];
             }
         }
 
-        return result;
+        return true;
     } // end of solve()
 
+
+    @Override
+    public int countSolutions(SudokuGrid grid, int limit) {
+        KillerSudokuGrid killer_grid = (KillerSudokuGrid)grid;
+        if (deadStates != null)
+            hash = deadStates.start(killer_grid);
+        ArrayList<ArrayList<int[]>> orderings = cageOrderings(killer_grid, null);
+        if (orderings == null)
+            return 0;
+        return countSolutions(new Matrix(killer_grid, orderings), limit);
+    } // end of countSolutions()
+
+
+    @Override
+    public boolean findOtherSolution(SudokuGrid grid, int[][] known) {
+        KillerSudokuGrid killer_grid = (KillerSudokuGrid) grid;
+        int[][] g = killer_grid.getGrid();
+
+        //Search on a copy holding symbol indexes, so grid is only changed if another solution is found
+        int[][] indexes = new int[g.length][g.length];
+        int[][] known_indexes = new int[g.length][g.length];
+        for (int i = 0; i < g.length; i++) {
+            for (int j = 0; j < g.length; j++) {
+                indexes[i][j] = -1;
+                known_indexes[i][j] = killer_grid.symbolIndex(known[i][j]);
+            }
+        }
+
+        ArrayList<ArrayList<int[]>> orderings = cageOrderings(killer_grid, null);
+        if (orderings == null || !findOtherSolution(indexes, known_indexes, new Matrix(killer_grid, orderings), false))
+            return false;
+
+        for (int i = 0; i < g.length; i++) {
+            for (int j = 0; j < g.length; j++) {
+                g[i][j] = killer_grid.getValidSymbols()[indexes[i][j]];
+            }
+        }
+        return true;
+    } // end of findOtherSolution()
+
 } // end of class KillerAdvancedSolver
@@ -4,7 +4,6 @@
 
 package solver;
 
-import java.util.ArrayList;
 
 import grid.KillerSudokuGrid;
 import grid.SudokuGrid;
@@ -15,6 +14,12 @@ import grid.SudokuGrid;
  */
 public class KillerBackTrackingSolver extends KillerSudokuSolver
 {
+    //Hash of the grid being solved (see DeadStates), kept only if the solver has a table
+    private long hash;
+    //Cells filled by the search so far, and given, for the progress of a solve
+    private int depth;
+    private int givens;
+
     public KillerBackTrackingSolver() {
     } // end of KillerBackTrackingSolver()
 
@@ -31,29 +36,34 @@ public class KillerBackTrackingSolver extends KillerSudokuSolver
         }
 
         //Check box for this value
-        int box_size = (int)Math.sqrt(g.length);
-        int boxCornerR = r - r % box_size;
-        int boxCornerC = c - c % box_size;
+        int box_height = SudokuGrid.boxHeight(g.length);
+        int box_width = g.length / box_height;
+        int boxCornerR = r - r % box_height;
+        int boxCornerC = c - c % box_width;
 
-        for (int i = 0; i < box_size; i++) {
-            for (int j = 0; j < box_size; j++) {
+        for (int i = 0; i < box_height; i++) {
+            for (int j = 0; j < box_width; j++) {
                 if (g[boxCornerR + i][boxCornerC + j] == v)
                     return false;
             }
         }
 
         //Check cage
-        KillerSudokuGrid.Cage cage = grid.getCellToCageMap().get(KillerSudokuGrid.getCellKey(r, c));
-        ArrayList<Integer> symbols_in_cage = new ArrayList<>();
+        KillerSudokuGrid.Cage cage = grid.getCage(r, c);
         if (cage != null) {
             int total = 0;
+            int filled = 0;
             for (KillerSudokuGrid.Cell cell : cage.cells) {
-                if (g[cell.row][cell.col] != -1) {
-                    total += g[cell.row][cell.col];
-                    symbols_in_cage.add(g[cell.row][cell.col]);
+                int value = g[cell.row][cell.col];
+                if (value != -1) {
+                    //Symbols in a cage must be distinct
+                    if (value == v)
+                        return false;
+                    total += value;
+                    filled++;
                 }
             }
-            if (symbols_in_cage.size() == cage.cells.size() - 1)
+            if (filled == cage.cells.size() - 1)
                 return total + v == cage.total;
             else
                 return total + v < cage.total;
@@ -67,7 +77,29 @@ public class KillerBackTrackingSolver extends KillerSudokuSolver
     @Override
     public boolean solve(SudokuGrid grid) {
         KillerSudokuGrid killer_grid = (KillerSudokuGrid)grid;
-        int[][] g = killer_grid.getGrid();
+        if (deadStates != null)
+            hash = deadStates.start(killer_grid);
+        depth = 0;
+        if (progress != null)
+            givens = progress.start(killer_grid);
+        boolean result = solve(killer_grid, killer_grid.getGrid());
+        if (progress != null)
+            progress.finish();
+        return result;
+    } // end of solve()
+
+
+    //Recursive solver, filling the first empty spot in turn
+    private boolean solve(KillerSudokuGrid killer_grid, int[][] g) {
+
+        //Give up if cancelled from another thread
+        if (isCancelled())
+            return false;
+        //or at once on a grid known to have no solution
+        if (deadStates != null && deadStates.isDead(hash))
+            return false;
+        if (progress != null)
+            progress.node(depth, givens + depth);
 
         //Try to find an empty spot in the grid
         int row = -1;
@@ -99,15 +131,89 @@ public class KillerBackTrackingSolver extends KillerSudokuSolver
             //If symbol is allowed here, place it and recurse
             if (canPlace(killer_grid, row, col, symbol)) {
                 g[row][col] = symbol;
-                if (solve(grid))
+                if (deadStates != null)
+                    hash ^= deadStates.key(row * g.length + col, i);
+                if (progress != null)
+                    progress.branch(depth, i, g.length);
+                depth++;
+                boolean solved = solve(killer_grid, g);
+                depth--;
+                if (solved)
                     return true;
                 else
                     //Otherwise, revert change and move on to next symbol
                     g[row][col] = -1;
+                if (deadStates != null)
+                    hash ^= deadStates.key(row * g.length + col, i);
             }
         }
 
-        //No symbol in this branch resulted in a proper grid, return false
+        //No symbol in this branch resulted in a proper grid, remember so and return false
+        if (deadStates != null && !isCancelled())
+            deadStates.addDead(hash);
         return false;
-    } // end of solve()
+    }
+
+
+    @Override
+    public int countSolutions(SudokuGrid grid, int limit) {
+        KillerSudokuGrid killer_grid = (KillerSudokuGrid)grid;
+        int[][] g = killer_grid.getGrid();
+
+        //Find the first empty spot
+        for (int row = 0; row < g.length; row++) {
+            for (int col = 0; col < g.length; col++) {
+                if (g[row][col] == -1) {
+
+                    //Count the solutions below each symbol allowed here, reverting each placement
+                    int count = 0;
+                    int[] valid_symbols = killer_grid.getValidSymbols();
+                    for (int i = 0; i < g.length && count < limit; i++) {
+                        if (canPlace(killer_grid, row, col, valid_symbols[i])) {
+                            g[row][col] = valid_symbols[i];
+                            count += countSolutions(grid, limit - count);
+                            g[row][col] = -1;
+                        }
+                    }
+                    return count;
+                }
+            }
+        }
+
+        //No empty spots, this is one complete solution
+        return 1;
+    } // end of countSolutions()
+
+
+    @Override
+    public boolean findOtherSolution(SudokuGrid grid, int[][] known) {
+        return findOtherSolution((KillerSudokuGrid)grid, known, false);
+    } // end of findOtherSolution()
+
+
+    //Recursive search that only accepts a complete grid once some cell differs from known
+    private boolean findOtherSolution(KillerSudokuGrid killer_grid, int[][] known, boolean differs) {
+        int[][] g = killer_grid.getGrid();
+
+        for (int row = 0; row < g.length; row++) {
+            for (int col = 0; col < g.length; col++) {
+                if (g[row][col] == -1) {
+
+                    int[] valid_symbols = killer_grid.getValidSymbols();
+                    for (int i = 0; i < g.length; i++) {
+                        if (canPlace(killer_grid, row, col, valid_symbols[i])) {
+                            g[row][col] = valid_symbols[i];
+                            if (findOtherSolution(killer_grid, known, differs || valid_symbols[i] != known[row][col]))
+                                return true;
+                            g[row][col] = -1;
+                        }
+                    }
+                    return false;
+                }
+            }
+        }
+
+        //Complete grid, accept it if it is not the known solution
+        return differs;
+    }
 } // end of class KillerBackTrackingSolver()
@@ -0,0 +1,556 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package solver;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import grid.StdSudokuGrid;
+import grid.SudokuGrid;
+
+
+/**
+ * Solver for standard Sudoku that only uses human-style techniques, and grades
+ * the puzzle by which techniques it needed.
+ *
+ * Every cell keeps a long bitmask of its candidate symbol indexes, so the
+ * techniques apply to grids of up to 64 symbols; larger grids, and the grids of
+ * variants, are guessed whole.  Techniques are tried in escalating order;
+ * whenever one makes progress the solver starts again from the simplest, so
+ * each technique is only counted when nothing simpler works.  If no technique
+ * makes progress the rest of the grid is guessed (completed by
+ * DancingLinksSolver), which is counted as one GUESS.
+ *
+ * The rating is the weight of the hardest technique needed plus a hundredth of
+ * the summed weight of every technique use, so harder puzzles rate higher and,
+ * among puzzles needing the same technique, those needing it more often rate
+ * higher.
+ */
+public class LogicalSolver extends StdSudokuSolver
+{
+    //Techniques in the order they are tried, with their weight in the rating
+    public enum Technique {
+        HIDDEN_SINGLE(1.0),
+        NAKED_SINGLE(1.5),
+        INTERSECTION(2.5),
+        NAKED_PAIR(3.0),
+        HIDDEN_PAIR(3.5),
+        NAKED_TRIPLE(4.0),
+        HIDDEN_TRIPLE(4.5),
+        X_WING(5.0),
+        GUESS(10.0);
+
+        public final double weight;
+
+        Technique(double weight) {
+            this.weight = weight;
+        }
+    }
+
+    //Geometry, rebuilt only when the grid dimension changes
+    private int grid_dim = -1;
+    private int box_height;
+    private int box_width;
+    private int[][] units;          //cells of each row, then column, then box
+    private int[][] peers;          //cells sharing a unit with each cell
+    private int[][] cellUnits;      //row, column and box unit of each cell
+
+    //Search state, reused between grids of the same dimension
+    private int[] values;           //symbol index of each cell, -1 if empty
+    private long[] candidates;      //bitmask of symbol indexes each empty cell may take
+    private int[] counts = new int[Technique.values().length];
+    private boolean contradiction;
+    //Completes grids the techniques cannot, kept so its matrix is reused; volatile for cancel()
+    private volatile DancingLinksSolver guesser;
+
+    public LogicalSolver() {
+    } // end of LogicalSolver()
+
+
+    //Number of times a technique was needed in the last solve
+    public int getCount(Technique technique) {
+        return counts[technique.ordinal()];
+    }
+
+    //Rating of the last solved grid
+    public double getRating() {
+        double hardest = 0;
+        double total = 0;
+        for (Technique technique : Technique.values()) {
+            if (counts[technique.ordinal()] > 0) {
+                hardest = technique.weight;
+                total += technique.weight * counts[technique.ordinal()];
+            }
+        }
+        return hardest + total / 100;
+    }
+
+    //Technique counts and rating of the last solve, for display
+    public String report() {
+        StringBuilder outStr = new StringBuilder();
+        for (Technique technique : Technique.values()) {
+            if (counts[technique.ordinal()] > 0)
+                outStr.append(technique).append(" x").append(counts[technique.ordinal()]).append('\n');
+        }
+        outStr.append("rating = ").append(String.format("%.2f", getRating()));
+        return outStr.toString();
+    }
+
+
+    //Build units, peers and state arrays for this dimension
+    private void initGeometry(int dim) {
+        grid_dim = dim;
+        box_height = SudokuGrid.boxHeight(dim);
+        box_width = dim / box_height;
+        units = new int[dim * 3][dim];
+        cellUnits = new int[dim * dim][3];
+        for (int r = 0; r < dim; r++) {
+            for (int c = 0; c < dim; c++) {
+                int cell = r * dim + c;
+                int box = SudokuGrid.boxOf(r, c, box_height, box_width);
+                int boxIndex = (r % box_height) * box_width + c % box_width;
+                units[r][c] = cell;
+                units[dim + c][r] = cell;
+                units[dim * 2 + box][boxIndex] = cell;
+                cellUnits[cell][0] = r;
+                cellUnits[cell][1] = dim + c;
+                cellUnits[cell][2] = dim * 2 + box;
+            }
+        }
+
+        peers = new int[dim * dim][];
+        boolean[] isPeer = new boolean[dim * dim];
+        for (int cell = 0; cell < dim * dim; cell++) {
+            int num_peers = 0;
+            for (int unit : cellUnits[cell]) {
+                for (int other : units[unit]) {
+                    if (other != cell && !isPeer[other]) {
+                        isPeer[other] = true;
+                        num_peers++;
+                    }
+                }
+            }
+            peers[cell] = new int[num_peers];
+            int i = 0;
+            for (int other = 0; other < dim * dim; other++) {
+                if (isPeer[other]) {
+                    peers[cell][i++] = other;
+                    isPeer[other] = false;
+                }
+            }
+        }
+
+        values = new int[dim * dim];
+        candidates = new long[dim * dim];
+    }
+
+
+    //Place symbol index v in cell and remove it from the candidates of its peers
+    private void place(int cell, int v) {
+        values[cell] = v;
+        candidates[cell] = 0;
+        long bit = 1L << v;
+        for (int peer : peers[cell]) {
+            candidates[peer] &= ~bit;
+            if (values[peer] == -1 && candidates[peer] == 0)
+                contradiction = true;
+        }
+    }
+
+    //Remove candidates from a cell, true if any were there
+    private boolean eliminate(int cell, long bits) {
+        if ((candidates[cell] & bits) == 0)
+            return false;
+        candidates[cell] &= ~bits;
+        if (candidates[cell] == 0)
+            contradiction = true;
+        return true;
+    }
+
+
+    //A symbol with one possible cell in a unit goes there
+    private boolean hiddenSingles() {
+        boolean progress = false;
+        for (int[] unit : units) {
+            long once = 0;
+            long twice = 0;
+            for (int cell : unit) {
+                twice |= once & candidates[cell];
+                once |= candidates[cell];
+            }
+            long single = once & ~twice;
+            while (single != 0) {
+                int v = Long.numberOfTrailingZeros(single);
+                single &= single - 1;
+                for (int cell : unit) {
+                    if ((candidates[cell] & (1L << v)) != 0) {
+                        place(cell, v);
+                        counts[Technique.HIDDEN_SINGLE.ordinal()]++;
+                        progress = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return progress;
+    }
+
+    //A cell with one candidate takes it
+    private boolean nakedSingles() {
+        boolean progress = false;
+        for (int cell = 0; cell < candidates.length; cell++) {
+            if (values[cell] == -1 && Long.bitCount(candidates[cell]) == 1) {
+                place(cell, Long.numberOfTrailingZeros(candidates[cell]));
+                counts[Technique.NAKED_SINGLE.ordinal()]++;
+                progress = true;
+            }
+        }
+        return progress;
+    }
+
+    //If a symbol's cells in one unit all lie in another unit, remove it from the rest of that other unit
+    private boolean intersections() {
+        boolean progress = false;
+        for (int u = 0; u < units.length; u++) {
+            for (int v = 0; v < grid_dim; v++) {
+                long bit = 1L << v;
+
+                //Find the other unit of each type shared by all cells with this candidate
+                int sharedRow = -2;
+                int sharedCol = -2;
+                int sharedBox = -2;
+                for (int cell : units[u]) {
+                    if ((candidates[cell] & bit) != 0) {
+                        sharedRow = sharedRow == -2 || sharedRow == cellUnits[cell][0] ? cellUnits[cell][0] : -1;
+                        sharedCol = sharedCol == -2 || sharedCol == cellUnits[cell][1] ? cellUnits[cell][1] : -1;
+                        sharedBox = sharedBox == -2 || sharedBox == cellUnits[cell][2] ? cellUnits[cell][2] : -1;
+                    }
+                }
+
+                for (int shared : new int[] {sharedRow, sharedCol, sharedBox}) {
+                    if (shared < 0 || shared == u)
+                        continue;
+                    boolean eliminated = false;
+                    for (int cell : units[shared]) {
+                        if (cellUnits[cell][0] != u && cellUnits[cell][1] != u && cellUnits[cell][2] != u)
+                            eliminated |= eliminate(cell, bit);
+                    }
+                    if (eliminated) {
+                        counts[Technique.INTERSECTION.ordinal()]++;
+                        progress = true;
+                    }
+                }
+            }
+        }
+        return progress;
+    }
+
+    //k cells of a unit whose candidates together are k symbols: remove those symbols from the rest of the unit
+    private boolean nakedSubsets(int k, Technique technique) {
+        boolean progress = false;
+        for (int[] unit : units) {
+            if (nakedSubsets(unit, k, 0, 0, 0, 0)) {
+                counts[technique.ordinal()]++;
+                progress = true;
+            }
+        }
+        return progress;
+    }
+
+    private boolean nakedSubsets(int[] unit, int k, int start, int chosen, long chosenCells, long union) {
+        if (Long.bitCount(union) > k)
+            return false;
+        if (chosen == k) {
+            boolean eliminated = false;
+            for (int i = 0; i < unit.length; i++) {
+                if ((chosenCells & (1L << i)) == 0 && values[unit[i]] == -1)
+                    eliminated |= eliminate(unit[i], union);
+            }
+            return eliminated;
+        }
+        for (int i = start; i < unit.length; i++) {
+            int count = Long.bitCount(candidates[unit[i]]);
+            if (values[unit[i]] == -1 && count >= 2 && count <= k) {
+                if (nakedSubsets(unit, k, i + 1, chosen + 1, chosenCells | (1L << i), union | candidates[unit[i]]))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    //k symbols that can only go in the same k cells of a unit: remove other candidates from those cells
+    private boolean hiddenSubsets(int k, Technique technique) {
+        boolean progress = false;
+        long[] positions = new long[grid_dim];
+        for (int[] unit : units) {
+            //Cells (as unit positions) each symbol can go in
+            for (int v = 0; v < grid_dim; v++) {
+                positions[v] = 0;
+                for (int i = 0; i < unit.length; i++) {
+                    if ((candidates[unit[i]] & (1L << v)) != 0)
+                        positions[v] |= 1L << i;
+                }
+            }
+            if (hiddenSubsets(unit, positions, k, 0, 0, 0, 0)) {
+                counts[technique.ordinal()]++;
+                progress = true;
+            }
+        }
+        return progress;
+    }
+
+    private boolean hiddenSubsets(int[] unit, long[] positions, int k, int start, int chosen, long chosenSymbols, long union) {
+        if (Long.bitCount(union) > k)
+            return false;
+        if (chosen == k) {
+            boolean eliminated = false;
+            for (int i = 0; i < unit.length; i++) {
+                if ((union & (1L << i)) != 0)
+                    eliminated |= eliminate(unit[i], ~chosenSymbols);
+            }
+            return eliminated;
+        }
+        for (int v = start; v < grid_dim; v++) {
+            int count = Long.bitCount(positions[v]);
+            if (count >= 2 && count <= k) {
+                if (hiddenSubsets(unit, positions, k, v + 1, chosen + 1, chosenSymbols | (1L << v), union | positions[v]))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    //Two rows where a symbol can only go in the same two columns: remove it from the rest of those columns (and transposed)
+    private boolean xWings() {
+        boolean progress = false;
+        for (int v = 0; v < grid_dim; v++) {
+            long bit = 1L << v;
+            for (int base = 0; base <= grid_dim; base += grid_dim) {
+                int cover = grid_dim - base;
+                for (int a = base; a < base + grid_dim; a++) {
+                    long maskA = lineMask(a, bit);
+                    if (Long.bitCount(maskA) != 2)
+                        continue;
+                    for (int b = a + 1; b < base + grid_dim; b++) {
+                        if (lineMask(b, bit) != maskA)
+                            continue;
+
+                        boolean eliminated = false;
+                        for (int pos = 0; pos < grid_dim; pos++) {
+                            if ((maskA & (1L << pos)) == 0)
+                                continue;
+                            for (int i = 0; i < grid_dim; i++) {
+                                if (i != a - base && i != b - base)
+                                    eliminated |= eliminate(units[cover + pos][i], bit);
+                            }
+                        }
+                        if (eliminated) {
+                            counts[Technique.X_WING.ordinal()]++;
+                            progress = true;
+                        }
+                    }
+                }
+            }
+        }
+        return progress;
+    }
+
+    //Positions along a row or column unit where this candidate bit is possible
+    private long lineMask(int unit, long bit) {
+        long mask = 0;
+        for (int i = 0; i < grid_dim; i++) {
+            if ((candidates[units[unit][i]] & bit) != 0)
+                mask |= 1L << i;
+        }
+        return mask;
+    }
+
+    //Apply the simplest technique that makes progress, false if none does
+    private boolean step() {
+        return hiddenSingles()
+            || nakedSingles()
+            || intersections()
+            || nakedSubsets(2, Technique.NAKED_PAIR)
+            || hiddenSubsets(2, Technique.HIDDEN_PAIR)
+            || nakedSubsets(3, Technique.NAKED_TRIPLE)
+            || hiddenSubsets(3, Technique.HIDDEN_TRIPLE)
+            || xWings();
+    }
+
+
+    @Override
+    public boolean solve(SudokuGrid grid) {
+        StdSudokuGrid std_grid = (StdSudokuGrid)grid;
+
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = 0;
+
+        //Candidates of larger grids do not fit in a mask, and the techniques only know rows, columns and boxes
+        if (!deducible(std_grid)) {
+            counts[Technique.GUESS.ordinal()]++;
+            return guesser().solve(grid);
+        }
+
+        if (!deduce(std_grid))
+            return false;
+
+        //Stuck, guess the rest
+        for (int value : values) {
+            if (value == -1) {
+                counts[Technique.GUESS.ordinal()]++;
+                return guesser().solve(grid);
+            }
+        }
+
+        return true;
+    } // end of solve()
+
+
+    /**
+     * Counts solutions by applying the techniques to a copy of the grid, which
+     * only rules out symbols no solution has there, then handing what is left
+     * to the guesser to count.  Like solve(), it leaves the technique counts of
+     * the deduction.
+     */
+    @Override
+    public int countSolutions(SudokuGrid grid, int limit) {
+        StdSudokuGrid std_grid = (StdSudokuGrid)grid;
+
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = 0;
+
+        if (!deducible(std_grid))
+            return guesser().countSolutions(grid, limit);
+
+        StdSudokuGrid remaining = std_grid.copy();
+        if (!deduce(remaining))
+            return 0;
+        return guesser().countSolutions(remaining, limit);
+    } // end of countSolutions()
+
+
+    //The techniques only rule out symbols no solution has, so the guesser searches the grid as given
+    @Override
+    public boolean findOtherSolution(SudokuGrid grid, int[][] known) {
+        return guesser().findOtherSolution(grid, known);
+    } // end of findOtherSolution()
+
+
+    //Whether the techniques apply to the grid, rather than guessing it whole
+    private static boolean deducible(StdSudokuGrid std_grid) {
+        return std_grid.getGrid().length <= Long.SIZE && !std_grid.hasConstraints();
+    }
+
+
+    //Apply techniques until the grid is full or stuck and write what they placed back to the grid,
+    //false (and the grid unchanged) if they met a contradiction or the solver was cancelled
+    private boolean deduce(StdSudokuGrid std_grid) {
+        int[][] g = std_grid.getGrid();
+        int[] valid_symbols = std_grid.getValidSymbols();
+
+        if (g.length != grid_dim)
+            initGeometry(g.length);
+        contradiction = false;
+
+        //Every empty cell starts with every candidate, then place initial values
+        long all = grid_dim == Long.SIZE ? -1L : (1L << grid_dim) - 1;
+        for (int cell = 0; cell < values.length; cell++) {
+            values[cell] = -1;
+            candidates[cell] = all;
+        }
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                if (g[r][c] != -1)
+                    place(r * grid_dim + c, std_grid.symbolIndex(g[r][c]));
+            }
+        }
+
+        //Apply techniques until the grid is full, stuck or contradictory
+        boolean progress;
+        do {
+            progress = step();
+        }
+        while (progress && !contradiction && !isCancelled());
+
+        if (contradiction || isCancelled())
+            return false;
+
+        //Write the logical progress back
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                int v = values[r * grid_dim + c];
+                g[r][c] = v == -1 ? -1 : valid_symbols[v];
+            }
+        }
+        return true;
+    } // end of deduce()
+
+
+    //The guesser, cancelled if this solver is
+    private DancingLinksSolver guesser() {
+        if (guesser == null)
+            guesser = new DancingLinksSolver();
+        if (isCancelled())
+            guesser.cancel();
+        return guesser;
+    }
+
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        DancingLinksSolver current = guesser;
+        if (current != null)
+            current.cancel();
+    } // end of cancel()
+
+
+    @Override
+    public void clearCancel() {
+        super.clearCancel();
+        DancingLinksSolver current = guesser;
+        if (current != null)
+            current.clearCancel();
+    } // end of clearCancel()
+
+
+    @Override
+    public void reset() {
+        grid_dim = -1;
+        units = null;
+        peers = null;
+        cellUnits = null;
+        values = null;
+        candidates = null;
+        guesser = null;
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = 0;
+    } // end of reset()
+
+
+    /**
+     * Grade each input grid and print its rating.
+     *
+     * @param args Filenames of grids, in the input format of RmitSudoku.
+     */
+    public static void main(String[] args) {
+        LogicalSolver solver = new LogicalSolver();
+        for (String filename : args) {
+            try {
+                StdSudokuGrid grid = new StdSudokuGrid();
+                grid.initGrid(filename);
+                solver.solve(grid);
+                System.out.println(filename + " " + String.format("%.2f", solver.getRating()));
+            }
+            catch (FileNotFoundException e) {
+                System.err.println("File not found. " + e.getMessage());
+            }
+            catch (IOException e) {
+                System.err.println("IOExeption occurred. " + e.getMessage());
+            }
+        }
+    } // end of main()
+
+} // end of class LogicalSolver
@@ -0,0 +1,182 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package solver;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import grid.SudokuGrid;
+
+
+/**
+ * Solver that races several solvers on a grid and takes the first answer.
+ * Which solver is fastest depends on the puzzle (dancing links on most standard
+ * puzzles, SAT on large sparse ones, plain backtracking on some small killer
+ * grids), so racing them keeps each puzzle close to its fastest solver's time,
+ * at the cost of the CPU the others use until they stop.
+ *
+ * Each solver works on its own copy of the grid (see SudokuGrid.copy()), on a
+ * thread the portfolio keeps for it.  The first to finish without being
+ * cancelled wins: its answer is the portfolio's, and its copy is written back to
+ * the grid if it found a solution.  The others are cancelled (see
+ * SudokuSolver.cancel()) and waited for before solve() returns, so no solver
+ * is still running when the next solve() starts.  A solver that throws, e.g.
+ * one that does not handle the kind of grid, drops out of the race.
+ *
+ * Counting and finding other solutions are left to the first solver.
+ */
+public class PortfolioSolver extends SudokuSolver implements Closeable
+{
+    private SudokuSolver[] solvers;
+    private ExecutorService threads;
+    //Index of the solver that won the last race, -1 if none did
+    private int winner = -1;
+
+    /**
+     * @param solvers Solvers to race, each only ever used by one thread at a time.
+     */
+    public PortfolioSolver(SudokuSolver... solvers) {
+        this.solvers = solvers;
+        threads = Executors.newFixedThreadPool(solvers.length, runnable -> {
+            Thread thread = new Thread(runnable, "portfolio");
+            thread.setDaemon(true);
+            return thread;
+        });
+    } // end of PortfolioSolver()
+
+
+    @Override
+    public boolean solve(SudokuGrid grid) {
+        winner = -1;
+        if (isCancelled())
+            return false;
+
+        SudokuGrid[] copies = new SudokuGrid[solvers.length];
+        boolean[] results = new boolean[solvers.length];
+        ExecutorCompletionService<Integer> race = new ExecutorCompletionService<>(threads);
+        for (int i = 0; i < solvers.length; i++) {
+            copies[i] = grid.copy();
+            solvers[i].clearCancel();
+        }
+        //A cancel() that came in while the flags were cleared still counts
+        if (isCancelled())
+            cancel();
+        for (int i = 0; i < solvers.length; i++) {
+            int index = i;
+            race.submit(() -> {
+                results[index] = solvers[index].solve(copies[index]);
+                return index;
+            });
+        }
+
+        //Take finishers in order; the first one not cancelled wins and stops the rest
+        RuntimeException failure = null;
+        boolean interrupted = false;
+        int finished = 0;
+        while (finished < solvers.length) {
+            Future<Integer> done;
+            try {
+                done = race.take();
+            }
+            catch (InterruptedException e) {
+                //Still wait for the solvers, so none outlives this call
+                interrupted = true;
+                for (SudokuSolver solver : solvers)
+                    solver.cancel();
+                continue;
+            }
+            finished++;
+
+            try {
+                int i = done.get();
+                if (winner == -1 && !solvers[i].isCancelled()) {
+                    winner = i;
+                    for (SudokuSolver solver : solvers)
+                        solver.cancel();
+                }
+            }
+            catch (ExecutionException e) {
+                if (failure == null)
+                    failure = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException)e.getCause() : new RuntimeException(e.getCause());
+            }
+            catch (InterruptedException e) {
+                //Not reached, the task is done
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        //Every solver failed
+        if (winner == -1 && failure != null && !isCancelled())
+            throw failure;
+        if (winner == -1 || !results[winner])
+            return false;
+
+        int[][] g = grid.getGrid();
+        int[][] solved = copies[winner].getGrid();
+        for (int r = 0; r < g.length; r++)
+            System.arraycopy(solved[r], 0, g[r], 0, g.length);
+        return true;
+    } // end of solve()
+
+
+    @Override
+    public int countSolutions(SudokuGrid grid, int limit) {
+        return solvers[0].countSolutions(grid, limit);
+    } // end of countSolutions()
+
+
+    @Override
+    public boolean findOtherSolution(SudokuGrid grid, int[][] known) {
+        return solvers[0].findOtherSolution(grid, known);
+    } // end of findOtherSolution()
+
+
+    /**
+     * Solver that won the last solve(), e.g. to see which solvers earn their
+     * place in the portfolio.
+     *
+     * @return The winner, or null if the last solve() was cancelled or every
+     *          solver failed.
+     */
+    public SudokuSolver getLastWinner() {
+        return winner == -1 ? null : solvers[winner];
+    } // end of getLastWinner()
+
+
+    public SudokuSolver[] getSolvers() {
+        return solvers;
+    }
+
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        for (SudokuSolver solver : solvers)
+            solver.cancel();
+    } // end of cancel()
+
+
+    @Override
+    public void reset() {
+        for (SudokuSolver solver : solvers)
+            solver.reset();
+        winner = -1;
+    } // end of reset()
+
+
+    //Stop the portfolio's threads; it cannot solve afterwards
+    @Override
+    public void close() {
+        threads.shutdownNow();
+    } // end of close()
+
+} // end of class PortfolioSolver
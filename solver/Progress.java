@@ -0,0 +1,228 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package solver;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+
+import grid.SudokuGrid;
+
+
+/**
+ * How far a search has got, published by the solving thread for others to read
+ * while it runs, so a slow solve can be told from a stuck one.
+ *
+ * The solver calls node() at every node of its search and branch() as it tries
+ * each branch of a choice, both on its own thread and without locking: they only
+ * update fields that thread alone touches.  Every PUBLISH_NODES nodes (and at
+ * start() and finish()) those fields are copied into an immutable Snapshot put
+ * in a volatile field, which snapshot() returns to any thread.  Reporter prints
+ * a line from the snapshots at a fixed interval.
+ *
+ * A snapshot has the nodes searched, the depth of the node being searched, the
+ * most cells any node of the search has filled, and an estimate of the part of
+ * the search tree behind it: branch b of n at the root is b / n of the way, plus
+ * 1 / n times the same estimate for the choice below it, down to LEVELS choices.
+ * The estimate assumes every branch is as big as the others, so it moves
+ * unevenly, but it only goes back when the search restarts.
+ *
+ * One solver publishes to a Progress at a time.
+ */
+public class Progress
+{
+    //Nodes between snapshots, a power of two
+    public static final long PUBLISH_NODES = 1 << 12;
+    //Choices counted toward the estimate, deeper branches are too small to show
+    public static final int LEVELS = 8;
+
+    /**
+     * What the search had done when it was published.
+     */
+    public static class Snapshot {
+        public final long nanos;        //System.nanoTime() when published
+        public final long nodes;
+        public final int depth;
+        public final int best;          //most cells filled at any node, givens included
+        public final int cells;         //cells of the grid
+        public final double done;       //estimated part of the search tree searched, 0 to 1
+        public final boolean finished;
+
+        Snapshot(long nodes, int depth, int best, int cells, double done, boolean finished) {
+            this.nanos = System.nanoTime();
+            this.nodes = nodes;
+            this.depth = depth;
+            this.best = best;
+            this.cells = cells;
+            this.done = done;
+            this.finished = finished;
+        }
+    } // end of class Snapshot
+
+
+    //Kept by the solving thread alone
+    private long nodes;
+    private int depth;
+    private int best;
+    private int cells;
+    private int[] branch = new int[LEVELS];
+    private int[] branches = new int[LEVELS];
+    private int known;                  //levels of branch[] on the path to the current node
+
+    //Last published, for any thread
+    private volatile Snapshot published = new Snapshot(0, 0, 0, 0, 0, false);
+
+
+    /**
+     * Start publishing the search of a grid.
+     *
+     * @param grid Grid about to be searched, with only its givens filled.
+     *
+     * @return Number of givens, so the solver can count cells filled from its depth.
+     */
+    public int start(SudokuGrid grid) {
+        int[][] g = grid.getGrid();
+        int givens = 0;
+        for (int[] row : g) {
+            for (int value : row) {
+                if (value != -1)
+                    givens++;
+            }
+        }
+        nodes = 0;
+        depth = 0;
+        best = givens;
+        cells = g.length * g.length;
+        known = 0;
+        publish(false);
+        return givens;
+    } // end of start()
+
+
+    /**
+     * Count a node of the search.
+     *
+     * @param depth Choices made above the node.
+     * @param filled Cells filled at the node, givens included.
+     */
+    public void node(int depth, int filled) {
+        this.depth = depth;
+        if (filled > best)
+            best = filled;
+        if ((++nodes & (PUBLISH_NODES - 1)) == 0)
+            publish(false);
+    } // end of node()
+
+
+    /**
+     * Record which branch of a choice the search is about to try.
+     *
+     * @param depth Choices made above this one.
+     * @param branch Branches of this choice tried before this one.
+     * @param branches Branches of this choice, an estimate will do.
+     */
+    public void branch(int depth, int branch, int branches) {
+        if (depth >= LEVELS)
+            return;
+        this.branch[depth] = branch;
+        this.branches[depth] = Math.max(branches, branch + 1);
+        known = depth + 1;
+    } // end of branch()
+
+
+    /**
+     * Publish the end of the search.
+     */
+    public void finish() {
+        publish(true);
+    } // end of finish()
+
+
+    public Snapshot snapshot() {
+        return published;
+    }
+
+
+    //Copy the search's fields into a new snapshot
+    private void publish(boolean finished) {
+        double done = 0;
+        double scale = 1;
+        for (int i = 0; i < known; i++) {
+            scale /= branches[i];
+            done += branch[i] * scale;
+        }
+        published = new Snapshot(nodes, depth, best, cells, finished ? 1 : done, finished);
+    }
+
+
+    /**
+     * Line describing now, with the node rate since before (or since the start,
+     * if before is null or from another search).
+     */
+    public static String describe(Snapshot before, Snapshot now, long start_nanos) {
+        if (before == null || before.nodes > now.nodes)
+            before = null;
+        long nanos = now.nanos - (before == null ? start_nanos : before.nanos);
+        long nodes = now.nodes - (before == null ? 0 : before.nodes);
+        long rate = nanos > 0 ? Math.round(nodes * 1e9 / nanos) : 0;
+        return String.format("%s %.1f s: %d nodes, %d nodes/s, depth %d, best %d/%d cells, ~%.1f%% of root branches",
+            now.finished ? "finished after" : "progress at", (now.nanos - start_nanos) / 1e9, now.nodes, rate,
+            now.depth, now.best, now.cells, 100 * now.done);
+    } // end of describe()
+
+
+    /**
+     * Thread printing a progress line at a fixed interval until closed, when it
+     * prints a last one.  Only lines for new snapshots are printed, so a solver
+     * that does not publish stays quiet.
+     */
+    public static class Reporter implements Closeable {
+        private Progress progress;
+        private PrintStream out;
+        private long start_nanos = System.nanoTime();
+        private Snapshot last;
+        private Thread thread;
+
+        public Reporter(Progress progress, PrintStream out, long interval_ms) {
+            this.progress = progress;
+            this.out = out;
+            last = progress.snapshot();
+            thread = new Thread(() -> {
+                try {
+                    while (true) {
+                        Thread.sleep(interval_ms);
+                        report();
+                    }
+                }
+                catch (InterruptedException e) {
+                    //Closed
+                }
+            }, "progress");
+            thread.setDaemon(true);
+            thread.start();
+        } // end of Reporter()
+
+        //Print a line if the solver published since the last one
+        private synchronized void report() {
+            Snapshot now = progress.snapshot();
+            if (now == last)
+                return;
+            out.println(describe(last, now, start_nanos));
+            last = now;
+        }
+
+        @Override
+        public void close() {
+            thread.interrupt();
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            report();
+        } // end of close()
+    } // end of class Reporter
+
+} // end of class Progress
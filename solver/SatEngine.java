@@ -0,0 +1,590 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package solver;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+
+/**
+ * Conflict driven clause learning SAT solver, the engine behind SatSolver.
+ *
+ * Variables are numbered from 0 by newVar().  A literal is 2v for variable v
+ * true and 2v + 1 for v false (see pos() and neg()), and a clause is an array of
+ * literals of which at least one must be true.
+ *
+ * The search is the usual one for CDCL solvers: unit propagation over two
+ * watched literals per clause, decisions on the unassigned variable of highest
+ * VSIDS activity with its last value (phase saving), first-UIP conflict analysis
+ * with minimisation of the learnt clause, and Luby restarts.  Learnt clauses
+ * are kept by their LBD (number of decision levels in them): when there are too
+ * many, the worse half of those with an LBD above 2 is dropped.
+ *
+ * Clauses may be added between calls to solve(), e.g. to block a solution found
+ * and look for another.
+ */
+public class SatEngine
+{
+    //Value of a literal or variable
+    private static final int FALSE = 0;
+    private static final int TRUE = 1;
+    private static final int UNASSIGNED = -1;
+
+    //Conflicts before the first restart, multiplied by the Luby sequence after
+    private static final int RESTART_BASE = 100;
+    private static final double VAR_DECAY = 0.95;
+
+    //Variables, indexed by variable
+    private int num_vars = 0;
+    private int[] assigns = new int[0];     //FALSE, TRUE or UNASSIGNED
+    private int[] levels = new int[0];      //decision level each variable was assigned at
+    private int[] reasons = new int[0];     //clause that implied each variable, -1 for decisions
+    private boolean[] phases = new boolean[0];
+    private double[] activity = new double[0];
+    private double var_inc = 1;
+    private boolean[] seen = new boolean[0];
+    private boolean[] model = new boolean[0];
+
+    //Clauses, indexed by clause id; removed learnt clauses are null
+    private int[][] clauses = new int[1024][];
+    private int[] clause_lbd = new int[1024];   //0 for original clauses
+    private int num_clauses = 0;
+    private int num_learnts = 0;
+    private int max_learnts;
+
+    //Ids of the clauses watching each literal, indexed by literal
+    private int[][] watches = new int[0][];
+    private int[] num_watches = new int[0];
+
+    //Assigned literals in order, and where each decision level starts
+    private int[] trail = new int[0];
+    private int trail_size = 0;
+    private int qhead = 0;
+    private int[] trail_lim = new int[0];
+    private int num_levels = 0;
+
+    //Unassigned variables (and some assigned ones, skipped when popped), ordered by activity
+    private int[] heap = new int[0];
+    private int[] heap_index = new int[0];     //position in heap, -1 if not in it
+    private int heap_size = 0;
+
+    //Set once a contradiction is derived without any decision
+    private boolean unsat = false;
+    //Checked at each conflict and decision, solve() gives up once it is true
+    private BooleanSupplier stop = () -> false;
+
+    //Search statistics
+    private long conflicts = 0;
+    private long decisions = 0;
+
+    //Scratch for conflict analysis
+    private int[] learnt = new int[16];
+    private int[] to_clear = new int[16];
+    private int[] level_stamps = new int[0];
+    private int stamp = 0;
+
+    public SatEngine() {
+    } // end of SatEngine()
+
+
+    public static int pos(int var) {
+        return var << 1;
+    }
+
+    public static int neg(int var) {
+        return (var << 1) | 1;
+    }
+
+    public static int not(int lit) {
+        return lit ^ 1;
+    }
+
+
+    //A new variable, numbered from 0
+    public int newVar() {
+        int v = num_vars++;
+        if (v == assigns.length) {
+            int capacity = Math.max(64, assigns.length * 2);
+            assigns = Arrays.copyOf(assigns, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            reasons = Arrays.copyOf(reasons, capacity);
+            phases = Arrays.copyOf(phases, capacity);
+            activity = Arrays.copyOf(activity, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+            model = Arrays.copyOf(model, capacity);
+            trail = Arrays.copyOf(trail, capacity);
+            trail_lim = Arrays.copyOf(trail_lim, capacity + 1);
+            level_stamps = Arrays.copyOf(level_stamps, capacity + 1);
+            heap = Arrays.copyOf(heap, capacity);
+            heap_index = Arrays.copyOf(heap_index, capacity);
+            watches = Arrays.copyOf(watches, capacity * 2);
+            num_watches = Arrays.copyOf(num_watches, capacity * 2);
+        }
+        assigns[v] = UNASSIGNED;
+        reasons[v] = -1;
+        heap_index[v] = -1;
+        watches[2 * v] = new int[4];
+        watches[2 * v + 1] = new int[4];
+        heapInsert(v);
+        return v;
+    } // end of newVar()
+
+    public int numVars() {
+        return num_vars;
+    }
+
+    public int numClauses() {
+        return num_clauses - num_learnts;
+    }
+
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    public long getDecisions() {
+        return decisions;
+    }
+
+    //Condition under which solve() gives up and returns false, e.g. its solver being cancelled
+    public void setStop(BooleanSupplier stop) {
+        this.stop = stop;
+    }
+
+
+    /**
+     * Add a clause.  Literals already false without any decision are left out,
+     * and a clause already satisfied that way is not added.
+     *
+     * @param lits Literals of the clause; the array is not kept.
+     *
+     * @return False if the clauses are now known to be unsatisfiable.
+     */
+    public boolean addClause(int... lits) {
+        cancelUntil(0);
+        if (unsat)
+            return false;
+
+        int[] c = lits.clone();
+        Arrays.sort(c);
+        int size = 0;
+        for (int i = 0; i < c.length; i++) {
+            int value = litValue(c[i]);
+            //Satisfied, or contains both a literal and its negation
+            if (value == TRUE || (i > 0 && c[i] == not(c[i - 1]) && (c[i] & 1) == 1))
+                return true;
+            if (value == FALSE || (size > 0 && c[size - 1] == c[i]))
+                continue;
+            c[size++] = c[i];
+        }
+
+        if (size == 0) {
+            unsat = true;
+            return false;
+        }
+        if (size == 1) {
+            enqueue(c[0], -1);
+            if (propagate() != -1)
+                unsat = true;
+            return !unsat;
+        }
+        attach(Arrays.copyOf(c, size), 0);
+        return true;
+    } // end of addClause()
+
+
+    /**
+     * Search for an assignment satisfying every clause.  If one is found it can
+     * be read with value() until the next call.
+     *
+     * @return True if the clauses are satisfiable; false if they are not, or the
+     *          stop condition became true first.
+     */
+    public boolean solve() {
+        if (unsat)
+            return false;
+        max_learnts = Math.max(2000, numClauses() / 3);
+        int restarts = 0;
+        long restart_at = conflicts + RESTART_BASE * luby(restarts);
+
+        while (true) {
+            if (stop.getAsBoolean()) {
+                cancelUntil(0);
+                return false;
+            }
+            int conflict = propagate();
+            if (conflict != -1) {
+                conflicts++;
+                if (num_levels == 0) {
+                    unsat = true;
+                    return false;
+                }
+
+                //Learn a clause that forces a literal at an earlier level, and jump back there
+                int size = analyze(conflict);
+                int backtrack_level = size > 1 ? levels[learnt[1] >> 1] : 0;
+                cancelUntil(backtrack_level);
+                if (size == 1) {
+                    enqueue(learnt[0], -1);
+                }
+                else {
+                    int lbd = lbd(size);
+                    int id = attach(Arrays.copyOf(learnt, size), lbd);
+                    num_learnts++;
+                    enqueue(learnt[0], id);
+                }
+                var_inc /= VAR_DECAY;
+
+                if (conflicts >= restart_at) {
+                    restarts++;
+                    restart_at = conflicts + RESTART_BASE * luby(restarts);
+                    cancelUntil(0);
+                }
+                if (num_learnts >= max_learnts) {
+                    reduceLearnts();
+                    max_learnts += max_learnts / 10;
+                }
+            }
+            else {
+                //Decide the most active unassigned variable, or stop if all are assigned
+                int v = -1;
+                while (heap_size > 0) {
+                    int x = heapRemoveMax();
+                    if (assigns[x] == UNASSIGNED) {
+                        v = x;
+                        break;
+                    }
+                }
+                if (v == -1) {
+                    for (int i = 0; i < num_vars; i++)
+                        model[i] = assigns[i] == TRUE;
+                    cancelUntil(0);
+                    return true;
+                }
+                decisions++;
+                trail_lim[num_levels++] = trail_size;
+                enqueue(phases[v] ? pos(v) : neg(v), -1);
+            }
+        }
+    } // end of solve()
+
+
+    //Value of a variable in the assignment found by the last successful solve()
+    public boolean value(int var) {
+        return model[var];
+    }
+
+
+    /* ********************************************************* */
+
+
+    private int litValue(int lit) {
+        int value = assigns[lit >> 1];
+        return value == UNASSIGNED ? UNASSIGNED : value ^ (lit & 1);
+    }
+
+    private void enqueue(int lit, int reason) {
+        int v = lit >> 1;
+        assigns[v] = (lit & 1) ^ 1;
+        levels[v] = num_levels;
+        reasons[v] = reason;
+        trail[trail_size++] = lit;
+    }
+
+    //Store a clause of at least two literals and watch its first two, returning its id
+    private int attach(int[] c, int lbd) {
+        if (num_clauses == clauses.length) {
+            clauses = Arrays.copyOf(clauses, clauses.length * 2);
+            clause_lbd = Arrays.copyOf(clause_lbd, clauses.length);
+        }
+        int id = num_clauses++;
+        clauses[id] = c;
+        clause_lbd[id] = lbd;
+        watch(c[0], id);
+        watch(c[1], id);
+        return id;
+    }
+
+    private void watch(int lit, int id) {
+        if (num_watches[lit] == watches[lit].length)
+            watches[lit] = Arrays.copyOf(watches[lit], watches[lit].length * 2);
+        watches[lit][num_watches[lit]++] = id;
+    }
+
+
+    //Propagate every literal assigned since the last call, returning a conflicting clause or -1
+    private int propagate() {
+        while (qhead < trail_size) {
+            int false_lit = not(trail[qhead++]);
+            int[] ws = watches[false_lit];
+            int n = num_watches[false_lit];
+            int i = 0;
+            int j = 0;
+            while (i < n) {
+                int id = ws[i++];
+                int[] c = clauses[id];
+                //Removed learnt clause, stop watching it
+                if (c == null)
+                    continue;
+
+                //Make the false literal the second watch
+                if (c[0] == false_lit) {
+                    c[0] = c[1];
+                    c[1] = false_lit;
+                }
+                if (litValue(c[0]) == TRUE) {
+                    ws[j++] = id;
+                    continue;
+                }
+
+                //Look for another literal to watch
+                boolean moved = false;
+                for (int k = 2; k < c.length; k++) {
+                    if (litValue(c[k]) != FALSE) {
+                        c[1] = c[k];
+                        c[k] = false_lit;
+                        watch(c[1], id);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved)
+                    continue;
+
+                //Unit or conflicting
+                ws[j++] = id;
+                if (litValue(c[0]) == FALSE) {
+                    while (i < n)
+                        ws[j++] = ws[i++];
+                    num_watches[false_lit] = j;
+                    qhead = trail_size;
+                    return id;
+                }
+                enqueue(c[0], id);
+            }
+            num_watches[false_lit] = j;
+        }
+        return -1;
+    } // end of propagate()
+
+
+    /**
+     * First-UIP analysis of a conflict: fills learnt with a clause whose first
+     * literal is the only one at the current level and whose second is at the
+     * highest level of the rest.
+     *
+     * @return Size of the learnt clause.
+     */
+    private int analyze(int conflict) {
+        int size = 1;
+        int path = 0;
+        int p = -1;
+        int index = trail_size - 1;
+
+        do {
+            int[] c = clauses[conflict];
+            for (int k = p == -1 ? 0 : 1; k < c.length; k++) {
+                int q = c[k];
+                int v = q >> 1;
+                if (!seen[v] && levels[v] > 0) {
+                    bump(v);
+                    seen[v] = true;
+                    if (levels[v] >= num_levels) {
+                        path++;
+                    }
+                    else {
+                        if (size == learnt.length)
+                            learnt = Arrays.copyOf(learnt, size * 2);
+                        learnt[size++] = q;
+                    }
+                }
+            }
+
+            //Latest assigned literal in the conflict
+            while (!seen[trail[index] >> 1])
+                index--;
+            p = trail[index--];
+            conflict = reasons[p >> 1];
+            seen[p >> 1] = false;
+            path--;
+        }
+        while (path > 0);
+        learnt[0] = not(p);
+
+        //Drop literals implied by the rest of the clause, then clear the flags of all of them
+        if (to_clear.length < size)
+            to_clear = new int[learnt.length];
+        System.arraycopy(learnt, 0, to_clear, 0, size);
+        int kept = 1;
+        for (int i = 1; i < size; i++) {
+            int v = learnt[i] >> 1;
+            if (reasons[v] == -1 || !redundant(reasons[v]))
+                learnt[kept++] = learnt[i];
+        }
+        for (int i = 1; i < size; i++)
+            seen[to_clear[i] >> 1] = false;
+        size = kept;
+
+        //Highest level of the rest goes second, it is the level to jump back to
+        int max_i = 1;
+        for (int i = 2; i < size; i++) {
+            if (levels[learnt[i] >> 1] > levels[learnt[max_i] >> 1])
+                max_i = i;
+        }
+        if (size > 1) {
+            int swap = learnt[1];
+            learnt[1] = learnt[max_i];
+            learnt[max_i] = swap;
+        }
+        return size;
+    } // end of analyze()
+
+    //Whether every other literal of a reason clause is in the learnt clause or fixed without decisions
+    private boolean redundant(int reason) {
+        int[] c = clauses[reason];
+        for (int k = 1; k < c.length; k++) {
+            int v = c[k] >> 1;
+            if (!seen[v] && levels[v] > 0)
+                return false;
+        }
+        return true;
+    }
+
+    //Number of distinct decision levels in the learnt clause
+    private int lbd(int size) {
+        stamp++;
+        int lbd = 0;
+        for (int i = 0; i < size; i++) {
+            int level = levels[learnt[i] >> 1];
+            if (level_stamps[level] != stamp) {
+                level_stamps[level] = stamp;
+                lbd++;
+            }
+        }
+        return lbd;
+    }
+
+
+    //Undo every assignment above this decision level
+    private void cancelUntil(int level) {
+        if (num_levels <= level)
+            return;
+        for (int i = trail_size - 1; i >= trail_lim[level]; i--) {
+            int v = trail[i] >> 1;
+            phases[v] = assigns[v] == TRUE;
+            assigns[v] = UNASSIGNED;
+            reasons[v] = -1;
+            heapInsert(v);
+        }
+        trail_size = trail_lim[level];
+        qhead = trail_size;
+        num_levels = level;
+    }
+
+
+    //Drop the worse half of the learnt clauses with LBD above 2 that are not the reason of an assignment
+    private void reduceLearnts() {
+        int[] candidates = new int[num_learnts];
+        int n = 0;
+        for (int id = 0; id < num_clauses; id++) {
+            int[] c = clauses[id];
+            if (c == null || clause_lbd[id] <= 2)
+                continue;
+            int v = c[0] >> 1;
+            boolean locked = reasons[v] == id && litValue(c[0]) == TRUE;
+            if (!locked)
+                candidates[n++] = id;
+        }
+
+        //Highest LBD first, older first among equals
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = candidates[i];
+        Arrays.sort(order, (a, b) -> clause_lbd[a] != clause_lbd[b] ? clause_lbd[b] - clause_lbd[a] : a - b);
+        for (int i = 0; i < n / 2; i++) {
+            clauses[order[i]] = null;
+            num_learnts--;
+        }
+    }
+
+
+    //Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ... from i = 0
+    static long luby(int i) {
+        int size = 1;
+        int seq = 0;
+        while (size < i + 1) {
+            seq++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) >> 1;
+            seq--;
+            i = i % size;
+        }
+        return 1L << seq;
+    }
+
+
+    private void bump(int v) {
+        activity[v] += var_inc;
+        if (activity[v] > 1e100) {
+            for (int i = 0; i < num_vars; i++)
+                activity[i] *= 1e-100;
+            var_inc *= 1e-100;
+        }
+        if (heap_index[v] >= 0)
+            heapUp(heap_index[v]);
+    }
+
+    private void heapInsert(int v) {
+        if (heap_index[v] >= 0)
+            return;
+        heap[heap_size] = v;
+        heap_index[v] = heap_size;
+        heapUp(heap_size++);
+    }
+
+    private int heapRemoveMax() {
+        int v = heap[0];
+        heap[0] = heap[--heap_size];
+        heap_index[heap[0]] = 0;
+        heap_index[v] = -1;
+        if (heap_size > 0)
+            heapDown(0);
+        return v;
+    }
+
+    private void heapUp(int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (activity[heap[parent]] >= activity[v])
+                break;
+            heap[i] = heap[parent];
+            heap_index[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        heap_index[v] = i;
+    }
+
+    private void heapDown(int i) {
+        int v = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heap_size)
+                break;
+            if (child + 1 < heap_size && activity[heap[child + 1]] > activity[heap[child]])
+                child++;
+            if (activity[heap[child]] <= activity[v])
+                break;
+            heap[i] = heap[child];
+            heap_index[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = v;
+        heap_index[v] = i;
+    }
+
+} // end of class SatEngine
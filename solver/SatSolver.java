@@ -0,0 +1,455 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import grid.KillerSudokuGrid;
+import grid.StdSudokuGrid;
+import grid.SudokuGrid;
+
+
+/**
+ * Solver that encodes a grid as a SAT problem and solves it with SatEngine.
+ * Handles standard grids, their variant constraints and killer grids.
+ *
+ * There is a variable for each symbol a cell may still hold once the givens'
+ * units have ruled out their symbols.  Clauses say:
+ *  - each cell holds exactly one symbol;
+ *  - each row, column, box and variant unit of full size holds each symbol
+ *    exactly once, and smaller variant units and killer cages at most once;
+ *  - each cage's symbols sum to its total.
+ * At-most-one constraints over more than a few variables use a sequential
+ * counter, linear in size rather than pairwise.  A cage sum is encoded by the
+ * sets of distinct symbols adding to the total: a variable per set, exactly one
+ * of which is chosen, each cell holding a symbol of the chosen set and each
+ * symbol of it held by a cell.  Cages with too many sets (large cages of large
+ * grids) use partial sums instead: a variable p(i, s) for each sum s the first
+ * i cells of the cage can reach and still complete to the total, implied by
+ * p(i - 1, s - v) and the i-th cell holding v; sums that overshoot, or end off
+ * the total, are excluded.
+ *
+ * Another solution is found by adding a clause that blocks the last one, so
+ * countSolutions() and findOtherSolution() reuse what the engine has learnt.
+ */
+public class SatSolver extends SudokuSolver
+{
+    //At-most-one constraints over more variables than this use a sequential counter
+    private static final int PAIRWISE_LIMIT = 6;
+    //Cages with more sets of symbols adding to their total than this use partial sums
+    private static final int SET_LIMIT = 512;
+
+    private SatEngine engine;
+    private int grid_dim;
+    private int[] valid_symbols;
+    //Variable of symbol index v in cell r * grid_dim + c, at [cell * grid_dim + v], or -1 if impossible
+    private int[] vars;
+
+    public SatSolver() {
+    } // end of SatSolver()
+
+
+    @Override
+    public boolean solve(SudokuGrid grid) {
+        if (!encode(grid) || !engine.solve())
+            return false;
+        decode(grid.getGrid());
+        return true;
+    } // end of solve()
+
+
+    @Override
+    public int countSolutions(SudokuGrid grid, int limit) {
+        if (!encode(grid))
+            return 0;
+        int count = 0;
+        while (count < limit && engine.solve()) {
+            count++;
+            if (!blockSolution())
+                break;
+        }
+        return count;
+    } // end of countSolutions()
+
+
+    @Override
+    public boolean findOtherSolution(SudokuGrid grid, int[][] known) {
+        if (!encode(grid))
+            return false;
+
+        //Some cell must differ from known; a symbol a cell cannot hold already does
+        ArrayList<Integer> differ = new ArrayList<>();
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                int v = symbolIndex(known[r][c]);
+                int var = v == -1 ? -1 : vars[(r * grid_dim + c) * grid_dim + v];
+                if (var == -1)
+                    return solve(grid);
+                differ.add(SatEngine.neg(var));
+            }
+        }
+        if (!engine.addClause(toArray(differ)) || !engine.solve())
+            return false;
+        decode(grid.getGrid());
+        return true;
+    } // end of findOtherSolution()
+
+
+    @Override
+    public void reset() {
+        engine = null;
+        vars = null;
+    } // end of reset()
+
+
+    /* ********************************************************* */
+
+
+    //Builds a new engine with the clauses of the grid, returning false if its givens already conflict
+    private boolean encode(SudokuGrid grid) {
+        int[][] g = grid.getGrid();
+        grid_dim = g.length;
+        valid_symbols = grid instanceof KillerSudokuGrid
+            ? ((KillerSudokuGrid)grid).getValidSymbols() : ((StdSudokuGrid)grid).getValidSymbols();
+        engine = new SatEngine();
+        engine.setStop(this::isCancelled);
+        int n = grid_dim;
+        int cells = n * n;
+
+        //Units every symbol must appear in once, then units it may appear in at most once
+        ArrayList<int[]> full = new ArrayList<>();
+        ArrayList<int[]> partial = new ArrayList<>();
+        int box_height = SudokuGrid.boxHeight(n);
+        int box_width = SudokuGrid.boxWidth(n);
+        for (int i = 0; i < n; i++) {
+            int[] row = new int[n];
+            int[] col = new int[n];
+            int[] box = new int[n];
+            int top = (i / box_height) * box_height;
+            int left = (i % box_height) * box_width;
+            for (int j = 0; j < n; j++) {
+                row[j] = i * n + j;
+                col[j] = j * n + i;
+                box[j] = (top + j / box_width) * n + left + j % box_width;
+            }
+            full.add(row);
+            full.add(col);
+            full.add(box);
+        }
+        if (grid instanceof StdSudokuGrid) {
+            for (int[] unit : ((StdSudokuGrid)grid).variantUnits())
+                (unit.length == n ? full : partial).add(unit);
+        }
+        ArrayList<KillerSudokuGrid.Cage> cages = new ArrayList<>();
+        if (grid instanceof KillerSudokuGrid) {
+            for (KillerSudokuGrid.Cage cage : ((KillerSudokuGrid)grid).getCages()) {
+                int[] unit = new int[cage.cells.size()];
+                for (int k = 0; k < unit.length; k++)
+                    unit[k] = cage.cells.get(k).row * n + cage.cells.get(k).col;
+                partial.add(unit);
+                cages.add(cage);
+            }
+        }
+
+        //Givens fix their cell and rule their symbol out of the rest of their units
+        int[] given = new int[cells];
+        boolean[] possible = new boolean[cells * n];
+        for (int cell = 0; cell < cells; cell++) {
+            int symbol = g[cell / n][cell % n];
+            given[cell] = symbol == -1 ? -1 : symbolIndex(symbol);
+            if (symbol != -1 && given[cell] == -1)
+                return false;
+            for (int v = 0; v < n; v++)
+                possible[cell * n + v] = given[cell] == -1 || given[cell] == v;
+        }
+        ArrayList<int[]> all_units = new ArrayList<>(full);
+        all_units.addAll(partial);
+        for (int[] unit : all_units) {
+            for (int cell : unit) {
+                if (given[cell] == -1)
+                    continue;
+                for (int other : unit) {
+                    if (other == cell)
+                        continue;
+                    if (given[other] == given[cell])
+                        return false;
+                    possible[other * n + given[cell]] = false;
+                }
+            }
+        }
+
+        vars = new int[cells * n];
+        for (int i = 0; i < vars.length; i++)
+            vars[i] = possible[i] ? engine.newVar() : -1;
+
+        //Each cell holds exactly one symbol
+        ArrayList<Integer> lits = new ArrayList<>();
+        for (int cell = 0; cell < cells; cell++) {
+            lits.clear();
+            for (int v = 0; v < n; v++) {
+                if (vars[cell * n + v] != -1)
+                    lits.add(vars[cell * n + v]);
+            }
+            if (!exactlyOne(lits))
+                return false;
+        }
+
+        //Each unit holds each symbol exactly or at most once
+        for (int u = 0; u < all_units.size(); u++) {
+            int[] unit = all_units.get(u);
+            for (int v = 0; v < n; v++) {
+                lits.clear();
+                for (int cell : unit) {
+                    if (vars[cell * n + v] != -1)
+                        lits.add(vars[cell * n + v]);
+                }
+                boolean ok = u < full.size() ? exactlyOne(lits) : atMostOne(lits);
+                if (!ok)
+                    return false;
+            }
+        }
+
+        for (KillerSudokuGrid.Cage cage : cages) {
+            if (!cageSum(cage))
+                return false;
+        }
+        return true;
+    } // end of encode()
+
+
+    private int symbolIndex(int symbol) {
+        for (int v = 0; v < valid_symbols.length; v++) {
+            if (valid_symbols[v] == symbol)
+                return v;
+        }
+        return -1;
+    }
+
+
+    private boolean exactlyOne(ArrayList<Integer> vs) {
+        int[] clause = new int[vs.size()];
+        for (int i = 0; i < clause.length; i++)
+            clause[i] = SatEngine.pos(vs.get(i));
+        return engine.addClause(clause) && atMostOne(vs);
+    }
+
+    private boolean atMostOne(ArrayList<Integer> vs) {
+        int k = vs.size();
+        if (k <= PAIRWISE_LIMIT) {
+            for (int i = 0; i < k; i++) {
+                for (int j = i + 1; j < k; j++) {
+                    if (!engine.addClause(SatEngine.neg(vs.get(i)), SatEngine.neg(vs.get(j))))
+                        return false;
+                }
+            }
+            return true;
+        }
+
+        //Sequential counter: s_i is set once any of the first i + 1 variables is
+        int prev = -1;
+        for (int i = 0; i < k; i++) {
+            int x = SatEngine.neg(vs.get(i));
+            boolean ok = true;
+            if (prev != -1)
+                ok = engine.addClause(x, SatEngine.neg(prev));
+            if (i < k - 1) {
+                int s = engine.newVar();
+                ok = ok && engine.addClause(x, SatEngine.pos(s));
+                if (prev != -1)
+                    ok = ok && engine.addClause(SatEngine.neg(prev), SatEngine.pos(s));
+                prev = s;
+            }
+            if (!ok)
+                return false;
+        }
+        return true;
+    }
+
+
+    //A cage's symbols must be one of the sets adding to its total, or failing that its partial sums must
+    private boolean cageSum(KillerSudokuGrid.Cage cage) {
+        int n = grid_dim;
+        int k = cage.cells.size();
+        int total = cage.total;
+        int[] cell_of = new int[k];
+        for (int i = 0; i < k; i++)
+            cell_of[i] = cage.cells.get(i).row * n + cage.cells.get(i).col;
+        for (int symbol : valid_symbols) {
+            if (symbol < 0)
+                throw new IllegalArgumentException("Cage sums need non-negative symbols");
+        }
+        if (total < 0)
+            return engine.addClause();
+
+        //Symbols some cell of the cage may hold
+        boolean[] in_cage = new boolean[n];
+        for (int cell : cell_of) {
+            for (int v = 0; v < n; v++)
+                in_cage[v] |= vars[cell * n + v] != -1;
+        }
+        ArrayList<int[]> sets = new ArrayList<>();
+        if (symbolSets(in_cage, k, total, 0, new int[k], 0, sets))
+            return cageSets(cell_of, sets);
+        return partialSums(cell_of, total);
+    }
+
+
+    /**
+     * Collects the sets of size symbols from index v on that add to total, in
+     * increasing order of symbol index.
+     *
+     * @return False if there are more than SET_LIMIT sets, so the cage is
+     *          better encoded by partial sums.
+     */
+    private boolean symbolSets(boolean[] in_cage, int size, int total, int v, int[] set, int set_size,
+        ArrayList<int[]> sets)
+    {
+        if (set_size == size) {
+            if (total == 0)
+                sets.add(set.clone());
+            return sets.size() <= SET_LIMIT;
+        }
+        for (; v < grid_dim; v++) {
+            if (in_cage[v] && valid_symbols[v] <= total) {
+                set[set_size] = v;
+                if (!symbolSets(in_cage, size, total - valid_symbols[v], v + 1, set, set_size + 1, sets))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    //Exactly one set is chosen, each cell holds a symbol of it and each of its symbols is in some cell
+    private boolean cageSets(int[] cell_of, ArrayList<int[]> sets) {
+        int n = grid_dim;
+        ArrayList<Integer> chosen = new ArrayList<>();
+        ArrayList<ArrayList<Integer>> sets_with = new ArrayList<>();
+        for (int v = 0; v < n; v++)
+            sets_with.add(new ArrayList<>());
+        for (int[] set : sets) {
+            int y = engine.newVar();
+            chosen.add(y);
+            for (int v : set)
+                sets_with.get(v).add(SatEngine.pos(y));
+
+            ArrayList<Integer> clause = new ArrayList<>();
+            for (int v : set) {
+                clause.clear();
+                clause.add(SatEngine.neg(y));
+                for (int cell : cell_of) {
+                    if (vars[cell * n + v] != -1)
+                        clause.add(SatEngine.pos(vars[cell * n + v]));
+                }
+                if (!engine.addClause(toArray(clause)))
+                    return false;
+            }
+        }
+        if (!exactlyOne(chosen))
+            return false;
+
+        for (int cell : cell_of) {
+            for (int v = 0; v < n; v++) {
+                int x = vars[cell * n + v];
+                if (x == -1)
+                    continue;
+                ArrayList<Integer> clause = new ArrayList<>(sets_with.get(v));
+                clause.add(SatEngine.neg(x));
+                if (!engine.addClause(toArray(clause)))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    //Partial sums of the cage's cells in order must end on its total
+    private boolean partialSums(int[] cell_of, int total) {
+        int n = grid_dim;
+        int k = cell_of.length;
+
+        //Least and most the cells after the i-th can add
+        int[] min_rest = new int[k + 1];
+        int[] max_rest = new int[k + 1];
+        for (int i = k - 1; i >= 0; i--) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int v = 0; v < n; v++) {
+                if (vars[cell_of[i] * n + v] != -1) {
+                    min = Math.min(min, valid_symbols[v]);
+                    max = Math.max(max, valid_symbols[v]);
+                }
+            }
+            min_rest[i] = min_rest[i + 1] + min;
+            max_rest[i] = max_rest[i + 1] + max;
+        }
+
+        //p[s] for the sums of the cells before the current one, -1 if unreachable or hopeless
+        int[] p = null;
+        for (int i = 0; i < k; i++) {
+            int[] next = new int[total + 1];
+            Arrays.fill(next, -1);
+            for (int s = 0; s <= total; s++) {
+                if (i == 0 ? s != 0 : p[s] == -1)
+                    continue;
+                for (int v = 0; v < n; v++) {
+                    int x = vars[cell_of[i] * n + v];
+                    if (x == -1)
+                        continue;
+                    int sum = s + valid_symbols[v];
+                    boolean last = i == k - 1;
+                    boolean fits = last ? sum == total
+                        : sum + min_rest[i + 1] <= total && sum + max_rest[i + 1] >= total;
+                    ArrayList<Integer> clause = new ArrayList<>();
+                    if (i > 0)
+                        clause.add(SatEngine.neg(p[s]));
+                    clause.add(SatEngine.neg(x));
+                    if (fits && !last) {
+                        if (next[sum] == -1)
+                            next[sum] = engine.newVar();
+                        clause.add(SatEngine.pos(next[sum]));
+                    }
+                    else if (fits) {
+                        continue;
+                    }
+                    if (!engine.addClause(toArray(clause)))
+                        return false;
+                }
+            }
+            p = next;
+        }
+        return true;
+    }
+
+
+    //Adds a clause that rules out the solution just found, returning false if no other can exist
+    private boolean blockSolution() {
+        ArrayList<Integer> clause = new ArrayList<>();
+        for (int var = 0; var < vars.length; var++) {
+            if (vars[var] != -1 && engine.value(vars[var]))
+                clause.add(SatEngine.neg(vars[var]));
+        }
+        return engine.addClause(toArray(clause));
+    }
+
+    //Writes the engine's solution into the grid as symbols
+    private void decode(int[][] g) {
+        int n = grid_dim;
+        for (int cell = 0; cell < n * n; cell++) {
+            for (int v = 0; v < n; v++) {
+                int var = vars[cell * n + v];
+                if (var != -1 && engine.value(var))
+                    g[cell / n][cell % n] = valid_symbols[v];
+            }
+        }
+    }
+
+    private static int[] toArray(ArrayList<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
+    }
+
+} // end of class SatSolver
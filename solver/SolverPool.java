@@ -0,0 +1,78 @@
+/*
+ * @author Jeffrey Chan & Minyi Li, RMIT 2020
+ */
+
+package solver;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.Supplier;
+
+
+/**
+ * Pool of idle solvers of one type, so a service can solve puzzle after puzzle
+ * with warmed-up solvers whose matrices and buffers are reused, instead of
+ * constructing a solver per puzzle.  The exact cover solvers prune their one
+ * matrix by each puzzle's givens and reset it for the next, so once warmed up a
+ * solve allocates no matrix.  Solvers are not thread safe: acquire() one,
+ * solve with it on this thread, then release() it.
+ *
+ * Each platform thread keeps its own idle solvers, so acquiring and releasing
+ * takes no lock.  Virtual threads (Java 21 on) usually live for one task, so
+ * solvers released on them go to a shared pool instead of being lost with the
+ * thread.
+ */
+public class SolverPool
+{
+    //Thread.isVirtual(), or null before Java 21 where every thread is a platform thread
+    private static final Method IS_VIRTUAL = isVirtualMethod();
+
+    private Supplier<? extends SudokuSolver> factory;
+    private ThreadLocal<ArrayDeque<SudokuSolver>> local = ThreadLocal.withInitial(ArrayDeque::new);
+    private ConcurrentLinkedDeque<SudokuSolver> shared = new ConcurrentLinkedDeque<>();
+
+    //Pool of solvers made by factory, e.g. DancingLinksSolver::new
+    public SolverPool(Supplier<? extends SudokuSolver> factory) {
+        this.factory = factory;
+    } // end of SolverPool()
+
+
+    private static Method isVirtualMethod() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static boolean onVirtualThread() {
+        if (IS_VIRTUAL == null)
+            return false;
+        try {
+            return (Boolean)IS_VIRTUAL.invoke(Thread.currentThread());
+        }
+        catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+
+    //An idle solver, or a new one if there is none
+    public SudokuSolver acquire() {
+        SudokuSolver solver = onVirtualThread() ? null : local.get().poll();
+        if (solver == null)
+            solver = shared.poll();
+        return solver != null ? solver : factory.get();
+    } // end of acquire()
+
+    //Give back a solver from acquire() once its solve is finished
+    public void release(SudokuSolver solver) {
+        if (onVirtualThread())
+            shared.push(solver);
+        else
+            local.get().push(solver);
+    } // end of release()
+
+} // end of class SolverPool
@@ -4,6 +4,10 @@
 
 package solver;
 
+import grid.StdSudokuGrid;
+import grid.SudokuGrid;
+import grid.VariantConstraint;
+
 
 /**
  * Abstract class for common attributes or methods for solvers of standard
@@ -14,4 +18,62 @@ package solver;
 public abstract class StdSudokuSolver extends SudokuSolver
 {
 
+    /**
+     * Symbol indexes each cell may take given the grid's filled cells: none for
+     * a filled cell, and for an empty one those not filled in its row, column,
+     * box or variant units.  The exact cover solvers only build the rows of
+     * these placements.
+     *
+     * @param grid Grid whose filled cells are the givens.
+     *
+     * @return allowed[r * grid_dim + c][v], or null if two filled cells of a unit
+     *          hold the same symbol, so the grid has no solution.
+     */
+    protected static boolean[][] candidates(StdSudokuGrid grid) {
+        int[][] g = grid.getGrid();
+        int grid_dim = g.length;
+        int box_height = SudokuGrid.boxHeight(grid_dim);
+        int box_width = grid_dim / box_height;
+        int[][] units = grid.variantUnits();
+        int[][] cell_units = VariantConstraint.cellUnits(grid_dim, units);
+
+        //Symbols filled in each row, column, box and variant unit
+        boolean[][] row_used = new boolean[grid_dim][grid_dim];
+        boolean[][] col_used = new boolean[grid_dim][grid_dim];
+        boolean[][] box_used = new boolean[grid_dim][grid_dim];
+        boolean[][] unit_used = new boolean[units.length][grid_dim];
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                if (g[r][c] == -1)
+                    continue;
+                int v = grid.symbolIndex(g[r][c]);
+                int b = SudokuGrid.boxOf(r, c, box_height, box_width);
+                if (row_used[r][v] || col_used[c][v] || box_used[b][v])
+                    return null;
+                row_used[r][v] = col_used[c][v] = box_used[b][v] = true;
+                for (int u : cell_units[r * grid_dim + c]) {
+                    if (unit_used[u][v])
+                        return null;
+                    unit_used[u][v] = true;
+                }
+            }
+        }
+
+        boolean[][] allowed = new boolean[grid_dim * grid_dim][grid_dim];
+        for (int r = 0; r < grid_dim; r++) {
+            for (int c = 0; c < grid_dim; c++) {
+                if (g[r][c] != -1)
+                    continue;
+                int b = SudokuGrid.boxOf(r, c, box_height, box_width);
+                for (int v = 0; v < grid_dim; v++) {
+                    boolean free = !row_used[r][v] && !col_used[c][v] && !box_used[b][v];
+                    for (int u : cell_units[r * grid_dim + c])
+                        free &= !unit_used[u][v];
+                    allowed[r * grid_dim + c][v] = free;
+                }
+            }
+        }
+        return allowed;
+    } // end of candidates()
+
 } // end of class StdSudokuSolver
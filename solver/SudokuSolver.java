@@ -12,6 +12,12 @@ import grid.SudokuGrid;
  */
 public abstract class SudokuSolver
 {
+    //Set by cancel(), possibly from another thread, and checked by the searches
+    private volatile boolean cancelled = false;
+    //Partial grids known to have no solution, null if the solver keeps none
+    protected DeadStates deadStates;
+    //Where the search publishes how far it has got, null if nobody is watching
+    protected Progress progress;
 
     /**
      * Solves the input grid.  Different solvers should override this to implement
@@ -24,4 +30,123 @@ public abstract class SudokuSolver
      */
     public abstract boolean solve(SudokuGrid grid);
 
+
+    /**
+     * Counts the solutions of the input grid, stopping as soon as limit solutions
+     * have been found.  Unlike solve(), the grid is left exactly as it was passed
+     * in.
+     *
+     * @param grid Input grid whose solutions are counted.
+     * @param limit Stop searching once this many solutions have been found.
+     *
+     * @return Number of solutions found, at most limit.
+     */
+    public abstract int countSolutions(SudokuGrid grid, int limit);
+
+
+    /**
+     * Checks whether the input grid has exactly one solution.  Stops searching
+     * as soon as a second solution is found.
+     *
+     * @param grid Input grid to check.  The grid is left unchanged.
+     *
+     * @return True if the grid has exactly one solution.
+     */
+    public boolean isUnique(SudokuGrid grid) {
+        return countSolutions(grid, 2) == 1;
+    } // end of isUnique()
+
+
+    /**
+     * Searches for a solution of the input grid that differs from a known
+     * solution in at least one cell.  Useful to find where a puzzle with more than
+     * one solution is ambiguous.
+     *
+     * @param grid Input grid.  If another solution is found it is written to grid,
+     *          otherwise grid is left unchanged.
+     * @param known A known solution of grid, as symbols.
+     *
+     * @return True if another solution was found; false if known is the only one.
+     */
+    public abstract boolean findOtherSolution(SudokuGrid grid, int[][] known);
+
+
+
+    /**
+     * Asks a solve() in progress, possibly on another thread, to give up.  The
+     * search checks at each step, backs out and returns false.  The request
+     * stands until clearCancel(), so a solve() started after it gives up at once.
+     */
+    public void cancel() {
+        cancelled = true;
+    } // end of cancel()
+
+
+    /**
+     * Withdraws a cancel(), so the next solve() runs to the end.
+     */
+    public void clearCancel() {
+        cancelled = false;
+    } // end of clearCancel()
+
+
+    /**
+     * Whether cancel() has been called since the last clearCancel().  A solve()
+     * that returns false while this is true was cancelled, and has not shown that
+     * the grid has no solution.
+     *
+     * @return True if the solver was asked to give up.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    } // end of isCancelled()
+
+
+
+    /**
+     * Gives the solver a table of partial grids known to have no solution (see
+     * DeadStates), which its search checks before descending into a partial grid
+     * and adds to when one fails.  The backtracking and exact cover solvers use
+     * it; the others ignore it.  Off by default.
+     *
+     * @param deadStates Table for this solver alone, or null for none.
+     */
+    public void setDeadStates(DeadStates deadStates) {
+        this.deadStates = deadStates;
+    } // end of setDeadStates()
+
+
+    public DeadStates getDeadStates() {
+        return deadStates;
+    }
+
+
+
+    /**
+     * Has solve() publish how far its search has got (see Progress), for
+     * another thread to report.  The backtracking and exact cover solvers
+     * publish; the others do not.  Off by default.
+     *
+     * @param progress Progress for this solver alone, or null for none.
+     */
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    } // end of setProgress()
+
+
+    public Progress getProgress() {
+        return progress;
+    }
+
+
+
+    /**
+     * Returns the solver to its freshly constructed state, dropping anything it
+     * keeps between solves (such as a matrix built for the last grid dimension)
+     * so the memory can be reclaimed.  Solvers reuse that state from one solve()
+     * to the next on their own, so this is not needed between puzzles.
+     */
+    public void reset() {
+    } // end of reset()
+
 } // end of class SudokuSolver